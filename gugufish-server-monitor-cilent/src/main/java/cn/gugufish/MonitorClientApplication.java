@@ -1,12 +1,20 @@
 package cn.gugufish;
 
+import cn.gugufish.util.AgentRuntime;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Arrays;
+
 @SpringBootApplication
 public class MonitorClientApplication {
 
 	public static void main(String[] args) {
+		//--lite 时以轻量方式运行，不启动Spring容器
+		if(Arrays.asList(args).contains("--lite")) {
+			AgentRuntime.main(args);
+			return;
+		}
 		SpringApplication.run(MonitorClientApplication.class, args);
 	}
 
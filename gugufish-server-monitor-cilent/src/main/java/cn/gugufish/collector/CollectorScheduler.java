@@ -0,0 +1,196 @@
+package cn.gugufish.collector;
+
+import cn.gugufish.entity.RuntimeDetail;
+import cn.gugufish.util.NetUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 扩展指标采集器的调度
+ * 通过ServiceLoader加载全部采集器，按各自的间隔在共享的定时线程中触发，实际采集在工作线程中进行：
+ * - 同一个采集器上一次采集尚未结束时跳过本次触发，缓慢或卡住的采集器只影响自己
+ * - 采集耗时超过预算时，之后按连续超出次数成倍跳过若干次触发，最多跳过MAX_COOLDOWN次
+ * - 采集结果合并到公共批次，上报时取出自上次上报以来更新过的指标
+ * 启动时用全部声明的指标名称与服务端协商指标ID，公共批次按指标下标存放在数组中，上报时只携带ID与数值；
+ * 协商失败时结果暂存，之后每次上报前至多每分钟重新协商一次
+ */
+@Slf4j
+@Component
+public class CollectorScheduler {
+    private static final int MAX_COOLDOWN = 32;
+    private static final long NEGOTIATE_RETRY = 60_000;
+
+    private final List<Slot> slots = new ArrayList<>();
+    private NetUtils net;
+
+    /**
+     * 全部声明的指标名称，以及按下标对应的服务端ID（未分配为-1）、最新值、是否在上次上报后更新过与上次上报的值
+     */
+    private String[] metricNames = new String[0];
+    private int[] metricIds = new int[0];
+    private double[] latest = new double[0];
+    private boolean[] updated = new boolean[0];
+    private double[] reported = new double[0];
+    private boolean negotiated;
+    private long lastNegotiate;
+
+    private ScheduledExecutorService timer;
+    private ExecutorService workers;
+
+    /**
+     * 加载扩展采集器，协商指标ID后开始调度，没有扩展采集器时不创建任何线程
+     * @param net 与服务端通信的工具类，用于协商指标ID
+     */
+    public synchronized void start(NetUtils net) {
+        if(timer != null) return;
+        this.net = net;
+        Map<String, Integer> index = new LinkedHashMap<>();
+        for (MetricCollector collector : ServiceLoader.load(MetricCollector.class)) {
+            if(collector.interval() <= 0) {
+                log.warn("扩展采集器 {} 的采集间隔无效，已忽略", collector.name());
+                continue;
+            }
+            Map<String, Integer> slotIndex = new HashMap<>();
+            for (String metric : collector.metrics())
+                slotIndex.put(metric, index.computeIfAbsent(metric, k -> index.size()));
+            slots.add(new Slot(collector, slotIndex));
+        }
+        if(slots.isEmpty()) return;
+        metricNames = index.keySet().toArray(new String[0]);
+        metricIds = new int[metricNames.length];
+        Arrays.fill(metricIds, -1);
+        latest = new double[metricNames.length];
+        updated = new boolean[metricNames.length];
+        reported = new double[metricNames.length];
+        Arrays.fill(reported, Double.NaN);
+        this.negotiate();
+        timer = Executors.newSingleThreadScheduledExecutor(
+                runnable -> Thread.ofPlatform().daemon().name("collector-timer").unstarted(runnable));
+        //每个采集器同时最多只有一次采集在进行，线程数量不会超过采集器数量
+        workers = Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name("metric-collector-", 0).factory());
+        for (Slot slot : slots) {
+            long interval = slot.collector.interval();
+            timer.scheduleAtFixedRate(() -> this.dispatch(slot), interval, interval, TimeUnit.MILLISECONDS);
+            log.info("已加载扩展采集器 {}，间隔 {}ms，预算 {}ms，指标 {}",
+                    slot.collector.name(), interval, slot.collector.budget(), slot.metrics.keySet());
+        }
+    }
+
+    /**
+     * 是否有已分配ID的指标在上次上报后更新为不同的值，有变化时即使内置指标处于死区内也需要上报
+     * @return 是否有变化
+     */
+    public synchronized boolean changed() {
+        for (int i = 0; i < metricNames.length; i++) {
+            if(updated[i] && metricIds[i] >= 0 && Double.compare(latest[i], reported[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 把自上次上报以来更新过、且已分配ID的指标写入运行时数据，只在确定上报后调用，
+     * 未上报的采样不会取走这些指标
+     * @param detail 即将上报的运行时数据
+     */
+    public synchronized void drain(RuntimeDetail detail) {
+        if(metricNames.length == 0) return;
+        if(!negotiated && System.currentTimeMillis() - lastNegotiate >= NEGOTIATE_RETRY) this.negotiate();
+        int count = 0;
+        for (int i = 0; i < metricNames.length; i++) {
+            if(updated[i] && metricIds[i] >= 0) count++;
+        }
+        if(count == 0) return;
+        int[] ids = new int[count];
+        double[] values = new double[count];
+        for (int i = 0, j = 0; i < metricNames.length; i++) {
+            if(!updated[i] || metricIds[i] < 0) continue;
+            ids[j] = metricIds[i];
+            values[j++] = latest[i];
+            reported[i] = latest[i];
+            updated[i] = false;
+        }
+        detail.setMetricIds(ids).setMetricValues(values);
+    }
+
+    /**
+     * 用全部声明的指标名称与服务端协商ID，服务端拒绝的名称保持未分配，其结果不会上报
+     */
+    private void negotiate() {
+        lastNegotiate = System.currentTimeMillis();
+        Map<String, Integer> ids = net.negotiateMetrics(List.of(metricNames));
+        if(ids == null) return;
+        negotiated = true;
+        for (int i = 0; i < metricNames.length; i++) {
+            Integer id = ids.get(metricNames[i]);
+            metricIds[i] = id == null ? -1 : id;
+            if(id == null) log.warn("扩展指标 {} 未被服务端接受，将不会上报", metricNames[i]);
+        }
+    }
+
+    /**
+     * 合并一次采集的结果，只接受该采集器声明过的指标
+     */
+    private synchronized void merge(Slot slot, MetricBatch batch) {
+        batch.values().forEach((metric, value) -> {
+            Integer index = slot.metrics.get(metric);
+            if(index == null || value == null) return;
+            latest[index] = value;
+            updated[index] = true;
+        });
+    }
+
+    private void dispatch(Slot slot) {
+        if(slot.cooldown > 0) {
+            slot.cooldown--;
+            return;
+        }
+        if(!slot.running.compareAndSet(false, true)) {
+            log.debug("扩展采集器 {} 上一次采集尚未结束，跳过本次采集", slot.collector.name());
+            return;
+        }
+        workers.execute(() -> this.run(slot));
+    }
+
+    private void run(Slot slot) {
+        MetricCollector collector = slot.collector;
+        MetricBatch batch = new MetricBatch();
+        long start = System.nanoTime();
+        try {
+            collector.collect(batch);
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            if(elapsed > collector.budget()) {
+                slot.overruns = Math.min(slot.overruns + 1, 6);
+                slot.cooldown = Math.min(1 << (slot.overruns - 1), MAX_COOLDOWN);
+                log.warn("扩展采集器 {} 耗时 {}ms，超过预算 {}ms，之后跳过 {} 次采集",
+                        collector.name(), elapsed, collector.budget(), slot.cooldown);
+            } else {
+                slot.overruns = 0;
+            }
+            this.merge(slot, batch);
+        } catch (Exception e) {
+            log.warn("扩展采集器 {} 采集失败", collector.name(), e);
+        } finally {
+            slot.running.set(false);
+        }
+    }
+
+    /**
+     * 一个采集器的调度状态，cooldown在采集完成时设置、由定时线程递减，两者不会同时发生
+     */
+    private static class Slot {
+        final MetricCollector collector;
+        final Map<String, Integer> metrics;
+        final AtomicBoolean running = new AtomicBoolean();
+        volatile int cooldown;
+        int overruns;
+
+        Slot(MetricCollector collector, Map<String, Integer> metrics) {
+            this.collector = collector;
+            this.metrics = metrics;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package cn.gugufish.collector;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一批采集结果，指标名称到数值
+ * 每次采集写入单独的批次，采集成功后才合并到公共批次，失败的采集不会留下一半的结果
+ */
+public class MetricBatch {
+    private final Map<String, Double> values = new HashMap<>();
+
+    public void put(String metric, double value) {
+        values.put(metric, value);
+    }
+
+    public Double get(String metric) {
+        return values.get(metric);
+    }
+
+    public double get(String metric, double defaultValue) {
+        Double value = values.get(metric);
+        return value == null ? defaultValue : value;
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    public Map<String, Double> values() {
+        return values;
+    }
+}
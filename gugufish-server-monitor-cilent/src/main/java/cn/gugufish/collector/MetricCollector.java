@@ -0,0 +1,44 @@
+package cn.gugufish.collector;
+
+import java.util.List;
+
+/**
+ * 指标采集器扩展接口
+ * 业务相关的指标通过实现此接口添加，不需要修改客户端本身：
+ * - 在jar包的 META-INF/services/cn.gugufish.collector.MetricCollector 中登记实现类，放到客户端的类路径上即可被加载
+ * - 每个采集器声明自己的指标名称、采集间隔与耗时预算，由CollectorScheduler在共享的线程池中调度
+ * - 采集结果写入传入的MetricBatch，只接受声明过的指标，随下一次运行时数据一起上报
+ * 内置的CPU、内存、磁盘与网络采集器也实现此接口，采集间隔为0，在每次上报时同步采集
+ */
+public interface MetricCollector {
+    /**
+     * @return 采集器名称，用于日志
+     */
+    String name();
+
+    /**
+     * @return 采集器会写入的全部指标名称
+     */
+    List<String> metrics();
+
+    /**
+     * @return 采集间隔（毫秒），为0时随每次上报同步采集
+     */
+    default long interval() {
+        return 10_000;
+    }
+
+    /**
+     * @return 单次采集的耗时预算（毫秒），超出后之后的若干次采集会被跳过
+     */
+    default long budget() {
+        return 1_000;
+    }
+
+    /**
+     * 进行一次采集
+     * @param batch 采集结果
+     * @throws Exception 采集失败，本次结果全部丢弃
+     */
+    void collect(MetricBatch batch) throws Exception;
+}
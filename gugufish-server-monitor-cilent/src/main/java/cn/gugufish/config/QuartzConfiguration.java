@@ -12,6 +12,11 @@ import org.springframework.context.annotation.Configuration;
 @Slf4j
 @Configuration
 public class QuartzConfiguration {
+    /**
+     * 上报任务与触发器的标识，收到服务端分配的上报计划后按此标识替换触发器
+     */
+    public static final String JOB_NAME = "monitor-task";
+    public static final String TRIGGER_NAME = "monitor-trigger";
 
     /**
      * 配置任务详情(JobDetail)
@@ -22,7 +27,7 @@ public class QuartzConfiguration {
     @Bean
     public JobDetail jobDetailFactoryBean() {
         return JobBuilder.newJob(MonitorJobBean.class) // 指定要执行的Job类
-                .withIdentity("monitor-task") // 设置任务的唯一标识
+                .withIdentity(JOB_NAME) // 设置任务的唯一标识
                 .storeDurably() // 即使没有触发器关联，也不会被删除
                 .build();
     }
@@ -30,11 +35,11 @@ public class QuartzConfiguration {
 
     @Bean
     public Trigger cronTriggerFactoryBean(JobDetail detail) {
-        // 每10秒执行一次
+        // 每10秒执行一次，服务端分配上报计划后会被替换
         CronScheduleBuilder cron = CronScheduleBuilder.cronSchedule("*/10 * * * * ?");
         return TriggerBuilder.newTrigger()
                 .forJob(detail) // 关联到上面定义的JobDetail
-                .withIdentity("monitor-trigger") // 设置触发器的唯一标识
+                .withIdentity(TRIGGER_NAME) // 设置触发器的唯一标识
                 .withSchedule(cron) // 设置调度策略
                 .build();
     }
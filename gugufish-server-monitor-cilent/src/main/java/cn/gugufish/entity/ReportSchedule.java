@@ -0,0 +1,23 @@
+package cn.gugufish.entity;
+
+import lombok.Data;
+
+/**
+ * 服务端分配的运行时数据上报计划，在满足 (时间戳 - phase) % interval == 0 的时刻上报
+ */
+@Data
+public class ReportSchedule {
+    //上报间隔（毫秒）
+    long interval;
+    //相对于整间隔的偏移（毫秒）
+    long phase;
+
+    /**
+     * 计算当前时刻之后下一次上报的时刻
+     * @param now 当前时间戳
+     * @return 下一次上报的时间戳
+     */
+    public long nextReportTime(long now) {
+        return now - Math.floorMod(now - phase, interval) + interval;
+    }
+}
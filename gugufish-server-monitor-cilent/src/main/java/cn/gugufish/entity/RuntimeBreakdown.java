@@ -0,0 +1,24 @@
+package cn.gugufish.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 按核心、磁盘与网卡拆分的运行时数据，同一设备在各数组中的下标相同
+ */
+@Data
+@Accessors(chain = true)
+public class RuntimeBreakdown {
+    //每个核心的使用率
+    double[] cpuCores;
+    //物理磁盘名称，以及读写速率（MB/s）、每秒读写次数与平均每次请求耗时（毫秒）
+    String[] disks;
+    double[] diskRead;
+    double[] diskWrite;
+    double[] diskIops;
+    double[] diskAwait;
+    //网卡名称，以及上传与下载速率（KB/s）
+    String[] interfaces;
+    double[] networkUpload;
+    double[] networkDownload;
+}
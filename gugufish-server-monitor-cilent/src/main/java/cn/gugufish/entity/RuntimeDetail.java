@@ -14,4 +14,33 @@ public class RuntimeDetail {
     double networkDownload;
     double diskRead;
     double diskWrite;
-}
\ No newline at end of file
+    //上报间隔内子采样的最小值、最大值与P95，未开启子采样时为null
+    Double cpuUsageMin;
+    Double cpuUsageMax;
+    Double cpuUsageP95;
+    Double memoryUsageMin;
+    Double memoryUsageMax;
+    Double memoryUsageP95;
+    Double networkUploadMin;
+    Double networkUploadMax;
+    Double networkUploadP95;
+    Double networkDownloadMin;
+    Double networkDownloadMax;
+    Double networkDownloadP95;
+    Double diskReadMin;
+    Double diskReadMax;
+    Double diskReadP95;
+    Double diskWriteMin;
+    Double diskWriteMax;
+    Double diskWriteP95;
+    //按核心、磁盘与网卡拆分的数据，首次上报时没有
+    RuntimeBreakdown breakdown;
+    //客户端自身的开销：CPU占用（单个核心的比例）、内存分配速率（MB/s）、常驻内存（MB）与当前的降级等级
+    Double agentCpuUsage;
+    Double agentAllocationRate;
+    Double agentMemory;
+    Integer agentThrottle;
+    //扩展采集器自上次上报以来采集的指标，ID由启动时与服务端协商的指标字典分配，与数值一一对应，没有时为null
+    int[] metricIds;
+    double[] metricValues;
+}
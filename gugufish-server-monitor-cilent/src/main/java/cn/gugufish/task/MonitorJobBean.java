@@ -1,6 +1,8 @@
 package cn.gugufish.task;
 
 import cn.gugufish.entity.RuntimeDetail;
+import cn.gugufish.util.BaseDetailSync;
+import cn.gugufish.util.DeadbandFilter;
 import cn.gugufish.util.MonitorUtils;
 import cn.gugufish.util.NetUtils;
 import jakarta.annotation.Resource;
@@ -18,9 +20,21 @@ public class MonitorJobBean extends QuartzJobBean {
     @Resource
     NetUtils net;
 
+    @Resource
+    DeadbandFilter deadband;
+
+    @Resource
+    BaseDetailSync detailSync;
+
     @Override
     protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
         RuntimeDetail runtimeDetail = monitor.monitorRuntimeDetail();
-        net.updateRuntimeDetails(runtimeDetail);
+        //扩展指标与拆分数据只在决定上报后取出，心跳或跳过时保留到下一次上报
+        switch (deadband.decide(runtimeDetail, monitor.extensionChanged())) {
+            case REPORT -> net.updateRuntimeDetails(monitor.completeReport(runtimeDetail));
+            case HEARTBEAT -> net.heartbeat();
+            case NONE -> { }
+        }
+        detailSync.check();
     }
 }
\ No newline at end of file
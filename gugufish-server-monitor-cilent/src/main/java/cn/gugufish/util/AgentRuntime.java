@@ -0,0 +1,108 @@
+package cn.gugufish.util;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import cn.gugufish.collector.CollectorScheduler;
+import cn.gugufish.entity.ConnectionConfig;
+import cn.gugufish.entity.ReportSchedule;
+import cn.gugufish.entity.RuntimeDetail;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 轻量运行方式
+ * 不启动Spring容器与Quartz，直接创建监控与通信工具类，并用一个定时线程池完成上报：
+ * - 配置项与Spring启动方式相同，通过 -Dspring.monitor.xxx 形式的系统属性传入
+ * - 连接配置文件与首次注册流程与Spring启动方式共用
+ * - 该类也是原生镜像的入口，原生镜像中不包含Spring容器
+ */
+@Slf4j
+public class AgentRuntime {
+    /**
+     * 未分配上报计划时的默认上报间隔，与Quartz的每10秒触发一致
+     */
+    private static final long DEFAULT_INTERVAL = 10_000;
+
+    private final MonitorUtils monitor = new MonitorUtils();
+    private final NetUtils net = new NetUtils();
+    private final DeadbandFilter deadband = new DeadbandFilter();
+    private final BaseDetailSync detailSync = new BaseDetailSync();
+    private final CollectorScheduler collectors = new CollectorScheduler();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            runnable -> Thread.ofPlatform().name("monitor-task").unstarted(runnable));
+
+    public static void main(String[] args) {
+        Logger root = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        new AgentRuntime().start();
+    }
+
+    /**
+     * 读取配置、完成注册与基本信息更新，然后按上报计划开始定时上报
+     */
+    public void start() {
+        long startTime = System.currentTimeMillis();
+        monitor.sampleInterval = Long.getLong("spring.monitor.sample-interval", 250);
+        monitor.collectors = collectors;
+        monitor.overheadBudget = Double.parseDouble(System.getProperty("spring.monitor.overhead.budget", "0.005"));
+        net.connectTimeout = Integer.getInteger("spring.monitor.transport.connect-timeout", 5);
+        net.requestTimeout = Integer.getInteger("spring.monitor.transport.request-timeout", 10);
+        net.maxRetries = Integer.getInteger("spring.monitor.transport.max-retries", 3);
+        net.backoffBase = Long.getLong("spring.monitor.transport.backoff-base", 500);
+        net.backoffMax = Long.getLong("spring.monitor.transport.backoff-max", 8000);
+        net.maxInFlight = Integer.getInteger("spring.monitor.transport.max-in-flight", 4);
+        net.init();
+        deadband.enabled = Boolean.getBoolean("spring.monitor.deadband.enabled");
+        deadband.threshold = Double.parseDouble(System.getProperty("spring.monitor.deadband.threshold", "0.1"));
+        deadband.keyframe = Integer.getInteger("spring.monitor.deadband.keyframe", 60);
+        deadband.heartbeat = Integer.getInteger("spring.monitor.deadband.heartbeat", 30);
+        detailSync.monitor = monitor;
+        detailSync.net = net;
+        detailSync.checkInterval = Integer.getInteger("spring.monitor.detail-check-interval", 300);
+
+        log.info("正在加载服务器连接配置...");
+        ConnectionConfig config = ConfigUtils.readConnectionConfigFromFile();
+        if(config == null) {
+            monitor.config = new ConnectionConfig(null, null, null);
+            config = ConfigUtils.registerToServer(net, monitor);
+        }
+        monitor.config = config;
+        net.connectionConfig = config;
+
+        ReportSchedule schedule = detailSync.start();
+        if(schedule == null || schedule.getInterval() <= 0) {
+            schedule = new ReportSchedule();
+            schedule.setInterval(DEFAULT_INTERVAL);
+        }
+        long now = System.currentTimeMillis();
+        scheduler.scheduleAtFixedRate(this::report, schedule.nextReportTime(now) - now,
+                schedule.getInterval(), TimeUnit.MILLISECONDS);
+        monitor.startSubSampling();
+        collectors.start(net);
+        log.info("轻量运行方式启动完成，耗时 {}ms，上报间隔 {}ms，相位 {}ms",
+                now - startTime, schedule.getInterval(), schedule.getPhase());
+    }
+
+    /**
+     * 采集并按死区过滤结果上报运行时数据，与Quartz上报任务的处理相同
+     */
+    private void report() {
+        try {
+            RuntimeDetail runtimeDetail = monitor.monitorRuntimeDetail();
+            //扩展指标与拆分数据只在决定上报后取出，心跳或跳过时保留到下一次上报
+            switch (deadband.decide(runtimeDetail, monitor.extensionChanged())) {
+                case REPORT -> net.updateRuntimeDetails(monitor.completeReport(runtimeDetail));
+                case HEARTBEAT -> net.heartbeat();
+                case NONE -> { }
+            }
+            detailSync.check();
+        } catch (Exception e) {
+            //异常会终止定时任务，这里只记录
+            log.error("上报运行时数据时出现问题", e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cn.gugufish.util;
+
+import cn.gugufish.entity.BaseDetail;
+import cn.gugufish.entity.ReportSchedule;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 系统基本信息的变化检测与同步
+ * 基本信息很少变化，不再每次启动都推送：
+ * - 以基本信息JSON的SHA-256作为指纹，上一次推送成功的指纹保存在本地配置文件夹中
+ * - 启动时指纹未变化则只向服务端获取上报计划，服务端没有该客户端的基本信息时仍然推送
+ * - 运行期间按检查间隔重新采集，硬件或IP地址变化时再推送
+ */
+@Slf4j
+@Component
+public class BaseDetailSync {
+    @Resource
+    MonitorUtils monitor;
+
+    @Resource
+    NetUtils net;
+
+    /**
+     * 运行期间重新检查基本信息的间隔（秒），不大于0时只在启动时检查
+     */
+    @Value("${spring.monitor.detail-check-interval:300}")
+    int checkInterval;
+
+    private String lastHash;
+    private long lastCheck;
+
+    /**
+     * 启动时同步基本信息并取得服务端分配的上报计划
+     * @return 上报计划，同步失败或服务端未分配时返回null
+     */
+    public synchronized ReportSchedule start() {
+        BaseDetail detail = monitor.monitorBaseDetail();
+        String hash = hash(detail);
+        lastHash = ConfigUtils.readDetailHash();
+        lastCheck = System.currentTimeMillis();
+        if(hash.equals(lastHash)) {
+            ReportSchedule schedule = net.reportSchedule();
+            if(schedule != null) {
+                log.info("系统基本信息没有变化，跳过更新");
+                return schedule;
+            }
+        }
+        log.info("正在向服务端更新基本信息");
+        return this.push(detail, hash);
+    }
+
+    /**
+     * 到达检查间隔时重新采集基本信息，有变化时推送，由上报任务在每次上报时调用
+     */
+    public synchronized void check() {
+        long now = System.currentTimeMillis();
+        if(checkInterval <= 0 || now - lastCheck < checkInterval * 1000L) return;
+        lastCheck = now;
+        BaseDetail detail = monitor.monitorBaseDetail();
+        String hash = hash(detail);
+        if(hash.equals(lastHash)) return;
+        log.info("检测到系统基本信息发生变化，正在向服务端更新");
+        this.push(detail, hash);
+    }
+
+    private ReportSchedule push(BaseDetail detail, String hash) {
+        ReportSchedule schedule = net.updateBaseDetails(detail);
+        if(schedule != null) {
+            lastHash = hash;
+            ConfigUtils.saveDetailHash(hash);
+        }
+        return schedule;
+    }
+
+    private static String hash(BaseDetail detail) {
+        try {
+            byte[] raw = JSONObject.toJSONString(detail).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(raw));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package cn.gugufish.util;
+
+/**
+ * 按核心、磁盘与网卡拆分的累计计数，两次计数之差用于计算各设备的使用情况
+ *
+ * @param nanos 采样时刻
+ * @param cores 每个核心的CPU时钟周期，顺序与OSHI的TickType一致
+ * @param disks 物理磁盘名称
+ * @param diskCounters 每块磁盘的计数，下标见DISK_*常量
+ * @param interfaces 网卡名称，不含环回网卡
+ * @param interfaceCounters 每张网卡的计数，下标见INTERFACE_*常量
+ */
+public record BreakdownCounters(long nanos, long[][] cores,
+                                String[] disks, long[][] diskCounters,
+                                String[] interfaces, long[][] interfaceCounters) {
+    //读完成次数、读取字节数、写完成次数、写入字节数、读写请求累计耗时（毫秒）
+    public static final int DISK_READS = 0;
+    public static final int DISK_READ_BYTES = 1;
+    public static final int DISK_WRITES = 2;
+    public static final int DISK_WRITE_BYTES = 3;
+    public static final int DISK_TIME = 4;
+    public static final int DISK_FIELDS = 5;
+    //发送字节数、接收字节数
+    public static final int INTERFACE_SENT = 0;
+    public static final int INTERFACE_RECEIVED = 1;
+    public static final int INTERFACE_FIELDS = 2;
+}
@@ -0,0 +1,122 @@
+package cn.gugufish.util;
+
+import cn.gugufish.entity.ConnectionConfig;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * 连接配置工具类
+ * 负责连接配置文件、基本信息指纹文件的读写与首次运行时的交互式注册，Spring启动方式与轻量运行方式共用
+ */
+@Slf4j
+public class ConfigUtils {
+
+    /**
+     * 引导用户注册到监控服务器
+     * 交互式地获取服务器地址、令牌和网络接口信息，并尝试注册到服务器
+     * 
+     * @param netUtils 网络工具类，用于与服务端通信
+     * @param monitorUtils 监控工具类，用于列出网卡
+     * @return 成功注册后的连接配置
+     */
+    public static ConnectionConfig registerToServer(NetUtils netUtils, MonitorUtils monitorUtils) {
+        Scanner scanner = new Scanner(System.in);
+        String token, address, ifName;
+        do{
+            System.out.println("请输入服务器地址 地址实例 'http://127.0.0.1:8080' :");
+            address = scanner.nextLine();
+            //去掉最后的/防止输入bug导致链接失败
+            if(address.endsWith("/"))
+                address = address.substring(0, address.length()-1);
+            log.info("请输入服务端生成的令牌:");
+            token = scanner.nextLine();
+            List<String> ifs = monitorUtils.listNetworkInterfaceName();
+            if(ifs.size() > 1) {
+                log.info("检测到您的主机有多个网卡设备: {}", ifs);
+                do {
+                    log.info("请选择需要监控的设备名称:");
+                    ifName = scanner.nextLine();
+                } while (!ifs.contains(ifName));
+            } else {
+                ifName = ifs.get(0);
+            }
+        }while (!netUtils.registerToServer(address,token));
+        ConnectionConfig config = new ConnectionConfig(address, token, ifName);
+        saveConnectionConfigToFile(config);
+        return  config;
+    }
+
+    /**
+     * 保存连接配置到本地文件
+     * 将连接配置序列化为JSON并保存到config/server.json文件
+     * @param connectionConfig 要保存的连接配置对象
+     */
+    public static void saveConnectionConfigToFile(ConnectionConfig connectionConfig){
+        File dir = new File("config");
+        if(!dir.exists() && dir.mkdirs())
+            log.info("创建配置文件夹成功");
+        File file = new File("config/server.json");
+        try(FileWriter fileWriter = new FileWriter(file)){
+            fileWriter.write(JSONObject.toJSONString(connectionConfig));
+            log.info("保存配置文件成功");
+        }catch (IOException e){
+            log.error("保存配置文件出错",e);
+        }
+        log.info("连接信息保存成功");
+    }
+
+    /**
+     * 从本地文件读取连接配置
+     * 从config/server.json文件读取并反序列化为ConnectionConfig对象
+     * @return 读取到的连接配置，如果文件不存在或读取失败则返回null
+     */
+    public static ConnectionConfig readConnectionConfigFromFile(){
+        File configurationFile = new File("config/server.json");
+        if(configurationFile.exists()){
+            try (FileInputStream stream = new FileInputStream(configurationFile)){
+                String raw =  new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+                return JSONObject.parseObject(raw,ConnectionConfig.class);
+            } catch (IOException e){
+              log.error("读取配置文件出错" , e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取上一次成功推送的系统基本信息指纹
+     * @return 指纹，文件不存在或读取失败时返回null
+     */
+    public static String readDetailHash() {
+        File file = new File("config/detail.hash");
+        if(!file.exists()) return null;
+        try (FileInputStream stream = new FileInputStream(file)) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            log.warn("读取基本信息指纹出错", e);
+            return null;
+        }
+    }
+
+    /**
+     * 保存成功推送的系统基本信息指纹到config/detail.hash文件
+     * @param hash 指纹
+     */
+    public static void saveDetailHash(String hash) {
+        File dir = new File("config");
+        if(!dir.exists() && !dir.mkdirs()) return;
+        try (FileWriter fileWriter = new FileWriter("config/detail.hash")) {
+            fileWriter.write(hash);
+        } catch (IOException e) {
+            log.warn("保存基本信息指纹出错", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package cn.gugufish.util;
+
+import cn.gugufish.collector.MetricBatch;
+import cn.gugufish.collector.MetricCollector;
+
+import java.util.List;
+
+/**
+ * 内置CPU采集器，根据两次上报之间的CPU时钟周期计算使用率
+ */
+class CpuCollector implements MetricCollector {
+    static final String CPU_USAGE = "cpuUsage";
+
+    private final MonitorUtils monitor;
+
+    CpuCollector(MonitorUtils monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public String name() {
+        return "cpu";
+    }
+
+    @Override
+    public List<String> metrics() {
+        return List.of(CPU_USAGE);
+    }
+
+    @Override
+    public long interval() {
+        return 0;
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        batch.put(CPU_USAGE, MonitorUtils.calculateCpuUsage(monitor.previous.ticks(), monitor.current.ticks()));
+    }
+}
@@ -0,0 +1,96 @@
+package cn.gugufish.util;
+
+import cn.gugufish.entity.RuntimeDetail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 运行时数据上报的死区过滤
+ * 开启后，只有某项指标相对上一次上报的值变化超过死区时才上报完整数据：
+ * - 变化量需要同时超过该指标的最小变化量与上次上报值乘以相对阈值，子采样的最大值也参与比较，短时突发不会被过滤
+ * - 距离上一次完整上报超过关键帧间隔时无论是否变化都上报一次，扩展指标有变化时也会上报
+ * - 其余时间只在距离上一次通信超过心跳间隔时发送心跳，服务端据此判断在线并把中间的时间视为数据没有变化
+ */
+@Component
+public class DeadbandFilter {
+    public enum Action { REPORT, HEARTBEAT, NONE }
+
+    //CPU使用率、内存（GB）、磁盘（GB）、上传与下载（KB/s）、读取与写入（MB/s）各自的最小变化量
+    private static final double[] FLOORS = {0.02, 0.1, 0.1, 8, 8, 0.1, 0.1};
+
+    @Value("${spring.monitor.deadband.enabled:false}")
+    boolean enabled;
+
+    /**
+     * 相对阈值，变化量与上次上报值之比
+     */
+    @Value("${spring.monitor.deadband.threshold:0.1}")
+    double threshold;
+
+    /**
+     * 关键帧间隔与心跳间隔（秒），心跳间隔需要小于服务端判定离线的60秒
+     */
+    @Value("${spring.monitor.deadband.keyframe:60}")
+    int keyframe;
+    @Value("${spring.monitor.deadband.heartbeat:30}")
+    int heartbeat;
+
+    private final double[] lastSent = new double[FLOORS.length];
+    private final double[] current = new double[FLOORS.length];
+    private final double[] peaks = new double[FLOORS.length];
+    private long lastReport;
+    private long lastContact;
+
+    /**
+     * 决定本次采样的处理方式，需要上报或发送心跳时同时记录为已通信
+     * @param detail 本次采样的运行时数据，采集失败时为null
+     * @param force 是否必须上报，例如扩展指标有变化
+     * @return 处理方式
+     */
+    public synchronized Action decide(RuntimeDetail detail, boolean force) {
+        long now = System.currentTimeMillis();
+        if(detail != null) {
+            this.load(detail);
+            if(!enabled || force || now - lastReport >= keyframe * 1000L || this.changed()) {
+                System.arraycopy(current, 0, lastSent, 0, current.length);
+                lastReport = lastContact = now;
+                return Action.REPORT;
+            }
+        }
+        if(now - lastContact >= heartbeat * 1000L) {
+            lastContact = now;
+            return Action.HEARTBEAT;
+        }
+        return Action.NONE;
+    }
+
+    private void load(RuntimeDetail detail) {
+        current[0] = detail.getCpuUsage();
+        current[1] = detail.getMemoryUsage();
+        current[2] = detail.getDiskUsage();
+        current[3] = detail.getNetworkUpload();
+        current[4] = detail.getNetworkDownload();
+        current[5] = detail.getDiskRead();
+        current[6] = detail.getDiskWrite();
+        //没有子采样时最大值就是本次的值
+        peaks[0] = peak(detail.getCpuUsageMax(), current[0]);
+        peaks[1] = peak(detail.getMemoryUsageMax(), current[1]);
+        peaks[2] = current[2];
+        peaks[3] = peak(detail.getNetworkUploadMax(), current[3]);
+        peaks[4] = peak(detail.getNetworkDownloadMax(), current[4]);
+        peaks[5] = peak(detail.getDiskReadMax(), current[5]);
+        peaks[6] = peak(detail.getDiskWriteMax(), current[6]);
+    }
+
+    private boolean changed() {
+        for (int i = 0; i < FLOORS.length; i++) {
+            double band = Math.max(FLOORS[i], Math.abs(lastSent[i]) * threshold);
+            if(Math.abs(current[i] - lastSent[i]) > band || peaks[i] - lastSent[i] > band) return true;
+        }
+        return false;
+    }
+
+    private static double peak(Double max, double value) {
+        return max == null ? value : max;
+    }
+}
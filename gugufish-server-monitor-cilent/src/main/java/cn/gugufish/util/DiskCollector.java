@@ -0,0 +1,44 @@
+package cn.gugufish.util;
+
+import cn.gugufish.collector.MetricBatch;
+import cn.gugufish.collector.MetricCollector;
+
+import java.util.List;
+
+/**
+ * 内置磁盘采集器，已用容量（GB）与两次上报之间的读写速率（MB/s）
+ */
+class DiskCollector implements MetricCollector {
+    static final String DISK_USAGE = "diskUsage";
+    static final String DISK_READ = "diskRead";
+    static final String DISK_WRITE = "diskWrite";
+
+    private final MonitorUtils monitor;
+
+    DiskCollector(MonitorUtils monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public String name() {
+        return "disk";
+    }
+
+    @Override
+    public List<String> metrics() {
+        return List.of(DISK_USAGE, DISK_READ, DISK_WRITE);
+    }
+
+    @Override
+    public long interval() {
+        return 0;
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        double seconds = monitor.statisticTime();
+        batch.put(DISK_USAGE, monitor.diskUsed() / 1024.0 / 1024 / 1024);
+        batch.put(DISK_READ, Math.max(monitor.current.read() - monitor.previous.read(), 0) / seconds / 1024 / 1024);
+        batch.put(DISK_WRITE, Math.max(monitor.current.write() - monitor.previous.write(), 0) / seconds / 1024 / 1024);
+    }
+}
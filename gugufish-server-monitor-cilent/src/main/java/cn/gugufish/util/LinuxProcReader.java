@@ -0,0 +1,523 @@
+package cn.gugufish.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Linux运行时数据读取器
+ * 直接读取 /proc/stat、/proc/meminfo、/proc/diskstats、/proc/net/dev 与挂载表：
+ * - 文件只在创建时打开一次，每次采样从偏移0重新读取，内核会重新生成内容
+ * - 读取到可复用的直接缓冲区中并逐字节解析，采样过程不创建对象
+ * - 挂载表不随每次采样读取，只在上报周期由调用方刷新，内容变化时才重新解析，
+ *   磁盘占用统计全部本地块设备文件系统，而不只是根目录
+ * - 同时保留按核心、磁盘与网卡拆分的计数，只在上报时复制一份
+ * 非Linux系统或读取失败时由调用方回退到OSHI。非线程安全。
+ */
+@Slf4j
+public class LinuxProcReader implements Closeable {
+    //CPU时钟周期字段数量，顺序与OSHI的TickType一致：user nice system idle iowait irq softirq steal
+    public static final int TICK_COUNT = 8;
+
+    private static final byte[] CPU = "cpu ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CORE = "cpu".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOOPBACK = "lo".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_TOTAL = "MemTotal:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEM_AVAILABLE = "MemAvailable:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VM_RSS = "VmRSS:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DEV_PREFIX = "/dev/".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOOP_PREFIX = "/dev/loop".getBytes(StandardCharsets.US_ASCII);
+    private static final int SECTOR_SIZE = 512;
+    //每个核心一行的最大长度，只读取 /proc/stat 开头的CPU部分
+    private static final int STAT_LINE_LENGTH = 256;
+
+    private final FileChannel stat;
+    private final FileChannel meminfo;
+    private final FileChannel diskstats;
+    private final FileChannel netdev;
+    private final FileChannel mounts;
+    private final FileChannel status;
+    private final byte[] networkInterface;
+    //物理磁盘名称，分区、环回设备与device-mapper设备不计入，避免重复统计
+    private final byte[][] disks;
+    private final String[] diskNames;
+    //网卡名称表，出现新网卡时扩充，generation记录每张网卡最近一次出现在第几次读取中
+    private byte[][] interfaces = new byte[0][];
+    private String[] interfaceNames = new String[0];
+    private int[] interfaceGenerations = new int[0];
+    private int generation;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private int limit;
+    private int position;
+    private int mountsHash;
+    private volatile File[] mountPoints = new File[0];
+
+    //以下为最近一次读取的结果
+    private final long[] ticks = new long[TICK_COUNT];
+    private long memoryTotal;
+    private long memoryAvailable;
+    private long diskRead;
+    private long diskWrite;
+    private long networkSent;
+    private long networkReceived;
+    private long[][] coreTicks;
+    private int coreCount;
+    private final long[][] diskCounters;
+    private long[][] interfaceCounters = new long[0][];
+
+    private LinuxProcReader(String networkInterface) throws IOException {
+        this(Path.of("/proc"), listPhysicalDisks(), networkInterface);
+    }
+
+    /**
+     * 从指定目录读取与 /proc 结构相同的文件，测试时可以使用固定内容的文件
+     * @param proc /proc 目录
+     * @param diskNames 物理磁盘名称
+     * @param networkInterface 需要统计流量的网卡名称
+     * @throws IOException 文件无法打开
+     */
+    LinuxProcReader(Path proc, String[] diskNames, String networkInterface) throws IOException {
+        this.networkInterface = networkInterface.getBytes(StandardCharsets.US_ASCII);
+        this.diskNames = diskNames.clone();
+        this.disks = new byte[diskNames.length][];
+        for (int i = 0; i < disks.length; i++) disks[i] = diskNames[i].getBytes(StandardCharsets.US_ASCII);
+        this.diskCounters = new long[disks.length][BreakdownCounters.DISK_FIELDS];
+        List<FileChannel> opened = new ArrayList<>();
+        try {
+            this.stat = this.open(proc.resolve("stat"), opened);
+            this.meminfo = this.open(proc.resolve("meminfo"), opened);
+            this.diskstats = this.open(proc.resolve("diskstats"), opened);
+            this.netdev = this.open(proc.resolve("net/dev"), opened);
+            this.mounts = this.open(proc.resolve("self/mounts"), opened);
+            this.status = this.open(proc.resolve("self/status"), opened);
+        } catch (IOException e) {
+            for (FileChannel channel : opened) channel.close();
+            throw e;
+        }
+        this.coreTicks = new long[this.countCores()][TICK_COUNT];
+    }
+
+    /**
+     * 在Linux系统上创建读取器
+     * @param networkInterface 需要统计流量的网卡名称
+     * @return 读取器，非Linux系统或无法读取时返回null
+     */
+    public static LinuxProcReader create(String networkInterface) {
+        if(!System.getProperty("os.name", "").toLowerCase().startsWith("linux")) return null;
+        try {
+            LinuxProcReader reader = new LinuxProcReader(networkInterface);
+            if(reader.read() && reader.refreshMounts()) return reader;
+            reader.close();
+        } catch (IOException e) {
+            log.warn("无法读取 /proc 文件系统，将使用通用方式采集运行时数据: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 读取一次全部计数，子采样也会调用，因此不包含挂载表
+     * @return 是否读取成功
+     */
+    public boolean read() {
+        try {
+            this.readStat();
+            this.readMeminfo();
+            this.readDiskstats();
+            this.readNetdev();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("读取 /proc 文件系统时出现问题", e);
+            return false;
+        }
+    }
+
+    /**
+     * 将最近一次读取的CPU时钟周期复制到目标数组
+     * @param target 长度至少为TICK_COUNT的数组
+     */
+    public void copyTicks(long[] target) {
+        System.arraycopy(ticks, 0, target, 0, TICK_COUNT);
+    }
+
+    public long memoryTotal() {
+        return memoryTotal;
+    }
+
+    public long memoryUsed() {
+        return memoryTotal - memoryAvailable;
+    }
+
+    public long diskRead() {
+        return diskRead;
+    }
+
+    public long diskWrite() {
+        return diskWrite;
+    }
+
+    public long networkSent() {
+        return networkSent;
+    }
+
+    public long networkReceived() {
+        return networkReceived;
+    }
+
+    /**
+     * 复制最近一次读取的按核心、磁盘与网卡拆分的计数，只在上报时调用
+     * @return 拆分计数
+     */
+    public BreakdownCounters breakdown() {
+        long[][] cores = new long[coreCount][];
+        for (int i = 0; i < coreCount; i++) cores[i] = coreTicks[i].clone();
+        long[][] disk = new long[diskCounters.length][];
+        for (int i = 0; i < disk.length; i++) disk[i] = diskCounters[i].clone();
+        List<String> names = new ArrayList<>();
+        List<long[]> counters = new ArrayList<>();
+        for (int i = 0; i < interfaces.length; i++) {
+            if(interfaceGenerations[i] != generation) continue;
+            names.add(interfaceNames[i]);
+            counters.add(interfaceCounters[i].clone());
+        }
+        return new BreakdownCounters(System.nanoTime(), cores, diskNames.clone(), disk,
+                names.toArray(new String[0]), counters.toArray(new long[0][]));
+    }
+
+    /**
+     * 全部本地块设备文件系统的总容量
+     * @return 字节数
+     */
+    public long diskTotal() {
+        long total = 0;
+        for (File mount : mountPoints) total += mount.getTotalSpace();
+        return total;
+    }
+
+    /**
+     * 全部本地块设备文件系统的已用容量
+     * @return 字节数
+     */
+    public long diskUsed() {
+        long used = 0;
+        for (File mount : mountPoints) used += mount.getTotalSpace() - mount.getFreeSpace();
+        return used;
+    }
+
+    /**
+     * 读取本进程的常驻内存，只在上报时调用
+     * @return 字节数，读取失败时返回-1
+     */
+    public long residentMemory() {
+        try {
+            this.load(status, Integer.MAX_VALUE);
+            while (position < limit) {
+                if(this.startsWith(VM_RSS)) {
+                    position += VM_RSS.length;
+                    return this.nextLong() * 1024;
+                }
+                this.nextLine();
+            }
+        } catch (IOException e) {
+            log.warn("读取 /proc/self/status 时出现问题", e);
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel channel : new FileChannel[]{stat, meminfo, diskstats, netdev, mounts, status}) {
+            if(channel != null) channel.close();
+        }
+    }
+
+    private FileChannel open(Path path, List<FileChannel> opened) throws IOException {
+        FileChannel channel = FileChannel.open(path);
+        opened.add(channel);
+        return channel;
+    }
+
+    private static String[] listPhysicalDisks() throws IOException {
+        List<String> names = new ArrayList<>();
+        File[] devices = new File("/sys/block").listFiles();
+        if(devices == null) throw new IOException("无法读取 /sys/block");
+        for (File device : devices) {
+            if(new File(device, "device").exists()) names.add(device.getName());
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * 从偏移0开始把整个文件读入缓冲区，缓冲区不足时扩容
+     * @param channel 文件
+     * @param max 最多读取的字节数
+     */
+    private void load(FileChannel channel, int max) throws IOException {
+        while (true) {
+            buffer.clear();
+            if(max < buffer.capacity()) buffer.limit(max);
+            long offset = 0;
+            int count;
+            while (buffer.hasRemaining() && (count = channel.read(buffer, offset)) > 0) offset += count;
+            if(buffer.hasRemaining() || buffer.limit() == max) break;
+            buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        }
+        limit = buffer.position();
+        position = 0;
+    }
+
+    private int countCores() throws IOException {
+        this.load(stat, Integer.MAX_VALUE);
+        int count = 0;
+        while (position < limit && this.startsWith(CORE)) {
+            count++;
+            this.nextLine();
+        }
+        return Math.max(count - 1, 0);
+    }
+
+    private void readStat() throws IOException {
+        //只需要开头的CPU汇总行与每个核心一行
+        this.load(stat, STAT_LINE_LENGTH * (coreTicks.length + 2));
+        if(!this.startsWith(CPU)) throw new IOException("/proc/stat 格式错误");
+        position += CPU.length;
+        for (int i = 0; i < TICK_COUNT; i++) ticks[i] = this.nextLong();
+        this.nextLine();
+        int cores = 0;
+        while (this.startsWith(CORE)) {
+            if(cores == coreTicks.length) {
+                //有核心上线，扩充后下一次读取更长的内容
+                coreTicks = Arrays.copyOf(coreTicks, cores + 1);
+                coreTicks[cores] = new long[TICK_COUNT];
+            }
+            position += CORE.length;
+            this.nextLong();
+            for (int i = 0; i < TICK_COUNT; i++) coreTicks[cores][i] = this.nextLong();
+            this.nextLine();
+            //最后一行没有读完整时不计入
+            if(position > limit) break;
+            cores++;
+        }
+        coreCount = cores;
+    }
+
+    private void readMeminfo() throws IOException {
+        this.load(meminfo, Integer.MAX_VALUE);
+        int found = 0;
+        while (position < limit && found < 2) {
+            if(this.startsWith(MEM_TOTAL)) {
+                position += MEM_TOTAL.length;
+                memoryTotal = this.nextLong() * 1024;
+                found++;
+            } else if(this.startsWith(MEM_AVAILABLE)) {
+                position += MEM_AVAILABLE.length;
+                memoryAvailable = this.nextLong() * 1024;
+                found++;
+            }
+            this.nextLine();
+        }
+    }
+
+    private void readDiskstats() throws IOException {
+        this.load(diskstats, Integer.MAX_VALUE);
+        long read = 0, write = 0;
+        while (position < limit) {
+            this.nextLong();
+            this.nextLong();
+            this.skipSpaces();
+            int index = this.matchDisk();
+            if(index >= 0) {
+                //名称之后依次为：读完成次数 读合并次数 读扇区数 读耗时 写完成次数 写合并次数 写扇区数 写耗时
+                long[] counters = diskCounters[index];
+                counters[BreakdownCounters.DISK_READS] = this.nextLong();
+                this.nextLong();
+                counters[BreakdownCounters.DISK_READ_BYTES] = this.nextLong() * SECTOR_SIZE;
+                counters[BreakdownCounters.DISK_TIME] = this.nextLong();
+                counters[BreakdownCounters.DISK_WRITES] = this.nextLong();
+                this.nextLong();
+                counters[BreakdownCounters.DISK_WRITE_BYTES] = this.nextLong() * SECTOR_SIZE;
+                counters[BreakdownCounters.DISK_TIME] += this.nextLong();
+                read += counters[BreakdownCounters.DISK_READ_BYTES];
+                write += counters[BreakdownCounters.DISK_WRITE_BYTES];
+            }
+            this.nextLine();
+        }
+        diskRead = read;
+        diskWrite = write;
+    }
+
+    private void readNetdev() throws IOException {
+        this.load(netdev, Integer.MAX_VALUE);
+        generation++;
+        //跳过两行表头
+        this.nextLine();
+        this.nextLine();
+        while (position < limit) {
+            this.skipSpaces();
+            int start = position;
+            while (position < limit && buffer.get(position) != ':') position++;
+            int length = position - start;
+            position++;
+            //每行依次为接收的8项统计与发送的8项统计，字节数分别是第1项与第9项
+            long received = this.nextLong();
+            for (int i = 0; i < 7; i++) this.nextLong();
+            long sent = this.nextLong();
+            if(this.matches(start, length, networkInterface)) {
+                networkReceived = received;
+                networkSent = sent;
+            }
+            if(!this.matches(start, length, LOOPBACK)) {
+                int index = this.interfaceIndex(start, length);
+                long[] counters = interfaceCounters[index];
+                counters[BreakdownCounters.INTERFACE_RECEIVED] = received;
+                counters[BreakdownCounters.INTERFACE_SENT] = sent;
+            }
+            this.nextLine();
+        }
+    }
+
+    /**
+     * 查找网卡在名称表中的位置，新出现的网卡加入名称表
+     * @param start 名称在缓冲区中的起始位置
+     * @param length 名称长度
+     * @return 网卡下标
+     */
+    private int interfaceIndex(int start, int length) {
+        for (int i = 0; i < interfaces.length; i++) {
+            if(this.matches(start, length, interfaces[i])) {
+                interfaceGenerations[i] = generation;
+                return i;
+            }
+        }
+        int index = interfaces.length;
+        byte[] name = new byte[length];
+        buffer.get(start, name);
+        interfaces = Arrays.copyOf(interfaces, index + 1);
+        interfaces[index] = name;
+        interfaceNames = Arrays.copyOf(interfaceNames, index + 1);
+        interfaceNames[index] = new String(name, StandardCharsets.US_ASCII);
+        interfaceGenerations = Arrays.copyOf(interfaceGenerations, index + 1);
+        interfaceGenerations[index] = generation;
+        interfaceCounters = Arrays.copyOf(interfaceCounters, index + 1);
+        interfaceCounters[index] = new long[BreakdownCounters.INTERFACE_FIELDS];
+        return index;
+    }
+
+    private boolean matches(int start, int length, byte[] name) {
+        if(length != name.length) return false;
+        for (int i = 0; i < length; i++) {
+            if(buffer.get(start + i) != name[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 刷新挂载表，内容变化时重新解析本地块设备的挂载点，同一设备只统计一次，只在上报时调用
+     * @return 是否读取成功，失败时保留上一次的挂载点
+     */
+    public boolean refreshMounts() {
+        try {
+            this.parseMounts();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("读取 /proc/self/mounts 时出现问题", e);
+            return false;
+        }
+    }
+
+    private void parseMounts() throws IOException {
+        this.load(mounts, Integer.MAX_VALUE);
+        int hash = 1;
+        for (int i = 0; i < limit; i++) hash = 31 * hash + buffer.get(i);
+        if(hash == mountsHash && mountPoints.length > 0) return;
+        mountsHash = hash;
+        Set<String> devices = new HashSet<>();
+        List<File> points = new ArrayList<>();
+        while (position < limit) {
+            if(this.startsWith(DEV_PREFIX) && !this.startsWith(LOOP_PREFIX)) {
+                String device = this.nextField();
+                String point = this.nextField();
+                if(devices.add(device)) points.add(new File(point));
+            }
+            this.nextLine();
+        }
+        mountPoints = points.toArray(new File[0]);
+    }
+
+    private int matchDisk() {
+        for (int i = 0; i < disks.length; i++) {
+            byte[] disk = disks[i];
+            if(this.startsWith(disk) && position + disk.length < limit && buffer.get(position + disk.length) == ' ') {
+                position += disk.length;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if(position + prefix.length > limit) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if(buffer.get(position + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private void skipSpaces() {
+        while (position < limit && buffer.get(position) == ' ') position++;
+    }
+
+    private void nextLine() {
+        while (position < limit && buffer.get(position) != '\n') position++;
+        position++;
+    }
+
+    private long nextLong() {
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if(b >= '0' && b <= '9') break;
+            position++;
+        }
+        long value = 0;
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if(b < '0' || b > '9') break;
+            value = value * 10 + (b - '0');
+            position++;
+        }
+        return value;
+    }
+
+    /**
+     * 读取挂载表中以空格分隔的一个字段，并还原其中八进制转义的空白字符
+     * @return 字段内容
+     */
+    private String nextField() {
+        this.skipSpaces();
+        ByteArrayOutputStream field = new ByteArrayOutputStream();
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if(b == ' ' || b == '\n') break;
+            if(b == '\\' && position + 3 < limit) {
+                field.write((buffer.get(position + 1) - '0') * 64 + (buffer.get(position + 2) - '0') * 8
+                        + (buffer.get(position + 3) - '0'));
+                position += 4;
+            } else {
+                field.write(b);
+                position++;
+            }
+        }
+        return field.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,39 @@
+package cn.gugufish.util;
+
+import cn.gugufish.collector.MetricBatch;
+import cn.gugufish.collector.MetricCollector;
+
+import java.util.List;
+
+/**
+ * 内置内存采集器，已用内存（GB）
+ */
+class MemoryCollector implements MetricCollector {
+    static final String MEMORY_USAGE = "memoryUsage";
+
+    private final MonitorUtils monitor;
+
+    MemoryCollector(MonitorUtils monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public List<String> metrics() {
+        return List.of(MEMORY_USAGE);
+    }
+
+    @Override
+    public long interval() {
+        return 0;
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        batch.put(MEMORY_USAGE, monitor.current.memory() / 1024.0 / 1024 / 1024);
+    }
+}
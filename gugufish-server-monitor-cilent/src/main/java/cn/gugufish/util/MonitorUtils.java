@@ -1,10 +1,15 @@
 package cn.gugufish.util;
 
+import cn.gugufish.collector.CollectorScheduler;
+import cn.gugufish.collector.MetricBatch;
+import cn.gugufish.collector.MetricCollector;
 import cn.gugufish.entity.BaseDetail;
 import cn.gugufish.entity.ConnectionConfig;
+import cn.gugufish.entity.RuntimeBreakdown;
 import cn.gugufish.entity.RuntimeDetail;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import oshi.SystemInfo;
@@ -12,19 +17,23 @@ import oshi.hardware.CentralProcessor;
 import oshi.hardware.HWDiskStore;
 import oshi.hardware.HardwareAbstractionLayer;
 import oshi.hardware.NetworkIF;
+import oshi.software.os.OSProcess;
 import oshi.software.os.OperatingSystem;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.NetworkInterface;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 系统监控工具类
  * 该工具类用于获取系统的各项硬件和运行时信息，包括：
  * 1. 基本系统信息：操作系统类型、版本、CPU信息、内存大小、磁盘容量等
  * 2. 运行时状态：CPU使用率、内存使用情况、磁盘使用情况、网络流量等
- * 该类使用OSHI库获取底层系统信息，支持跨平台监控。
+ * 该类使用OSHI库获取底层系统信息，支持跨平台监控；Linux系统上运行时数据改为由LinuxProcReader直接读取 /proc。
  */
 @Slf4j
 @Component
@@ -47,6 +56,68 @@ public class MonitorUtils {
      */
     private final Properties properties = System.getProperties();
 
+    /**
+     * 缓存的网络接口与磁盘句柄，每次采样只刷新计数，不再重新枚举
+     * 句柄刷新失败（设备已移除）时清空，下一次采样重新查找
+     */
+    private NetworkIF networkInterface;
+    private List<HWDiskStore> diskStores;
+
+    /**
+     * 上一次采样的计数快照，用于按两次采样的真实间隔计算速率
+     */
+    Snapshot previous;
+
+    /**
+     * 本次上报采集的计数快照，内置采集器与上一次快照比较计算各项指标
+     */
+    Snapshot current;
+
+    /**
+     * 内置的CPU、内存、磁盘与网络采集器，随每次上报同步采集
+     */
+    private final List<MetricCollector> builtinCollectors = List.of(new CpuCollector(this), new MemoryCollector(this),
+            new DiskCollector(this), new NetworkCollector(this));
+
+    /**
+     * 扩展采集器的调度，上报时附带其自上次上报以来的结果
+     */
+    @Resource
+    CollectorScheduler collectors;
+
+    /**
+     * 上一次上报时按核心、磁盘与网卡拆分的计数
+     */
+    private BreakdownCounters previousBreakdown;
+
+    /**
+     * Linux系统上直接读取 /proc 的采集器，不可用时为null并回退到OSHI
+     */
+    private LinuxProcReader procReader;
+    private boolean procReaderResolved;
+
+    /**
+     * 子采样间隔（毫秒），不大于0时关闭子采样
+     */
+    @Value("${spring.monitor.sample-interval:250}")
+    long sampleInterval;
+
+    /**
+     * 子采样的聚合器、后台线程与上一次子采样的快照，样本数组复用
+     */
+    private RuntimeAggregator aggregator;
+    private ScheduledExecutorService sampler;
+    private Snapshot samplePrevious;
+    private final double[] sampleValues = new double[RuntimeAggregator.METRICS];
+    private long sampleTicks;
+
+    /**
+     * 客户端自身的CPU占用预算，单个核心的比例，超过时逐级降低采集强度，不大于0时只统计不限制
+     */
+    @Value("${spring.monitor.overhead.budget:0.005}")
+    double overheadBudget;
+    private OverheadGovernor governor;
+
     /**
      * 获取系统基本信息
      * 收集系统的静态信息，包括：
@@ -62,7 +133,10 @@ public class MonitorUtils {
         OperatingSystem operatingSystem = systemInfo.getOperatingSystem();
         HardwareAbstractionLayer hardware = systemInfo.getHardware();
         double memory = hardware.getMemory().getTotal() / 1024.0 / 1024 / 1024;
-        double diskSize = Arrays.stream(File.listRoots()).mapToLong(File::getTotalSpace).sum() / 1024.0 / 1024 / 1024;
+        LinuxProcReader reader = this.resolveProcReader();
+        double diskSize = (reader != null ? reader.diskTotal() :
+                Arrays.stream(File.listRoots()).mapToLong(File::getTotalSpace).sum()) / 1024.0 / 1024 / 1024;
+        //每次重新查找网卡，缓存的句柄不会刷新IP地址
         String ip = Objects.requireNonNull(this.findNetworkInterface(hardware)).getIPv4addr()[0];
         return new BaseDetail()
                 .setOsArch(properties.getProperty("os.arch"))
@@ -85,55 +159,298 @@ public class MonitorUtils {
      * - 网络上传和下载速率（KB/s）
      * - 磁盘读写速率（MB/s）
      * - 当前时间戳
-     * 该方法会在指定的统计时间内（默认1秒）采集两次数据，计算资源使用变化率
+     * 不在任务中等待，而是与上一次采样的计数快照比较，按两次采样的真实间隔计算变化率；
+     * 首次采样时以系统启动时刻的零计数作为上一次快照，得到的是启动以来的平均值。
+     * 各项指标由内置采集器根据两次快照计算；
+     * 开启子采样时同时附带间隔内各项指标的最小值、最大值与P95；
+     * 扩展采集器的结果与按核心、磁盘与网卡拆分的数据在决定上报后由completeReport附带；
+     * 同时附带客户端自身的开销，开销超过预算时由OverheadGovernor降低子采样频率或停止采集拆分数据
      *
      * @return 包含系统运行时状态的RuntimeDetail对象，如果获取失败则返回null
      */
-    public RuntimeDetail monitorRuntimeDetail() {
-        double statisticTime = 1;
+    public synchronized RuntimeDetail monitorRuntimeDetail() {
         try {
             HardwareAbstractionLayer hardware = systemInfo.getHardware();
-            NetworkIF networkInterface = Objects.requireNonNull(this.findNetworkInterface(hardware));
-            CentralProcessor processor = hardware.getProcessor();
-            double upload = networkInterface.getBytesSent(), download = networkInterface.getBytesRecv();
-            double read = hardware.getDiskStores().stream().mapToLong(HWDiskStore::getReadBytes).sum();
-            double write = hardware.getDiskStores().stream().mapToLong(HWDiskStore::getWriteBytes).sum();
-            long[] ticks = processor.getSystemCpuLoadTicks();
-            Thread.sleep((long) (statisticTime * 1000));
-            networkInterface = Objects.requireNonNull(this.findNetworkInterface(hardware));
-            upload = (networkInterface.getBytesSent() - upload) / statisticTime;
-            download =  (networkInterface.getBytesRecv() - download) / statisticTime;
-            read = (hardware.getDiskStores().stream().mapToLong(HWDiskStore::getReadBytes).sum() - read) / statisticTime;
-            write = (hardware.getDiskStores().stream().mapToLong(HWDiskStore::getWriteBytes).sum() - write) / statisticTime;
-            double memory = (hardware.getMemory().getTotal() - hardware.getMemory().getAvailable()) / 1024.0 / 1024 / 1024;
-            double disk = Arrays.stream(File.listRoots())
-                    .mapToLong(file -> file.getTotalSpace() - file.getFreeSpace()).sum() / 1024.0 / 1024 / 1024;
-            return new RuntimeDetail()
-                    .setCpuUsage(this.calculateCpuUsage(processor, ticks))
-                    .setMemoryUsage(memory)
-                    .setDiskUsage(disk)
-                    .setNetworkUpload(upload / 1024)
-                    .setNetworkDownload(download / 1024)
-                    .setDiskRead(read / 1024/ 1024)
-                    .setDiskWrite(write / 1024 / 1024)
+            if(previous == null) {
+                long uptime = systemInfo.getOperatingSystem().getSystemUptime();
+                previous = new Snapshot(System.nanoTime() - uptime * 1_000_000_000L,
+                        new long[CentralProcessor.TickType.values().length], 0, 0, 0, 0, 0);
+            }
+            current = this.readSnapshot(hardware);
+            //挂载表只在上报周期刷新，子采样不读取
+            if(procReader != null) procReader.refreshMounts();
+            MetricBatch batch = new MetricBatch();
+            for (MetricCollector collector : builtinCollectors) {
+                long start = System.nanoTime();
+                collector.collect(batch);
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                if(elapsed > collector.budget())
+                    log.warn("内置采集器 {} 耗时 {}ms，超过预算 {}ms", collector.name(), elapsed, collector.budget());
+            }
+            previous = current;
+            //内置指标直接对应固定字段，扩展指标按协商的ID附带
+            RuntimeDetail detail = new RuntimeDetail()
+                    .setCpuUsage(batch.get(CpuCollector.CPU_USAGE, 0))
+                    .setMemoryUsage(batch.get(MemoryCollector.MEMORY_USAGE, 0))
+                    .setDiskUsage(batch.get(DiskCollector.DISK_USAGE, 0))
+                    .setNetworkUpload(batch.get(NetworkCollector.NETWORK_UPLOAD, 0))
+                    .setNetworkDownload(batch.get(NetworkCollector.NETWORK_DOWNLOAD, 0))
+                    .setDiskRead(batch.get(DiskCollector.DISK_READ, 0))
+                    .setDiskWrite(batch.get(DiskCollector.DISK_WRITE, 0))
                     .setTimestamp(new Date().getTime());
+            if(aggregator != null) aggregator.fill(detail);
+            if(governor == null) governor = new OverheadGovernor(overheadBudget);
+            governor.record(detail, procReader != null ? procReader.residentMemory() : this.residentMemory());
+            return detail;
         } catch (Exception e) {
             log.error("读取运行时数据出现问题", e);
         }
         return null;
     }
 
+    /**
+     * 扩展指标是否在上次上报后发生了变化，有变化时需要上报
+     *
+     * @return 是否有变化
+     */
+    public boolean extensionChanged() {
+        return collectors != null && collectors.changed();
+    }
+
+    /**
+     * 确定上报后附带扩展指标与拆分数据
+     * 扩展指标只在这里取出，拆分数据与上一次上报时的计数比较，心跳或跳过的采样不会丢失这部分数据
+     *
+     * @param detail 即将上报的运行时数据
+     * @return 同一个运行时数据对象
+     */
+    public synchronized RuntimeDetail completeReport(RuntimeDetail detail) {
+        if(collectors != null) collectors.drain(detail);
+        try {
+            if(governor != null && governor.level() < OverheadGovernor.BREAKDOWN_OFF) {
+                BreakdownCounters breakdown = procReader != null ? procReader.breakdown()
+                        : this.takeBreakdown(systemInfo.getHardware());
+                if(previousBreakdown != null) detail.setBreakdown(this.calculateBreakdown(previousBreakdown, breakdown));
+                previousBreakdown = breakdown;
+            } else {
+                previousBreakdown = null;
+            }
+        } catch (Exception e) {
+            log.error("读取拆分数据出现问题", e);
+        }
+        return detail;
+    }
+
+    /**
+     * 本次与上一次上报快照之间的间隔
+     *
+     * @return 秒数
+     */
+    double statisticTime() {
+        return Math.max(current.nanos - previous.nanos, 1) / 1e9;
+    }
+
+    /**
+     * 全部本地文件系统的已用容量，Linux系统上只统计块设备上的文件系统
+     *
+     * @return 字节数
+     */
+    long diskUsed() {
+        return procReader != null ? procReader.diskUsed() : Arrays.stream(File.listRoots())
+                .mapToLong(file -> file.getTotalSpace() - file.getFreeSpace()).sum();
+    }
+
+    /**
+     * 开启子采样，按配置的间隔在后台线程中记录瞬时值，上报时附带间隔内的最小值、最大值与P95
+     * 需要在连接配置加载完成后调用，间隔不大于0时不开启
+     */
+    public synchronized void startSubSampling() {
+        if(sampleInterval <= 0 || sampler != null) return;
+        //保留约三个上报周期的样本，上报短时失败时不丢失突发
+        aggregator = new RuntimeAggregator((int) Math.max(30_000 / sampleInterval, 1));
+        sampler = Executors.newSingleThreadScheduledExecutor(
+                runnable -> Thread.ofPlatform().daemon().name("runtime-sampler").unstarted(runnable));
+        sampler.scheduleAtFixedRate(this::subSample, sampleInterval, sampleInterval, TimeUnit.MILLISECONDS);
+        log.info("已开启运行时子采样，间隔 {}ms", sampleInterval);
+    }
+
+    /**
+     * 进行一次子采样，与上一次子采样比较得到瞬时速率，单位与上报数据一致
+     */
+    private synchronized void subSample() {
+        //超过开销预算时按步长跳过部分子采样，停止子采样时丢弃上一次快照，恢复后重新开始计算
+        int stride = governor == null ? 1 : governor.sampleStride();
+        if(stride == 0) {
+            samplePrevious = null;
+            return;
+        }
+        if(sampleTicks++ % stride != 0) return;
+        try {
+            Snapshot current = this.readSnapshot(systemInfo.getHardware());
+            if(samplePrevious != null) {
+                double statisticTime = Math.max(current.nanos - samplePrevious.nanos, 1) / 1e9;
+                sampleValues[RuntimeAggregator.CPU] = calculateCpuUsage(samplePrevious.ticks, current.ticks);
+                sampleValues[RuntimeAggregator.MEMORY] = current.memory / 1024.0 / 1024 / 1024;
+                sampleValues[RuntimeAggregator.UPLOAD] = Math.max(current.sent - samplePrevious.sent, 0) / statisticTime / 1024;
+                sampleValues[RuntimeAggregator.DOWNLOAD] = Math.max(current.received - samplePrevious.received, 0) / statisticTime / 1024;
+                sampleValues[RuntimeAggregator.READ] = Math.max(current.read - samplePrevious.read, 0) / statisticTime / 1024 / 1024;
+                sampleValues[RuntimeAggregator.WRITE] = Math.max(current.write - samplePrevious.write, 0) / statisticTime / 1024 / 1024;
+                aggregator.add(sampleValues);
+            }
+            samplePrevious = current;
+        } catch (Exception e) {
+            log.error("运行时子采样出现问题", e);
+        }
+    }
+
+    /**
+     * 采集当前的各项计数，Linux系统上直接读取 /proc，读取失败后回退到OSHI
+     *
+     * @param hardware 硬件抽象层对象
+     * @return 计数快照
+     */
+    private Snapshot readSnapshot(HardwareAbstractionLayer hardware) {
+        LinuxProcReader reader = this.resolveProcReader();
+        if(reader != null && !reader.read()) {
+            //读取失败后不再使用，之后的采样全部回退到OSHI
+            this.closeProcReader();
+            reader = null;
+        }
+        if(reader == null) return this.takeSnapshot(hardware);
+        long[] ticks = new long[LinuxProcReader.TICK_COUNT];
+        reader.copyTicks(ticks);
+        return new Snapshot(System.nanoTime(), ticks, reader.networkSent(), reader.networkReceived(),
+                reader.diskRead(), reader.diskWrite(), reader.memoryUsed());
+    }
+
+    /**
+     * 通过OSHI采集当前的各项计数，网络接口与磁盘使用缓存的句柄，只刷新其属性
+     *
+     * @param hardware 硬件抽象层对象
+     * @return 计数快照
+     */
+    private Snapshot takeSnapshot(HardwareAbstractionLayer hardware) {
+        long[] ticks = hardware.getProcessor().getSystemCpuLoadTicks();
+        long sent = 0, received = 0, read = 0, write = 0;
+        NetworkIF network = this.resolveNetworkInterface(hardware);
+        if(network != null && !network.updateAttributes()) {
+            //网卡已经不可用，重新查找，新查找到的句柄已经带有最新的计数
+            networkInterface = null;
+            network = this.resolveNetworkInterface(hardware);
+        }
+        if(network != null) {
+            sent = network.getBytesSent();
+            received = network.getBytesRecv();
+        }
+        if(diskStores == null || !diskStores.stream().allMatch(HWDiskStore::updateAttributes)) {
+            //有磁盘已经移除时重新枚举，新枚举到的句柄已经带有最新的计数
+            diskStores = hardware.getDiskStores();
+        }
+        for (HWDiskStore store : diskStores) {
+            read += store.getReadBytes();
+            write += store.getWriteBytes();
+        }
+        long memory = hardware.getMemory().getTotal() - hardware.getMemory().getAvailable();
+        return new Snapshot(System.nanoTime(), ticks, sent, received, read, write, memory);
+    }
+
+    /**
+     * 通过OSHI采集按核心、磁盘与网卡拆分的计数，磁盘使用缓存的句柄
+     *
+     * @param hardware 硬件抽象层对象
+     * @return 拆分计数
+     */
+    private BreakdownCounters takeBreakdown(HardwareAbstractionLayer hardware) {
+        long[][] cores = hardware.getProcessor().getProcessorCpuLoadTicks();
+        if(diskStores == null) diskStores = hardware.getDiskStores();
+        String[] disks = new String[diskStores.size()];
+        long[][] diskCounters = new long[disks.length][BreakdownCounters.DISK_FIELDS];
+        for (int i = 0; i < disks.length; i++) {
+            HWDiskStore store = diskStores.get(i);
+            disks[i] = store.getName().replace("/dev/", "");
+            diskCounters[i][BreakdownCounters.DISK_READS] = store.getReads();
+            diskCounters[i][BreakdownCounters.DISK_READ_BYTES] = store.getReadBytes();
+            diskCounters[i][BreakdownCounters.DISK_WRITES] = store.getWrites();
+            diskCounters[i][BreakdownCounters.DISK_WRITE_BYTES] = store.getWriteBytes();
+            diskCounters[i][BreakdownCounters.DISK_TIME] = store.getTransferTime();
+        }
+        List<NetworkIF> networks = hardware.getNetworkIFs().stream()
+                .filter(network -> !network.getName().equals("lo"))
+                .toList();
+        String[] interfaces = new String[networks.size()];
+        long[][] interfaceCounters = new long[interfaces.length][BreakdownCounters.INTERFACE_FIELDS];
+        for (int i = 0; i < interfaces.length; i++) {
+            NetworkIF network = networks.get(i);
+            interfaces[i] = network.getName();
+            interfaceCounters[i][BreakdownCounters.INTERFACE_SENT] = network.getBytesSent();
+            interfaceCounters[i][BreakdownCounters.INTERFACE_RECEIVED] = network.getBytesRecv();
+        }
+        return new BreakdownCounters(System.nanoTime(), cores, disks, diskCounters, interfaces, interfaceCounters);
+    }
+
+    /**
+     * 根据两次上报的拆分计数计算各核心使用率、各磁盘与各网卡的速率
+     * 磁盘与网卡按名称对应，新出现的设备本次记为0
+     *
+     * @param prev 上一次的拆分计数
+     * @param current 本次的拆分计数
+     * @return 拆分的运行时数据
+     */
+    private RuntimeBreakdown calculateBreakdown(BreakdownCounters prev, BreakdownCounters current) {
+        double statisticTime = Math.max(current.nanos() - prev.nanos(), 1) / 1e9;
+        double[] cores = new double[current.cores().length];
+        for (int i = 0; i < cores.length && i < prev.cores().length; i++)
+            cores[i] = calculateCpuUsage(prev.cores()[i], current.cores()[i]);
+        int diskCount = current.disks().length;
+        double[] read = new double[diskCount], write = new double[diskCount];
+        double[] iops = new double[diskCount], await = new double[diskCount];
+        for (int i = 0; i < diskCount; i++) {
+            long[] now = current.diskCounters()[i];
+            int index = Arrays.asList(prev.disks()).indexOf(current.disks()[i]);
+            long[] before = index < 0 ? now : prev.diskCounters()[index];
+            long operations = Math.max(now[BreakdownCounters.DISK_READS] - before[BreakdownCounters.DISK_READS], 0)
+                    + Math.max(now[BreakdownCounters.DISK_WRITES] - before[BreakdownCounters.DISK_WRITES], 0);
+            long time = Math.max(now[BreakdownCounters.DISK_TIME] - before[BreakdownCounters.DISK_TIME], 0);
+            read[i] = Math.max(now[BreakdownCounters.DISK_READ_BYTES] - before[BreakdownCounters.DISK_READ_BYTES], 0)
+                    / statisticTime / 1024 / 1024;
+            write[i] = Math.max(now[BreakdownCounters.DISK_WRITE_BYTES] - before[BreakdownCounters.DISK_WRITE_BYTES], 0)
+                    / statisticTime / 1024 / 1024;
+            iops[i] = operations / statisticTime;
+            await[i] = operations == 0 ? 0 : time * 1.0 / operations;
+        }
+        int interfaceCount = current.interfaces().length;
+        double[] upload = new double[interfaceCount], download = new double[interfaceCount];
+        for (int i = 0; i < interfaceCount; i++) {
+            long[] now = current.interfaceCounters()[i];
+            int index = Arrays.asList(prev.interfaces()).indexOf(current.interfaces()[i]);
+            long[] before = index < 0 ? now : prev.interfaceCounters()[index];
+            upload[i] = Math.max(now[BreakdownCounters.INTERFACE_SENT] - before[BreakdownCounters.INTERFACE_SENT], 0)
+                    / statisticTime / 1024;
+            download[i] = Math.max(now[BreakdownCounters.INTERFACE_RECEIVED] - before[BreakdownCounters.INTERFACE_RECEIVED], 0)
+                    / statisticTime / 1024;
+        }
+        return new RuntimeBreakdown()
+                .setCpuCores(cores)
+                .setDisks(current.disks())
+                .setDiskRead(read)
+                .setDiskWrite(write)
+                .setDiskIops(iops)
+                .setDiskAwait(await)
+                .setInterfaces(current.interfaces())
+                .setNetworkUpload(upload)
+                .setNetworkDownload(download);
+    }
+
     /**
      * 计算CPU使用率
      * 根据两次采集的CPU时钟周期差值计算CPU使用率
      * 计算公式：(系统时间 + 用户时间) / 总时间
      *
-     * @param processor CPU处理器对象
      * @param prevTicks 上一次采集的CPU时钟周期数组
+     * @param ticks 本次采集的CPU时钟周期数组
      * @return CPU使用率，范围0-1之间的小数
      */
-    private double calculateCpuUsage(CentralProcessor processor, long[] prevTicks) {
-        long[] ticks = processor.getSystemCpuLoadTicks();
+    static double calculateCpuUsage(long[] prevTicks, long[] ticks) {
         long nice = ticks[CentralProcessor.TickType.NICE.getIndex()]
                 - prevTicks[CentralProcessor.TickType.NICE.getIndex()];
         long irq = ticks[CentralProcessor.TickType.IRQ.getIndex()]
@@ -151,8 +468,44 @@ public class MonitorUtils {
         long idle = ticks[CentralProcessor.TickType.IDLE.getIndex()]
                 - prevTicks[CentralProcessor.TickType.IDLE.getIndex()];
         long totalCpu = cUser + nice + cSys + idle + ioWait + irq + softIrq + steal;
-        return (cSys + cUser) * 1.0 / totalCpu;
+        return totalCpu <= 0 ? 0 : (cSys + cUser) * 1.0 / totalCpu;
+    }
+    /**
+     * 通过OSHI获取客户端进程的常驻内存，非Linux系统使用
+     *
+     * @return 字节数，无法获取时返回-1
+     */
+    private long residentMemory() {
+        OSProcess process = systemInfo.getOperatingSystem().getCurrentProcess();
+        return process == null ? -1 : process.getResidentSetSize();
+    }
+
+    /**
+     * 获取 /proc 采集器，仅在首次调用时尝试创建，非Linux系统返回null
+     *
+     * @return 采集器对象，不可用时返回null
+     */
+    private synchronized LinuxProcReader resolveProcReader() {
+        if(!procReaderResolved) {
+            procReaderResolved = true;
+            procReader = LinuxProcReader.create(config.getNetworkInterface());
+            if(procReader != null) log.info("已启用 /proc 运行时数据采集");
+        }
+        return procReader;
+    }
+
+    /**
+     * 关闭 /proc 采集器，之后的采样回退到OSHI
+     */
+    private void closeProcReader() {
+        try {
+            procReader.close();
+        } catch (IOException e) {
+            log.warn("关闭 /proc 采集器时出现问题", e);
+        }
+        procReader = null;
     }
+
     /**
      * 获取系统所有网络接口名称列表
      * 用于在系统初始化时让用户选择要监控的网络接口
@@ -167,6 +520,17 @@ public class MonitorUtils {
                 .toList();
     }
 
+    /**
+     * 获取缓存的网络接口句柄，尚未缓存时查找一次
+     *
+     * @param hardware 硬件抽象层对象
+     * @return 网络接口对象，如果未找到则返回null
+     */
+    private NetworkIF resolveNetworkInterface(HardwareAbstractionLayer hardware) {
+        if(networkInterface == null) networkInterface = this.findNetworkInterface(hardware);
+        return networkInterface;
+    }
+
     /**
      * 查找指定的网络接口
      * 根据配置中的网络接口名称，从系统中查找对应的网络接口对象
@@ -199,4 +563,17 @@ public class MonitorUtils {
         // 发生异常时返回null
         return null;
     }
+
+    /**
+     * 一次采样的各项累计计数
+     *
+     * @param nanos 采样时刻
+     * @param ticks CPU时钟周期
+     * @param sent 网络发送字节数
+     * @param received 网络接收字节数
+     * @param read 磁盘读取字节数
+     * @param write 磁盘写入字节数
+     * @param memory 已用内存字节数
+     */
+    record Snapshot(long nanos, long[] ticks, long sent, long received, long read, long write, long memory) { }
 }
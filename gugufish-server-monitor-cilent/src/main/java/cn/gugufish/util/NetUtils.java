@@ -2,11 +2,15 @@ package cn.gugufish.util;
 
 import cn.gugufish.entity.BaseDetail;
 import cn.gugufish.entity.ConnectionConfig;
+import cn.gugufish.entity.ReportSchedule;
 import cn.gugufish.entity.Response;
 import cn.gugufish.entity.RuntimeDetail;
+import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
@@ -14,16 +18,80 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 与服务端通信的工具类
+ * 所有请求都通过同一个HttpClient异步发送，复用连接，优先使用HTTP/2（TLS下通过ALPN协商，明文连接时不支持则回退到HTTP/1.1）：
+ * - 连接与请求都有超时，网络异常、5xx与429响应按指数退避加随机抖动重试
+ * - 运行时数据异步上报，同时在途的上报数量有上限，超出时丢弃本次上报，服务端缓慢不会阻塞定时任务
+ * - 成功且不带数据的响应直接识别，不再完整反序列化
+ */
 @Slf4j
 @Component
 public class NetUtils {
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    /**
+     * 成功且不带数据的响应，解析后直接返回该对象
+     */
+    private static final Response ACK = new Response(0L, 200, null, "请求成功");
+
+    private HttpClient httpClient;
 
     @Lazy
     @Resource
     ConnectionConfig connectionConfig;
 
+    /**
+     * 建立连接的超时时间（秒）
+     */
+    @Value("${spring.monitor.transport.connect-timeout:5}")
+    int connectTimeout;
+
+    /**
+     * 单次请求的超时时间（秒）
+     */
+    @Value("${spring.monitor.transport.request-timeout:10}")
+    int requestTimeout;
+
+    /**
+     * 失败后的最大重试次数
+     */
+    @Value("${spring.monitor.transport.max-retries:3}")
+    int maxRetries;
+
+    /**
+     * 重试退避的基础时间与上限（毫秒）
+     */
+    @Value("${spring.monitor.transport.backoff-base:500}")
+    long backoffBase;
+    @Value("${spring.monitor.transport.backoff-max:8000}")
+    long backoffMax;
+
+    /**
+     * 同时在途的运行时数据上报数量上限
+     */
+    @Value("${spring.monitor.transport.max-in-flight:4}")
+    int maxInFlight;
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(connectTimeout))
+                .build();
+        inFlight = new Semaphore(maxInFlight);
+    }
+
     public boolean registerToServer(String address, String token) {
         log.info("正在向服务器注册...");
         Response response = this.doGet("/register",address,token);
@@ -35,50 +103,170 @@ public class NetUtils {
         }
         return response.isSuccess();
     }
-    private Response doGet(String url) {
-        return doGet(url,connectionConfig.getAddress(),connectionConfig.getToken());
-    }
     private Response doGet(String url, String address, String token) {
         try{
-            HttpRequest request = HttpRequest.newBuilder().GET()
-                    .uri(URI.create(address+"/monitor"+url))
-                    .header("Authorization", token).build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            return JSONObject.parseObject(response.body(),Response.class);
+            HttpRequest request = this.newRequest(address + "/monitor" + url, token).GET().build();
+            return this.sendAsync(request).join();
         }
         catch (Exception e){
             log.error("在发起服务端请求的时候出现了问题",e);
             return Response.errorResponse(e);
         }
     }
-    public void updateBaseDetails(BaseDetail detail) {
-        Response response = this.doPost("/detail", detail);
+    /**
+     * 更新系统基本信息，并取得服务端分配的上报计划
+     * @param detail 系统基本信息
+     * @return 上报计划，更新失败或服务端未分配时返回null
+     */
+    public ReportSchedule updateBaseDetails(BaseDetail detail) {
+        Response response = this.doPost("/detail", detail).join();
         if(response.isSuccess()) {
             log.info("系统基本信息已更新完成");
+            return response.data() == null ? null : response.asJson().to(ReportSchedule.class);
         } else {
             log.error("系统基本信息更新失败: {}", response.message());
+            return null;
         }
     }
-    public void updateRuntimeDetails(RuntimeDetail detail) {
-        Response response = this.doPost("/runtime", detail);
+
+    /**
+     * 基本信息没有变化时只获取服务端分配的上报计划
+     * @return 上报计划，服务端没有该客户端的基本信息或请求失败时返回null
+     */
+    public ReportSchedule reportSchedule() {
+        Response response = this.doGet("/schedule", connectionConfig.getAddress(), connectionConfig.getToken());
+        if(response.isSuccess() && response.data() != null)
+            return response.asJson().to(ReportSchedule.class);
+        log.info("未能获取上报计划: {}", response.message());
+        return null;
+    }
+
+    /**
+     * 与服务端协商扩展指标的ID
+     * @param names 全部扩展指标名称
+     * @return 指标名称到ID，服务端拒绝的名称不在其中，请求失败时返回null
+     */
+    public Map<String, Integer> negotiateMetrics(List<String> names) {
+        Response response = this.doPost("/metrics", names).join();
         if(!response.isSuccess()) {
-            log.warn("更新运行时状态时，接收到服务端的异常响应内容: {}", response.message());
+            log.warn("扩展指标协商失败: {}", response.message());
+            return null;
+        }
+        Map<String, Integer> ids = new HashMap<>();
+        response.asJson().forEach((name, id) -> ids.put(name, ((Number) id).intValue()));
+        return ids;
+    }
+
+    /**
+     * 异步上报运行时数据，不等待服务端响应
+     * @param detail 运行时数据
+     */
+    public void updateRuntimeDetails(RuntimeDetail detail) {
+        if(!inFlight.tryAcquire()) {
+            log.warn("仍有 {} 个运行时状态上报未完成，本次上报已丢弃", maxInFlight);
+            return;
         }
+        this.doPost("/runtime", detail).whenComplete((response, throwable) -> {
+            inFlight.release();
+            if(throwable != null) {
+                log.warn("更新运行时状态时出现问题", throwable);
+            } else if(!response.isSuccess()) {
+                log.warn("更新运行时状态时，接收到服务端的异常响应内容: {}", response.message());
+            }
+        });
+    }
+
+    /**
+     * 异步发送心跳，运行时数据没有明显变化时代替上报，表明客户端仍然在线
+     */
+    public void heartbeat() {
+        if(!inFlight.tryAcquire()) return;
+        HttpRequest request = this.newRequest(connectionConfig.getAddress() + "/monitor/heartbeat", connectionConfig.getToken())
+                .GET().build();
+        this.sendAsync(request).whenComplete((response, throwable) -> {
+            inFlight.release();
+            if(throwable == null && !response.isSuccess()) {
+                log.warn("发送心跳时，接收到服务端的异常响应内容: {}", response.message());
+            }
+        });
     }
 
-    private Response doPost(String url, Object data) {
+    private CompletableFuture<Response> doPost(String url, Object data) {
         try {
-            String rawData = JSONObject.from(data).toJSONString();
-            HttpRequest request = HttpRequest.newBuilder().POST(HttpRequest.BodyPublishers.ofString(rawData))
-                    .uri(new URI(connectionConfig.getAddress() + "/monitor" + url))
-                    .header("Authorization", connectionConfig.getToken())
+            String rawData = JSON.toJSONString(data);
+            HttpRequest request = this.newRequest(connectionConfig.getAddress() + "/monitor" + url, connectionConfig.getToken())
+                    .POST(HttpRequest.BodyPublishers.ofString(rawData))
                     .header("Content-Type", "application/json")
                     .build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            return JSONObject.parseObject(response.body()).to(Response.class);
+            return this.sendAsync(request);
         } catch (Exception e) {
             log.error("在发起服务端请求时出现问题", e);
-            return Response.errorResponse(e);
+            return CompletableFuture.completedFuture(Response.errorResponse(e));
+        }
+    }
+
+    private HttpRequest.Builder newRequest(String url, String token) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofSeconds(requestTimeout))
+                .header("Authorization", token);
+    }
+
+    private CompletableFuture<Response> sendAsync(HttpRequest request) {
+        return this.sendAsync(request, 0);
+    }
+
+    /**
+     * 异步发送请求，可重试的失败在退避后重新发送，重试次数用完后返回失败响应
+     * @param request 请求
+     * @param attempt 已经重试的次数
+     * @return 响应
+     */
+    private CompletableFuture<Response> sendAsync(HttpRequest request, int attempt) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, throwable) -> {
+                    //返回null表示需要重试
+                    boolean retryable = throwable != null || response.statusCode() >= 500 || response.statusCode() == 429;
+                    if(retryable && attempt < maxRetries) return null;
+                    if(throwable != null) {
+                        Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                        log.error("在发起服务端请求时出现问题: {}", request.uri(), cause);
+                        return Response.errorResponse(cause instanceof Exception e ? e : new Exception(cause));
+                    }
+                    return this.parseResponse(response);
+                })
+                .thenCompose(response -> {
+                    if(response != null) return CompletableFuture.completedFuture(response);
+                    long delay = this.backoff(attempt);
+                    log.debug("请求 {} 失败，{}ms 后进行第 {} 次重试", request.uri(), delay, attempt + 1);
+                    return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> this.sendAsync(request, attempt + 1));
+                });
+    }
+
+    /**
+     * 计算第attempt次重试前的等待时间，在指数增长的上限内随机取值，避免大量客户端同时重试
+     * @param attempt 已经重试的次数
+     * @return 等待时间（毫秒）
+     */
+    private long backoff(int attempt) {
+        long ceiling = Math.min(backoffMax, backoffBase << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * 解析服务端响应，与Response.isSuccess一致按code判断，成功且不带数据的响应直接返回共享的确认对象，
+     * 不再映射为新的实体
+     * @param response HTTP响应
+     * @return 响应实体
+     */
+    private Response parseResponse(HttpResponse<String> response) {
+        try {
+            JSONObject json = JSONObject.parseObject(response.body());
+            if(json.getIntValue("code") == 200 && json.get("data") == null) return ACK;
+            return json.to(Response.class);
+        } catch (Exception e) {
+            return new Response(0L, response.statusCode(), null, "无法解析服务端响应: HTTP " + response.statusCode());
         }
     }
 }
@@ -0,0 +1,42 @@
+package cn.gugufish.util;
+
+import cn.gugufish.collector.MetricBatch;
+import cn.gugufish.collector.MetricCollector;
+
+import java.util.List;
+
+/**
+ * 内置网络采集器，所选网卡两次上报之间的上传与下载速率（KB/s）
+ */
+class NetworkCollector implements MetricCollector {
+    static final String NETWORK_UPLOAD = "networkUpload";
+    static final String NETWORK_DOWNLOAD = "networkDownload";
+
+    private final MonitorUtils monitor;
+
+    NetworkCollector(MonitorUtils monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public String name() {
+        return "network";
+    }
+
+    @Override
+    public List<String> metrics() {
+        return List.of(NETWORK_UPLOAD, NETWORK_DOWNLOAD);
+    }
+
+    @Override
+    public long interval() {
+        return 0;
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        double seconds = monitor.statisticTime();
+        batch.put(NETWORK_UPLOAD, Math.max(monitor.current.sent() - monitor.previous.sent(), 0) / seconds / 1024);
+        batch.put(NETWORK_DOWNLOAD, Math.max(monitor.current.received() - monitor.previous.received(), 0) / seconds / 1024);
+    }
+}
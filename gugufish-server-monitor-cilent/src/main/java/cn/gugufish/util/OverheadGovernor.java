@@ -0,0 +1,102 @@
+package cn.gugufish.util;
+
+import cn.gugufish.entity.RuntimeDetail;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 客户端自身开销的统计与限制
+ * 每次上报时统计客户端进程自上次上报以来的CPU占用、内存分配速率与常驻内存，随运行时数据一起上报；
+ * CPU占用超过预算（单个核心的比例）时逐级降低采集强度，主机本身已经繁忙时不再继续加重负担：
+ * - 1、2级：子采样间隔依次加倍
+ * - 3级：停止子采样
+ * - 4级：停止采集按核心、磁盘与网卡拆分的数据
+ * 连续若干个周期低于预算的一半时才逐级恢复，避免在预算附近来回切换
+ */
+@Slf4j
+public class OverheadGovernor {
+    public static final int MAX_LEVEL = 4;
+    public static final int SAMPLING_OFF = 3;
+    public static final int BREAKDOWN_OFF = 4;
+
+    //恢复一级前需要连续低于预算一半的周期数
+    private static final int RECOVER_CYCLES = 6;
+
+    private final double budget;
+    private final com.sun.management.OperatingSystemMXBean system;
+    private final com.sun.management.ThreadMXBean threads;
+    private long lastNanos;
+    private long lastCpuTime = -1;
+    private long lastAllocated = -1;
+    private int calmCycles;
+    private volatile int level;
+
+    /**
+     * @param budget CPU占用预算，单个核心的比例，不大于0时只统计不限制
+     */
+    public OverheadGovernor(double budget) {
+        this.budget = budget;
+        this.system = ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean bean ? bean : null;
+        this.threads = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() ? bean : null;
+    }
+
+    /**
+     * 统计自上一次调用以来的开销写入运行时数据，并按CPU占用调整降级等级
+     * 首次调用只记录基准，不写入CPU占用与分配速率
+     * @param detail 即将上报的运行时数据
+     * @param residentMemory 客户端进程的常驻内存（字节），无法获取时为负数
+     */
+    public synchronized void record(RuntimeDetail detail, long residentMemory) {
+        long now = System.nanoTime();
+        long cpuTime = system == null ? -1 : system.getProcessCpuTime();
+        long allocated = threads == null ? -1 : threads.getTotalThreadAllocatedBytes();
+        double elapsed = Math.max(now - lastNanos, 1);
+        if(lastCpuTime >= 0 && cpuTime >= 0) {
+            double usage = Math.max(cpuTime - lastCpuTime, 0) / elapsed;
+            detail.setAgentCpuUsage(usage);
+            this.adjust(usage);
+        }
+        if(lastAllocated >= 0 && allocated >= 0)
+            detail.setAgentAllocationRate(Math.max(allocated - lastAllocated, 0) / (elapsed / 1e9) / 1024 / 1024);
+        if(residentMemory >= 0) detail.setAgentMemory(residentMemory / 1024.0 / 1024);
+        detail.setAgentThrottle(level);
+        lastNanos = now;
+        lastCpuTime = cpuTime;
+        lastAllocated = allocated;
+    }
+
+    /**
+     * 当前的降级等级，0表示正常采集
+     */
+    public int level() {
+        return level;
+    }
+
+    /**
+     * 子采样的步长，每隔多少次子采样时刻真正采样一次，停止子采样时返回0
+     */
+    public int sampleStride() {
+        int current = level;
+        return current >= SAMPLING_OFF ? 0 : 1 << current;
+    }
+
+    private void adjust(double usage) {
+        if(budget <= 0) return;
+        if(usage > budget) {
+            calmCycles = 0;
+            if(level < MAX_LEVEL) {
+                level++;
+                log.warn("客户端CPU占用 {}% 超过预算 {}%，降低采集强度到第 {} 级",
+                        String.format("%.2f", usage * 100), String.format("%.2f", budget * 100), level);
+            }
+        } else if(usage >= budget / 2) {
+            calmCycles = 0;
+        } else if(level > 0 && ++calmCycles >= RECOVER_CYCLES) {
+            calmCycles = 0;
+            level--;
+            log.info("客户端CPU占用已回落到 {}%，恢复采集强度到第 {} 级", String.format("%.2f", usage * 100), level);
+        }
+    }
+}
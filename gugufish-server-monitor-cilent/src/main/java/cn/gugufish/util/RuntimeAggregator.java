@@ -0,0 +1,78 @@
+package cn.gugufish.util;
+
+import cn.gugufish.entity.RuntimeDetail;
+
+import java.util.Arrays;
+
+/**
+ * 运行时子采样聚合器
+ * 在两次上报之间以较高频率记录CPU、内存、网络与磁盘读写的瞬时值，上报时计算每项指标的最小值、最大值与P95，
+ * 用于发现10秒上报间隔内的短时突发。平均值即上报本身按整个间隔计算的结果，不再重复统计。
+ * 样本存放在预先分配的数组中，上报长时间失败导致样本超过容量时覆盖最早的样本。
+ */
+public class RuntimeAggregator {
+    public static final int CPU = 0;
+    public static final int MEMORY = 1;
+    public static final int UPLOAD = 2;
+    public static final int DOWNLOAD = 3;
+    public static final int READ = 4;
+    public static final int WRITE = 5;
+    public static final int METRICS = 6;
+
+    private final double[][] samples;
+    private final double[] sorted;
+    private int count;
+
+    /**
+     * @param capacity 两次上报之间最多保留的样本数量
+     */
+    public RuntimeAggregator(int capacity) {
+        this.samples = new double[METRICS][capacity];
+        this.sorted = new double[capacity];
+    }
+
+    /**
+     * 记录一次子采样
+     * @param values 按指标下标排列的瞬时值
+     */
+    public synchronized void add(double[] values) {
+        int index = count % sorted.length;
+        for (int i = 0; i < METRICS; i++) samples[i][index] = values[i];
+        count++;
+    }
+
+    /**
+     * 将自上次上报以来的统计结果写入运行时数据并清空样本，没有样本时不写入任何字段
+     * @param detail 即将上报的运行时数据
+     */
+    public synchronized void fill(RuntimeDetail detail) {
+        int size = Math.min(count, sorted.length);
+        count = 0;
+        if(size == 0) return;
+        double[] cpu = this.aggregate(CPU, size);
+        double[] memory = this.aggregate(MEMORY, size);
+        double[] upload = this.aggregate(UPLOAD, size);
+        double[] download = this.aggregate(DOWNLOAD, size);
+        double[] read = this.aggregate(READ, size);
+        double[] write = this.aggregate(WRITE, size);
+        detail.setCpuUsageMin(cpu[0]).setCpuUsageMax(cpu[1]).setCpuUsageP95(cpu[2])
+                .setMemoryUsageMin(memory[0]).setMemoryUsageMax(memory[1]).setMemoryUsageP95(memory[2])
+                .setNetworkUploadMin(upload[0]).setNetworkUploadMax(upload[1]).setNetworkUploadP95(upload[2])
+                .setNetworkDownloadMin(download[0]).setNetworkDownloadMax(download[1]).setNetworkDownloadP95(download[2])
+                .setDiskReadMin(read[0]).setDiskReadMax(read[1]).setDiskReadP95(read[2])
+                .setDiskWriteMin(write[0]).setDiskWriteMax(write[1]).setDiskWriteP95(write[2]);
+    }
+
+    /**
+     * 计算单项指标的统计值
+     * @param metric 指标下标
+     * @param size 样本数量
+     * @return 最小值、最大值与P95（最近秩法）
+     */
+    private double[] aggregate(int metric, int size) {
+        System.arraycopy(samples[metric], 0, sorted, 0, size);
+        Arrays.sort(sorted, 0, size);
+        int rank = (int) Math.ceil(size * 0.95) - 1;
+        return new double[]{sorted[0], sorted[size - 1], sorted[Math.max(rank, 0)]};
+    }
+}
@@ -0,0 +1,48 @@
+package cn.gugufish.util;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * /proc 读取的单次采样耗时对比
+ * - 之前：每次采样（包括250ms一次的子采样）都重新读取并哈希整个挂载表
+ * - 之后：采样只读取计数，挂载表只在上报周期刷新一次
+ * 按默认10秒上报、250毫秒子采样计算，每个上报周期约41次采样，其中只有1次需要刷新挂载表
+ * 运行方式：mvn test -Dtest=LinuxProcReaderBenchmark -Dbenchmark=true -DskipTests=false
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LinuxProcReaderBenchmark {
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 20000;
+    private static final int SAMPLES_PER_REPORT = 41;
+
+    @Test
+    void sampling() throws Exception {
+        try (LinuxProcReader reader = LinuxProcReader.create("eth0")) {
+            Assumptions.assumeTrue(reader != null, "需要在Linux系统上运行");
+            this.measure(reader, true, WARMUP);
+            this.measure(reader, false, WARMUP);
+            double before = this.measure(reader, true, ITERATIONS);
+            double after = this.measure(reader, false, ITERATIONS);
+            double mounts = before - after;
+            System.out.printf("read + mounts (before): %.1f us per sample%n", before / 1000);
+            System.out.printf("read only (after):      %.1f us per sample%n", after / 1000);
+            System.out.printf("per report cycle of %d samples: before %.1f us, after %.1f us%n", SAMPLES_PER_REPORT,
+                    before * SAMPLES_PER_REPORT / 1000, (after * SAMPLES_PER_REPORT + mounts) / 1000);
+        }
+    }
+
+    /**
+     * 连续采样并返回平均每次的耗时
+     * @return 纳秒
+     */
+    private double measure(LinuxProcReader reader, boolean mounts, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            reader.read();
+            if(mounts) reader.refreshMounts();
+        }
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+}
@@ -0,0 +1,144 @@
+package cn.gugufish.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * /proc 解析的行为测试，使用固定内容的文件代替真实的 /proc
+ * 运行方式：mvn test -Dtest=LinuxProcReaderTest -DskipTests=false
+ */
+class LinuxProcReaderTest {
+    private static final String STAT = """
+            cpu  100 2 30 4000 5 6 7 8 0 0
+            cpu0 50 1 15 2000 2 3 3 4 0 0
+            cpu1 50 1 15 2000 3 3 4 4 0 0
+            intr 123456 0 0 0
+            ctxt 987654
+            """;
+    private static final String MEMINFO = """
+            MemTotal:        8000000 kB
+            MemFree:         1000000 kB
+            MemAvailable:    6000000 kB
+            Buffers:          100000 kB
+            """;
+    private static final String DISKSTATS = """
+               7       0 loop0 50 0 400 10 0 0 0 0 0 20 10 0 0 0 0
+               8       0 sda 1000 20 8000 300 500 10 4000 200 0 600 500 0 0 0 0
+               8       1 sda1 900 20 7000 250 450 10 3500 180 0 550 430 0 0 0 0
+               8      16 sdab 10 0 80 3 5 0 40 2 0 6 5 0 0 0 0
+             253       0 dm-0 800 0 6000 200 400 0 3000 150 0 400 350 0 0 0 0
+            """;
+    private static final String NETDEV = """
+            Inter-|   Receive                                                |  Transmit
+             face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed
+                lo:  5000      50    0    0    0     0          0         0     5000      50    0    0    0     0       0          0
+              eth0: 123456    1000    0    0    0     0          0         0    654321     900    0    0    0     0       0          0
+            docker0:   777       7    0    0    0     0          0         0      888       8    0    0    0     0       0          0
+            """;
+    private static final String STATUS = """
+            Name:\tjava
+            VmPeak:\t  500000 kB
+            VmRSS:\t   123456 kB
+            Threads:\t42
+            """;
+
+    @TempDir
+    Path proc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(proc.resolve("net"));
+        Files.createDirectories(proc.resolve("self"));
+        this.write("stat", STAT);
+        this.write("meminfo", MEMINFO);
+        this.write("diskstats", DISKSTATS);
+        this.write("net/dev", NETDEV);
+        this.write("self/status", STATUS);
+        this.write("self/mounts", "");
+    }
+
+    @Test
+    void parsesCounters() throws IOException {
+        try (LinuxProcReader reader = this.reader()) {
+            assertTrue(reader.read());
+            long[] ticks = new long[LinuxProcReader.TICK_COUNT];
+            reader.copyTicks(ticks);
+            assertArrayEquals(new long[]{100, 2, 30, 4000, 5, 6, 7, 8}, ticks);
+            assertEquals(8000000L * 1024, reader.memoryTotal());
+            assertEquals(2000000L * 1024, reader.memoryUsed());
+            //只统计物理磁盘sda，分区、前缀相同的其他磁盘、环回与device-mapper设备都不计入
+            assertEquals(8000L * 512, reader.diskRead());
+            assertEquals(4000L * 512, reader.diskWrite());
+            assertEquals(123456, reader.networkReceived());
+            assertEquals(654321, reader.networkSent());
+            assertEquals(123456L * 1024, reader.residentMemory());
+        }
+    }
+
+    @Test
+    void breakdownSplitsCoresDisksAndInterfaces() throws IOException {
+        try (LinuxProcReader reader = this.reader()) {
+            assertTrue(reader.read());
+            BreakdownCounters breakdown = reader.breakdown();
+            assertEquals(2, breakdown.cores().length);
+            assertArrayEquals(new long[]{50, 1, 15, 2000, 3, 3, 4, 4}, breakdown.cores()[1]);
+            assertArrayEquals(new String[]{"sda"}, breakdown.disks());
+            long[] disk = breakdown.diskCounters()[0];
+            assertEquals(1000, disk[BreakdownCounters.DISK_READS]);
+            assertEquals(8000L * 512, disk[BreakdownCounters.DISK_READ_BYTES]);
+            assertEquals(500, disk[BreakdownCounters.DISK_WRITES]);
+            assertEquals(4000L * 512, disk[BreakdownCounters.DISK_WRITE_BYTES]);
+            assertEquals(300 + 200, disk[BreakdownCounters.DISK_TIME]);
+            assertArrayEquals(new String[]{"eth0", "docker0"}, breakdown.interfaces());
+            assertEquals(888, breakdown.interfaceCounters()[1][BreakdownCounters.INTERFACE_SENT]);
+            assertEquals(777, breakdown.interfaceCounters()[1][BreakdownCounters.INTERFACE_RECEIVED]);
+        }
+    }
+
+    @Test
+    void followsCoresAndInterfacesAcrossReads() throws IOException {
+        try (LinuxProcReader reader = this.reader()) {
+            assertTrue(reader.read());
+            this.write("stat", STAT.replace("intr", "cpu2 10 0 5 100 0 0 0 0 0 0\nintr"));
+            this.write("net/dev", NETDEV.substring(0, NETDEV.indexOf("docker0:")));
+            assertTrue(reader.read());
+            BreakdownCounters breakdown = reader.breakdown();
+            assertEquals(3, breakdown.cores().length);
+            assertArrayEquals(new long[]{10, 0, 5, 100, 0, 0, 0, 0}, breakdown.cores()[2]);
+            assertArrayEquals(new String[]{"eth0"}, breakdown.interfaces(), "已经消失的网卡不再上报");
+        }
+    }
+
+    @Test
+    void mountsCountEachLocalDeviceOnce() throws IOException {
+        Path data = Files.createDirectories(proc.resolve("data dir"));
+        Path home = Files.createDirectories(proc.resolve("home"));
+        this.write("self/mounts", String.join("\n",
+                "/dev/sda1 " + data.toString().replace(" ", "\\040") + " ext4 rw,relatime 0 0",
+                "/dev/sda1 " + proc + " ext4 rw,relatime 0 0",
+                "/dev/sdb1 " + home + " xfs rw,relatime 0 0",
+                "/dev/loop0 /snap/core squashfs ro 0 0",
+                "tmpfs /run tmpfs rw,nosuid 0 0", ""));
+        try (LinuxProcReader reader = this.reader()) {
+            assertTrue(reader.refreshMounts());
+            assertEquals(new File(data.toString()).getTotalSpace() + new File(home.toString()).getTotalSpace(),
+                    reader.diskTotal());
+        }
+    }
+
+    private LinuxProcReader reader() throws IOException {
+        return new LinuxProcReader(proc, new String[]{"sda"}, "eth0");
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.writeString(proc.resolve(name), content);
+    }
+}
@@ -12,6 +12,7 @@ import cn.gugufish.utils.JwtUtils;
 import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.access.AccessDeniedException;
@@ -41,6 +42,10 @@ public class SecurityConfiguration {
     @Resource
     JwtUtils utils;
 
+    //监控端点所在的管理端口，只监听本机地址，不经过对外的应用端口
+    @Value("${management.server.port}")
+    int managementPort;
+
     @Resource
     AccountService service;
 
@@ -58,7 +63,9 @@ public class SecurityConfiguration {
                         .requestMatchers("/api/auth/**", "/error").permitAll()
                         .requestMatchers("/monitor/**").permitAll()
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
+                        .requestMatchers(this::isManagementProbe).permitAll()
                         .requestMatchers("/api/user/sub/**").hasRole(Const.ROLE_ADMIN)
+                        .requestMatchers("/api/alert/**").hasRole(Const.ROLE_ADMIN)
                         .anyRequest().hasAnyRole(Const.ROLE_ADMIN, Const.ROLE_NORMAL)
                 )
                 .formLogin(conf -> conf
@@ -120,6 +127,17 @@ public class SecurityConfiguration {
         }
     }
 
+    /**
+     * 是否为通过管理端口访问的健康检查与指标采集请求，应用端口上的同名路径不放行
+     * @param request 请求
+     * @return 是否放行
+     */
+    private boolean isManagementProbe(HttpServletRequest request) {
+        if(request.getLocalPort() != managementPort) return false;
+        String uri = request.getRequestURI();
+        return uri.equals("/actuator/health") || uri.equals("/actuator/prometheus");
+    }
+
     /**
      * 退出登录处理，将对应的Jwt令牌列入黑名单不再使用
      * @param request 请求
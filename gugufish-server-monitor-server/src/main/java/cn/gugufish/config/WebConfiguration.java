@@ -1,16 +1,27 @@
 package cn.gugufish.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.concurrent.Semaphore;
+
 /**
  * 一般Web服务相关配置
  */
 @Configuration
 public class WebConfiguration implements WebMvcConfigurer {
+
+    //同时运行的异步请求任务（录像回放、批量执行、文件下载等流式响应）数量上限
+    @Value("${spring.web.async.max-tasks}")
+    int asyncMaxTasks;
+
    /**
      * 密码加密器
      * @return PasswordEncoder 用于加密的类
@@ -19,4 +30,30 @@ public class WebConfiguration implements WebMvcConfigurer {
     public PasswordEncoder passwordEncoder(){
         return new BCryptPasswordEncoder();
     }
+
+    /**
+     * 异步请求使用独立的执行器，而不是与其他任务共用SpringBoot默认的applicationTaskExecutor：
+     * 流式响应大部分时间阻塞在SSH与网络读写上，每个任务运行在独立的虚拟线程上，
+     * 同时运行的任务达到上限时直接拒绝，由异常处理返回503，不会在无界队列中排队
+     * @param configurer 异步请求配置
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        Semaphore slots = new Semaphore(asyncMaxTasks);
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("mvc-async-");
+        executor.setVirtualThreads(true);
+        //任务提交时在调用线程上占用名额，任务结束后归还
+        executor.setTaskDecorator(task -> {
+            if(!slots.tryAcquire())
+                throw new TaskRejectedException("同时运行的异步请求已达上限 " + asyncMaxTasks);
+            return () -> {
+                try {
+                    task.run();
+                } finally {
+                    slots.release();
+                }
+            };
+        });
+        configurer.setTaskExecutor(executor);
+    }
 }
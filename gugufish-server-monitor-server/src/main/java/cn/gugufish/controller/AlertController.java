@@ -0,0 +1,49 @@
+package cn.gugufish.controller;
+
+import cn.gugufish.entity.RestBean;
+import cn.gugufish.entity.vo.request.AlertRuleVO;
+import cn.gugufish.entity.vo.response.AlertVO;
+import cn.gugufish.service.AlertService;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.annotation.Resource;
+import jakarta.validation.Valid;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * 告警规则管理与当前告警查询，仅管理员可用
+ */
+@RestController
+@RequestMapping("/api/alert")
+public class AlertController {
+
+    @Resource
+    AlertService service;
+    @Operation(summary = "告警规则列表")
+    @GetMapping("/list")
+    public RestBean<List<AlertRuleVO>> listRules() {
+        return RestBean.success(service.listRules());
+    }
+    @Operation(summary = "新建或修改告警规则")
+    @PostMapping("/save")
+    public RestBean<Void> saveRule(@RequestBody @Valid AlertRuleVO vo) {
+        String result = service.saveRule(vo);
+        if(result == null) {
+            return RestBean.success();
+        } else {
+            return RestBean.failure(400, result);
+        }
+    }
+    @Operation(summary = "删除告警规则")
+    @GetMapping("/delete")
+    public RestBean<Void> deleteRule(int id) {
+        service.deleteRule(id);
+        return RestBean.success();
+    }
+    @Operation(summary = "当前正在触发的告警")
+    @GetMapping("/active")
+    public RestBean<List<AlertVO>> activeAlerts() {
+        return RestBean.success(service.activeAlerts());
+    }
+}
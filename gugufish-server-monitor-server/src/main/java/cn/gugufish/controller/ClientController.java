@@ -4,7 +4,9 @@ import cn.gugufish.entity.RestBean;
 import cn.gugufish.entity.dto.Client;
 import cn.gugufish.entity.vo.request.ClientDetailVO;
 import cn.gugufish.entity.vo.request.RuntimeDetailVO;
+import cn.gugufish.entity.vo.response.ReportScheduleVO;
 import cn.gugufish.service.ClientService;
+import cn.gugufish.service.MetricService;
 import cn.gugufish.utils.Const;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
@@ -12,12 +14,18 @@ import jakarta.validation.Valid;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * 客户端控制器
  * 该控制器负责处理来自监控客户端的请求，包括：
  * 1. 客户端注册 - 验证客户端身份并将其注册到系统中
  * 2. 客户端详细信息更新 - 接收并存储客户端的详细配置信息
  * 3. 客户端运行时数据更新 - 接收并存储客户端的实时运行数据
+ * 4. 客户端心跳 - 数据没有明显变化时客户端只发送心跳
+ * 5. 上报计划获取 - 基本信息没有变化的客户端启动时只获取上报计划
+ * 6. 指标字典协商 - 客户端启动时用扩展指标名称换取ID，上报时只传输ID
  * 注意：此控制器的所有接口都是供客户端程序调用的，不是给前端页面使用的
  */
 @Tag(name = "客户端相关", description = "包括客户机注册，详细信息储存，运行数据存储。")
@@ -31,6 +39,12 @@ public class ClientController {
     @Resource
     ClientService clientService;
 
+    /**
+     * 扩展指标字典服务，用于协商指标ID
+     */
+    @Resource
+    MetricService metricService;
+
     /**
      * 客户端注册接口
      * 该接口用于验证客户端的身份并将其注册到系统中。客户端需要在请求头中提供有效的授权令牌。
@@ -48,16 +62,44 @@ public class ClientController {
      * 更新客户端详细信息接口
      * 该接口用于接收并存储客户端的详细配置信息，如操作系统信息、硬件配置等。
      * 客户端需要先完成注册，然后才能调用此接口更新详细信息。
+     * 响应中附带为该客户端分配的运行时数据上报计划，使各客户端的上报时刻错开。
      * 
      * @param client 当前客户端对象，通过请求属性注入，由拦截器根据客户端身份信息设置
      * @param vo 客户端详细信息数据对象，包含需要更新的详细配置信息
-     * @return 更新结果，成功返回RestBean.success()
+     * @return 更新结果，成功时返回上报计划
      */
     @PostMapping("/detail")
-    public RestBean<Void> updateClientDetails(@RequestAttribute(Const.ATTR_CLIENT) Client client,
-                                              @RequestBody @Valid ClientDetailVO vo) {
+    public RestBean<ReportScheduleVO> updateClientDetails(@RequestAttribute(Const.ATTR_CLIENT) Client client,
+                                                          @RequestBody @Valid ClientDetailVO vo) {
         clientService.updateClientDetail(vo,client);
-        return RestBean.success();
+        return RestBean.success(clientService.reportSchedule(client));
+    }
+
+    /**
+     * 获取上报计划接口
+     * 客户端启动时基本信息与上一次推送的相同，则不再推送基本信息，只通过此接口获取上报计划。
+     * 服务端没有该客户端的基本信息时返回失败，客户端随后会重新推送。
+     *
+     * @param client 当前客户端对象，通过请求属性注入，由拦截器根据客户端身份信息设置
+     * @return 上报计划，服务端没有该客户端的基本信息时返回404
+     */
+    @GetMapping("/schedule")
+    public RestBean<ReportScheduleVO> reportSchedule(@RequestAttribute(Const.ATTR_CLIENT) Client client) {
+        return clientService.hasClientDetail(client) ? RestBean.success(clientService.reportSchedule(client))
+                : RestBean.failure(404, "未找到客户端基本信息");
+    }
+
+    /**
+     * 指标字典协商接口
+     * 客户端启动时提交全部扩展指标名称，服务端登记其中的新名称并返回名称到ID的对应关系，
+     * 之后的运行时数据只携带指标ID与数值。格式不正确的名称不会出现在结果中。
+     *
+     * @param names 扩展指标名称
+     * @return 指标名称到ID
+     */
+    @PostMapping("/metrics")
+    public RestBean<Map<String, Integer>> negotiateMetrics(@RequestBody List<String> names) {
+        return RestBean.success(metricService.negotiate(names));
     }
 
     /**
@@ -75,4 +117,18 @@ public class ClientController {
         clientService.updateRuntimeDetail(vo, client);
         return RestBean.success();
     }
+
+    /**
+     * 客户端心跳接口
+     * 客户端在运行时数据没有明显变化时不再上报，只定期调用此接口表明仍然在线，
+     * 服务端将两次上报之间的时间视为数据没有变化。
+     *
+     * @param client 当前客户端对象，通过请求属性注入，由拦截器根据客户端身份信息设置
+     * @return 成功返回RestBean.success()
+     */
+    @GetMapping("/heartbeat")
+    public RestBean<Void> heartbeat(@RequestAttribute(Const.ATTR_CLIENT) Client client) {
+        clientService.heartbeat(client);
+        return RestBean.success();
+    }
 }
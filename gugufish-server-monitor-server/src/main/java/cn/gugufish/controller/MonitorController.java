@@ -2,16 +2,31 @@ package cn.gugufish.controller;
 
 import cn.gugufish.entity.RestBean;
 import cn.gugufish.entity.dto.Account;
+import cn.gugufish.entity.vo.response.AnomalyVO;
 import cn.gugufish.entity.vo.response.SshSettingsVO;
+import cn.gugufish.entity.vo.response.TransferProgressVO;
 import cn.gugufish.entity.vo.request.*;
 import cn.gugufish.service.AccountService;
+import cn.gugufish.service.AnomalyService;
 import cn.gugufish.service.ClientService;
+import cn.gugufish.service.SshService;
 import cn.gugufish.utils.Const;
+import cn.gugufish.utils.InfluxDbUtils;
+import cn.gugufish.utils.RecordingUtils;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import java.util.List;
 /**
@@ -26,6 +41,12 @@ public class MonitorController {
     ClientService service;
     @Resource
     AccountService accountService;
+    @Resource
+    RecordingUtils recordingUtils;
+    @Resource
+    SshService sshService;
+    @Resource
+    AnomalyService anomalyService;
     @Operation(summary = "获取主机列表")
     @GetMapping("/list")
     public RestBean<List<ClientPreviewVO>> listAllClient(@RequestAttribute(Const.ATTR_USER_ID) int userId,
@@ -95,6 +116,37 @@ public class MonitorController {
             return RestBean.noPermission();
         }
     }
+    @Operation(summary = "主机拆分运行历史记录", description = "type为core、disk或interface，按核心、磁盘或网卡分组返回最近1小时数据")
+    @GetMapping("/runtime-breakdown")
+    public RestBean<RuntimeBreakdownHistoryVO> runtimeBreakdownHistory(int clientId, String type,
+                                                                       @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                                                       @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        if(!this.permissionCheck(userId, userRole, clientId)) return RestBean.noPermission();
+        if(!InfluxDbUtils.BREAKDOWN_TAGS.containsKey(type)) return RestBean.failure(400, "不支持的拆分类型: " + type);
+        return RestBean.success(service.clientRuntimeBreakdownHistory(clientId, type));
+    }
+    @Operation(summary = "主机扩展指标历史记录", description = "按指标名称分组返回最近1小时客户端扩展采集器的数据")
+    @GetMapping("/runtime-metrics")
+    public RestBean<RuntimeMetricHistoryVO> runtimeMetricHistory(int clientId,
+                                                                @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                                                @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        if(!this.permissionCheck(userId, userRole, clientId)) return RestBean.noPermission();
+        return RestBean.success(service.clientRuntimeMetricHistory(clientId));
+    }
+    @Operation(summary = "当前的异常", description = "明显偏离各主机自身基线的指标，普通用户只能看到有权限的主机")
+    @GetMapping("/anomalies")
+    public RestBean<List<AnomalyVO>> currentAnomalies(@RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                                      @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        List<AnomalyVO> anomalies = anomalyService.currentAnomalies();
+        if(this.isAdminAccount(userRole)) {
+            return RestBean.success(anomalies);
+        } else {
+            List<Integer> ids = this.accountAccessClients(userId);
+            return RestBean.success(anomalies.stream()
+                    .filter(vo -> ids.contains(vo.getClientId()))
+                    .toList());
+        }
+    }
     @Operation(summary = "主机当前时刻运行记录")
     @GetMapping("/runtime-now")
     public RestBean<RuntimeDetailVO> runtimeDetailsNow(int clientId,
@@ -149,6 +201,115 @@ public class MonitorController {
             return RestBean.noPermission();
         }
     }
+    @Operation(summary = "终端录像列表")
+    @GetMapping("/recording/list")
+    public RestBean<List<String>> recordingList(int clientId,
+                                                @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                                @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        if(this.permissionCheck(userId, userRole, clientId)) {
+            return RestBean.success(recordingUtils.list(clientId));
+        } else {
+            return RestBean.noPermission();
+        }
+    }
+    @Operation(summary = "终端录像回放", description = "从指定秒数开始以asciicast v2格式流式输出录像")
+    @GetMapping("/recording/play")
+    public ResponseEntity<StreamingResponseBody> recordingPlay(int clientId, String name,
+                                                               @RequestParam(defaultValue = "0") double from,
+                                                               @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                                               @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        RestBean<Void> failure = null;
+        if(!this.permissionCheck(userId, userRole, clientId)) {
+            failure = RestBean.noPermission();
+        } else if(!recordingUtils.exists(clientId, name)) {
+            failure = RestBean.failure(404, "录像不存在");
+        }
+        if(failure != null) return this.streamFailure(failure);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-asciicast"))
+                .body(output -> recordingUtils.play(clientId, name, from, output));
+    }
+    @Operation(summary = "批量执行命令", description = "在多台主机上并发执行命令，以NDJSON格式实时输出每台主机的结果")
+    @PostMapping("/exec")
+    public ResponseEntity<StreamingResponseBody> batchExec(@RequestBody @Valid BatchExecVO vo,
+                                                           @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                                           @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        if(!this.isAdminAccount(userRole) && !this.accountAccessClients(userId).containsAll(vo.getClients()))
+            return this.streamFailure(RestBean.noPermission());
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(output -> sshService.batchExec(vo, output));
+    }
+    @Operation(summary = "远程文件大小", description = "用于断点续传前确认已经传输的字节数")
+    @GetMapping("/sftp/stat")
+    public RestBean<Long> sftpStat(int clientId, String path,
+                                   @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                   @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        if(!this.permissionCheck(userId, userRole, clientId)) return RestBean.noPermission();
+        try {
+            return RestBean.success(sshService.fileSize(clientId, path));
+        } catch (IOException e) {
+            return RestBean.failure(400, e.getMessage());
+        }
+    }
+    @Operation(summary = "下载远程文件", description = "从指定偏移开始以分块传输的方式流式下载")
+    @GetMapping("/sftp/download")
+    public ResponseEntity<StreamingResponseBody> sftpDownload(int clientId, String path,
+                                                              @RequestParam(defaultValue = "0") long offset,
+                                                              @RequestParam(required = false) String transferId,
+                                                              @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                                              @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        if(!this.permissionCheck(userId, userRole, clientId))
+            return this.streamFailure(RestBean.noPermission());
+        //只查询一次文件属性，校验偏移后交给下载过程复用
+        long size;
+        try {
+            size = sshService.fileSize(clientId, path);
+        } catch (IOException e) {
+            return this.streamFailure(RestBean.failure(400, e.getMessage()));
+        }
+        if(offset > size) return this.streamFailure(RestBean.failure(400, "起始偏移超出文件大小 " + size));
+        String filename = path.substring(path.lastIndexOf('/') + 1);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(filename, StandardCharsets.UTF_8).build().toString())
+                .body(output -> sshService.download(clientId, path, offset, size, transferId, output));
+    }
+    @Operation(summary = "上传远程文件", description = "请求体即文件内容，偏移大于0时从远程文件末尾续传")
+    @PostMapping("/sftp/upload")
+    public RestBean<Long> sftpUpload(int clientId, String path,
+                                     @RequestParam(defaultValue = "0") long offset,
+                                     @RequestParam(required = false) String transferId,
+                                     HttpServletRequest request,
+                                     @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                     @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        if(!this.permissionCheck(userId, userRole, clientId)) return RestBean.noPermission();
+        try {
+            return RestBean.success(sshService.upload(clientId, path, offset, transferId, request.getInputStream()));
+        } catch (IOException e) {
+            return RestBean.failure(400, e.getMessage());
+        }
+    }
+    @Operation(summary = "文件传输进度")
+    @GetMapping("/sftp/progress")
+    public RestBean<TransferProgressVO> sftpProgress(String transferId,
+                                                     @RequestAttribute(Const.ATTR_USER_ID) int userId,
+                                                     @RequestAttribute(Const.ATTR_USER_ROLE) String userRole) {
+        TransferProgressVO vo = sshService.transferProgress(transferId);
+        if(vo == null) return RestBean.failure(404, "传输不存在");
+        if(!this.permissionCheck(userId, userRole, vo.getClientId())) return RestBean.noPermission();
+        return RestBean.success(vo);
+    }
+    /**
+     * 流式接口在校验失败时依然以普通JSON格式返回错误信息
+     */
+    private ResponseEntity<StreamingResponseBody> streamFailure(RestBean<Void> failure) {
+        byte[] body = failure.asJsonString().getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(output -> output.write(body));
+    }
     private List<Integer> accountAccessClients(int uid) {
         Account account = accountService.getById(uid);
         return account.getClientList();
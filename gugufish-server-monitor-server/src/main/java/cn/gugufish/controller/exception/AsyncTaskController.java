@@ -0,0 +1,29 @@
+package cn.gugufish.controller.exception;
+
+import cn.gugufish.entity.RestBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 用于异步请求任务被拒绝时处理的控制器
+ */
+@Slf4j
+@RestControllerAdvice
+public class AsyncTaskController {
+
+    /**
+     * 异步请求执行器已满时返回503，提示稍后重试
+     * @param exception 拒绝异常
+     * @return 失败响应
+     */
+    @ExceptionHandler(TaskRejectedException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public RestBean<Void> taskRejected(TaskRejectedException exception) {
+        log.warn("Resolved [{}: {}]", exception.getClass().getName(), exception.getMessage());
+        return RestBean.failure(503, "服务器繁忙，请稍后再试");
+    }
+}
@@ -0,0 +1,35 @@
+package cn.gugufish.entity.dto;
+
+import cn.gugufish.entity.BaseData;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 数据库中的告警规则，例如 cpuUsage > 0.9 持续300秒，只作用于节点hk
+ */
+@Data
+@TableName("db_alert_rule")
+public class AlertRule implements BaseData {
+    @TableId(type = IdType.AUTO)
+    Integer id;
+    String name;
+    //内置指标名称、memoryPercent、diskPercent或扩展指标名称
+    String metric;
+    //比较方式：>、>=、<、<=
+    String operator;
+    double threshold;
+    //恢复阈值，越过后告警才解除，为空时与触发阈值相同
+    Double recover;
+    //条件需要持续的时间（秒），为0时立即触发
+    int duration;
+    //作用范围，为空时不限制
+    Integer clientId;
+    String node;
+    //同一主机上同一规则两次告警通知的最小间隔（秒）
+    int silence;
+    //通知邮箱，多个以逗号分隔，为空时通知全部管理员
+    String email;
+    boolean enabled;
+}
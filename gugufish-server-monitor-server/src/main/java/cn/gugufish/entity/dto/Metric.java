@@ -0,0 +1,17 @@
+package cn.gugufish.entity.dto;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+/**
+ * 数据库中的扩展指标字典，指标名称唯一，客户端上报与存储都只使用ID
+ */
+@Data
+@TableName("db_metric")
+public class Metric {
+    @TableId(type = IdType.AUTO)
+    Integer id;
+    String name;
+}
@@ -28,4 +28,49 @@ public class RuntimeData {
     double diskRead;
     @Column
     double diskWrite;
-}
\ No newline at end of file
+    //子采样统计值，为null时不写入，旧数据中不存在这些字段
+    @Column
+    Double cpuUsageMin;
+    @Column
+    Double cpuUsageMax;
+    @Column
+    Double cpuUsageP95;
+    @Column
+    Double memoryUsageMin;
+    @Column
+    Double memoryUsageMax;
+    @Column
+    Double memoryUsageP95;
+    @Column
+    Double networkUploadMin;
+    @Column
+    Double networkUploadMax;
+    @Column
+    Double networkUploadP95;
+    @Column
+    Double networkDownloadMin;
+    @Column
+    Double networkDownloadMax;
+    @Column
+    Double networkDownloadP95;
+    @Column
+    Double diskReadMin;
+    @Column
+    Double diskReadMax;
+    @Column
+    Double diskReadP95;
+    @Column
+    Double diskWriteMin;
+    @Column
+    Double diskWriteMax;
+    @Column
+    Double diskWriteP95;
+    @Column
+    Double agentCpuUsage;
+    @Column
+    Double agentAllocationRate;
+    @Column
+    Double agentMemory;
+    @Column
+    Integer agentThrottle;
+}
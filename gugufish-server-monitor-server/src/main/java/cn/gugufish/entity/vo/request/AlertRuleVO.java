@@ -0,0 +1,34 @@
+package cn.gugufish.entity.vo.request;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import lombok.Data;
+import org.hibernate.validator.constraints.Length;
+
+@Data
+public class AlertRuleVO {
+    //为空时新建规则
+    Integer id;
+    @NotNull
+    @Length(min = 1, max = 32)
+    String name;
+    @NotNull
+    @Pattern(regexp = "[A-Za-z0-9_.\\-]{1,64}")
+    String metric;
+    @NotNull
+    @Pattern(regexp = "(>|>=|<|<=)")
+    String operator;
+    double threshold;
+    Double recover;
+    @Min(0)
+    int duration;
+    Integer clientId;
+    @Length(max = 10)
+    String node;
+    @Min(0)
+    int silence;
+    @Length(max = 255)
+    String email;
+    boolean enabled;
+}
@@ -0,0 +1,22 @@
+package cn.gugufish.entity.vo.request;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import org.hibernate.validator.constraints.Length;
+
+import java.util.List;
+
+@Data
+public class BatchExecVO {
+    @NotEmpty
+    List<Integer> clients;
+    @NotNull
+    @Length(min = 1, max = 4096)
+    String command;
+    @Min(1)
+    @Max(3600)
+    int timeout = 30;
+}
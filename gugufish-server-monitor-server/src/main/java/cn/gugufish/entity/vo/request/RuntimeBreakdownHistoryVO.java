@@ -0,0 +1,15 @@
+package cn.gugufish.entity.vo.request;
+
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class RuntimeBreakdownHistoryVO {
+    String type;
+    //按核心编号、磁盘或网卡名称分组的时间序列
+    Map<String, List<JSONObject>> series = new LinkedHashMap<>();
+}
@@ -0,0 +1,19 @@
+package cn.gugufish.entity.vo.request;
+
+import lombok.Data;
+
+/**
+ * 按核心、磁盘与网卡拆分的运行时数据，同一设备在各数组中的下标相同
+ */
+@Data
+public class RuntimeBreakdownVO {
+    double[] cpuCores;
+    String[] disks;
+    double[] diskRead;
+    double[] diskWrite;
+    double[] diskIops;
+    double[] diskAwait;
+    String[] interfaces;
+    double[] networkUpload;
+    double[] networkDownload;
+}
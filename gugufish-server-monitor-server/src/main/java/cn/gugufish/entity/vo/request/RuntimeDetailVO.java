@@ -21,4 +21,33 @@ public class RuntimeDetailVO {
     double diskRead;
     @NotNull
     double diskWrite;
-}
\ No newline at end of file
+    //上报间隔内子采样的最小值、最大值与P95，旧版本客户端不上报
+    Double cpuUsageMin;
+    Double cpuUsageMax;
+    Double cpuUsageP95;
+    Double memoryUsageMin;
+    Double memoryUsageMax;
+    Double memoryUsageP95;
+    Double networkUploadMin;
+    Double networkUploadMax;
+    Double networkUploadP95;
+    Double networkDownloadMin;
+    Double networkDownloadMax;
+    Double networkDownloadP95;
+    Double diskReadMin;
+    Double diskReadMax;
+    Double diskReadP95;
+    Double diskWriteMin;
+    Double diskWriteMax;
+    Double diskWriteP95;
+    //按核心、磁盘与网卡拆分的数据，单独存储，不保存在最新运行时数据中
+    RuntimeBreakdownVO breakdown;
+    //客户端自身的开销：CPU占用（单个核心的比例）、内存分配速率（MB/s）、常驻内存（MB）与降级等级，旧版本客户端为null
+    Double agentCpuUsage;
+    Double agentAllocationRate;
+    Double agentMemory;
+    Integer agentThrottle;
+    //客户端扩展采集器的指标，ID由启动时协商的指标字典分配，与数值一一对应，单独存储，不保存在最新运行时数据中
+    int[] metricIds;
+    double[] metricValues;
+}
@@ -0,0 +1,14 @@
+package cn.gugufish.entity.vo.request;
+
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class RuntimeMetricHistoryVO {
+    //按指标名称分组的时间序列，每项包含timestamp与value
+    Map<String, List<JSONObject>> series = new LinkedHashMap<>();
+}
@@ -0,0 +1,20 @@
+package cn.gugufish.entity.vo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 正在触发的告警
+ */
+@Data
+@AllArgsConstructor
+public class AlertVO {
+    int ruleId;
+    String ruleName;
+    int clientId;
+    String metric;
+    //最近一次的指标值
+    double value;
+    //条件开始满足的时间戳
+    long since;
+}
@@ -0,0 +1,22 @@
+package cn.gugufish.entity.vo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 正在持续的异常
+ */
+@Data
+@AllArgsConstructor
+public class AnomalyVO {
+    int clientId;
+    String metric;
+    //最近一次的指标值、基线的期望值与偏离的标准差倍数
+    double value;
+    double expected;
+    double deviation;
+    //是否按每周同一小时的基线判断
+    boolean seasonal;
+    //判定为异常的时间戳
+    long since;
+}
@@ -0,0 +1,16 @@
+package cn.gugufish.entity.vo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 客户端运行时数据的上报计划，客户端在满足 (时间戳 - phase) % interval == 0 的时刻上报
+ */
+@Data
+@AllArgsConstructor
+public class ReportScheduleVO {
+    //上报间隔（毫秒）
+    long interval;
+    //相对于整间隔的偏移（毫秒）
+    long phase;
+}
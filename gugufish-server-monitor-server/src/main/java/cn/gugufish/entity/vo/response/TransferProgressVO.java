@@ -0,0 +1,18 @@
+package cn.gugufish.entity.vo.response;
+
+import lombok.Data;
+
+@Data
+public class TransferProgressVO {
+    String id;
+    int clientId;
+    String path;
+    String direction;
+    long offset;
+    long total;
+    long transferred;
+    long startTime;
+    long updateTime;
+    String status;
+    String message;
+}
@@ -4,6 +4,9 @@ import cn.gugufish.entity.RestBean;
 import cn.gugufish.utils.Const;
 import cn.gugufish.utils.FlowUtils;
 import cn.gugufish.utils.IpUtils;
+import cn.gugufish.utils.MetricsUtils;
+import cn.gugufish.utils.TokenBucketLimiter;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -18,10 +21,15 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 限流控制过滤器
- * 防止用户高频请求接口，借助Redis进行限流
+ * 防止用户高频请求接口，采用两级限流：
+ * 1. 进程内按IP分桶的令牌桶，绝大多数请求在本地即可完成判定
+ * 2. 只有令牌即将耗尽的IP才会升级到Redis进行共享计数与封禁
+ * 本地放行的请求每累计一批同步一次到Redis的共享计数器，多节点部署时共享计数仍然覆盖全部节点的请求，
+ * 整个集群对单个IP的限制依然是limit，而不是节点数量乘以本地令牌桶容量
  */
 @Slf4j
 @Component
@@ -39,14 +47,34 @@ public class FlowLimitingFilter extends HttpFilter {
     //超出请求限制封禁时间
     @Value("${spring.web.flow.block}")
     int block;
+    //本地令牌剩余占比低于该值时升级到Redis判定
+    @Value("${spring.web.flow.escalate}")
+    double escalate;
+    //本地最多保存的IP令牌桶数量
+    @Value("${spring.web.flow.max-buckets}")
+    int maxBuckets;
+    //本地放行的请求每累计多少次同步一次到Redis
+    @Value("${spring.web.flow.forward-batch}")
+    int forwardBatch;
 
     @Resource
     FlowUtils utils;
 
+    @Resource
+    MetricsUtils metrics;
+
+    private TokenBucketLimiter limiter;
+
+    @PostConstruct
+    public void initLimiter() {
+        limiter = new TokenBucketLimiter(limit, period, escalate, maxBuckets);
+        metrics.gauge("monitor.flow.buckets", "本地限流令牌桶数量", limiter, TokenBucketLimiter::size);
+    }
+
     @Override
     protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
         String address = IpUtils.getRealClientIp(request);
-        if ("OPTIONS".equals(request.getMethod()) && !tryCount(address))
+        if (!tryCount(address))
             this.writeBlockMessage(response);
         else
             chain.doFilter(request, response);
@@ -54,17 +82,37 @@ public class FlowLimitingFilter extends HttpFilter {
 
     /**
      * 尝试对指定IP地址请求计数，如果被限制则无法继续访问
+     * 先在本地令牌桶中判定，只有令牌即将耗尽或本地放行的请求累计满一批时才访问Redis，
+     * 令牌耗尽或Redis判定该IP已被封禁时，同步在本地封禁，封禁期内不再访问Redis
      * @param address 请求IP地址
      * @return 是否操作成功
      */
     private boolean tryCount(String address) {
-        synchronized (address.intern()) {
-            if(Boolean.TRUE.equals(template.hasKey(Const.FLOW_LIMIT_BLOCK + address)))
-                return false;
-            String counterKey = Const.FLOW_LIMIT_COUNTER + address;
-            String blockKey = Const.FLOW_LIMIT_BLOCK + address;
-            return utils.limitPeriodCheck(counterKey, blockKey, block, limit, period);
-        }
+        return switch (limiter.tryAcquire(address)) {
+            case ALLOW -> {
+                int admitted = limiter.takeAdmitted(address, forwardBatch);
+                if(admitted > 0 && !utils.limitPeriodCheck(Const.FLOW_LIMIT_COUNTER + address,
+                        Const.FLOW_LIMIT_BLOCK + address, block, limit, period, admitted))
+                    limiter.block(address, block);
+                yield true;
+            }
+            case REJECT -> false;
+            case EXHAUSTED -> {
+                template.opsForValue().set(Const.FLOW_LIMIT_BLOCK + address, "", block, TimeUnit.SECONDS);
+                limiter.block(address, block);
+                yield false;
+            }
+            case ESCALATE -> {
+                String counterKey = Const.FLOW_LIMIT_COUNTER + address;
+                String blockKey = Const.FLOW_LIMIT_BLOCK + address;
+                //桶数量达到上限时没有本地桶，只计本次请求
+                int admitted = Math.max(limiter.takeAdmitted(address, 1), 1);
+                boolean pass = !Boolean.TRUE.equals(template.hasKey(blockKey))
+                        && utils.limitPeriodCheck(counterKey, blockKey, block, limit, period, admitted);
+                if(!pass) limiter.block(address, block);
+                yield pass;
+            }
+        };
     }
 
     /**
@@ -0,0 +1,125 @@
+package cn.gugufish.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 响应包装类，在不缓冲整个响应体的前提下，截取响应体的前N个字节用于日志打印
+ * 响应内容依然直接写入原始响应流，只是额外复制最多N个字节，
+ * 与ContentCachingResponseWrapper不同，大响应不会在内存中完整保存一份。
+ */
+public class LimitedCaptureResponseWrapper extends HttpServletResponseWrapper {
+
+    private final byte[] captured;
+    private int capturedLength = 0;
+    private long totalLength = 0;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    public LimitedCaptureResponseWrapper(HttpServletResponse response, int limit) {
+        super(response);
+        this.captured = new byte[Math.max(limit, 0)];
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if(outputStream == null)
+            outputStream = new CaptureOutputStream(super.getOutputStream());
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if(writer == null) {
+            Charset charset = Charset.forName(this.getCharacterEncoding());
+            writer = new PrintWriter(new OutputStreamWriter(this.getOutputStream(), charset));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if(writer != null) writer.flush();
+        super.flushBuffer();
+    }
+
+    /**
+     * 将通过Writer写出但仍在缓冲区中的内容刷新到响应流
+     */
+    public void flushWriter() {
+        if(writer != null) writer.flush();
+    }
+
+    /**
+     * 获取截取到的响应体内容
+     * @return 最多N个字节的响应体副本
+     */
+    public byte[] getCapturedContent() {
+        return Arrays.copyOf(captured, capturedLength);
+    }
+
+    /**
+     * 获取响应体实际写出的总字节数
+     * @return 总字节数
+     */
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    private void capture(byte[] b, int off, int len) {
+        totalLength += len;
+        int copy = Math.min(len, captured.length - capturedLength);
+        if(copy > 0) {
+            System.arraycopy(b, off, captured, capturedLength, copy);
+            capturedLength += copy;
+        }
+    }
+
+    /**
+     * 写入原始流的同时截取前N个字节
+     */
+    private class CaptureOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        private CaptureOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            totalLength++;
+            if(capturedLength < captured.length)
+                captured[capturedLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            capture(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            delegate.setWriteListener(listener);
+        }
+    }
+}
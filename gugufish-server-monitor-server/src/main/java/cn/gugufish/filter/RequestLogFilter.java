@@ -1,27 +1,38 @@
 package cn.gugufish.filter;
 
+import cn.gugufish.utils.AccessLogUtils;
 import cn.gugufish.utils.IpUtils;
-import com.alibaba.fastjson2.JSONObject;
 import cn.gugufish.utils.Const;
+import cn.gugufish.utils.PathPrefixMatcher;
 import cn.gugufish.utils.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 
 import java.io.IOException;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * 请求日志过滤器，用于记录所有用户请求信息
+ * 请求日志过滤器，用于记录用户请求信息
+ * 每个请求只在处理结束时生成一条结构化日志，并交给后台线程异步输出：
+ * - 响应体最多截取配置的字节数，不会完整缓存响应
+ * - 可以按路由前缀配置采样率，采样率为0的路由完全不记录
+ * - 异步与流式响应（如文件下载、批量命令输出）在异步处理完成后才提交，记录完整的耗时与响应大小
  */
 @Slf4j
 @Component
@@ -30,65 +41,119 @@ public class RequestLogFilter extends OncePerRequestFilter {
     @Resource
     SnowflakeIdGenerator generator;
 
-    private final Set<String> ignores = Set.of("/swagger-ui", "/v3/api-docs", "/monitor/runtime",
-            "/api/monitor/list", "/api/monitor/runtime-now");
+    @Resource
+    AccessLogUtils accessLog;
+
+    //响应体最多截取的字节数
+    @Value("${spring.web.log.body-limit}")
+    int bodyLimit;
+
+    //不需要记录日志的路由前缀，逗号分隔
+    @Value("${spring.web.log.ignores}")
+    String[] ignores;
+
+    //按路由前缀配置的采样率，格式为 前缀=采样率，逗号分隔
+    @Value("${spring.web.log.sampling}")
+    String[] sampling;
+
+    private final PathPrefixMatcher<Double> sampleRates = new PathPrefixMatcher<>();
+
+    @PostConstruct
+    public void initSampleRates() {
+        for (String rule : sampling) {
+            int index = rule.lastIndexOf('=');
+            if(index <= 0) continue;
+            sampleRates.add(rule.substring(0, index).trim(), Double.parseDouble(rule.substring(index + 1).trim()));
+        }
+        for (String ignore : ignores) {
+            if(!ignore.isBlank()) sampleRates.add(ignore.trim(), 0.0);
+        }
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        if(this.isIgnoreUrl(request.getServletPath())) {
+        double rate = sampleRates.match(request.getServletPath(), 1.0);
+        if(rate <= 0) {
             filterChain.doFilter(request, response);
-        } else {
-            long startTime = System.currentTimeMillis();
-            this.logRequestStart(request);
-            ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
-            filterChain.doFilter(request, wrapper);
-            this.logRequestEnd(wrapper, startTime);
-            wrapper.copyBodyToResponse();
+            return;
+        }
+        long reqId = generator.nextId();
+        MDC.put("reqId", String.valueOf(reqId));
+        try {
+            if(rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate) {
+                this.doLoggedFilter(reqId, request, response, filterChain);
+            } else {
+                filterChain.doFilter(request, response);
+            }
+        } finally {
+            MDC.remove("reqId");
         }
     }
 
     /**
-     * 判定当前请求url是否不需要日志打印
-     * @param url 路径
-     * @return 是否忽略
+     * 执行请求并在结束时提交访问日志，请求进入异步处理时推迟到异步处理完成
+     * @param reqId 请求ID
+     * @param request 请求
+     * @param response 响应
+     * @param filterChain 过滤器链
      */
-    private boolean isIgnoreUrl(String url){
-        for (String ignore : ignores) {
-            if(url.startsWith(ignore)) return true;
+    private void doLoggedFilter(long reqId, HttpServletRequest request, HttpServletResponse response,
+                                FilterChain filterChain) throws ServletException, IOException {
+        long startTime = System.currentTimeMillis();
+        Map<String, String> params = new LinkedHashMap<>();
+        request.getParameterMap().forEach((k, v) -> params.put(k, v.length > 0 ? v[0] : null));
+        LimitedCaptureResponseWrapper wrapper = new LimitedCaptureResponseWrapper(response, bodyLimit);
+        try {
+            filterChain.doFilter(request, wrapper);
+        } finally {
+            Runnable submit = this.prepareLog(reqId, request, wrapper, params, startTime);
+            if(request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    //超时与出错之后容器同样会完成异步处理，只在完成时提交一次
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        submit.run();
+                    }
+                    @Override
+                    public void onTimeout(AsyncEvent event) { }
+                    @Override
+                    public void onError(AsyncEvent event) { }
+                    @Override
+                    public void onStartAsync(AsyncEvent event) { }
+                });
+            } else {
+                submit.run();
+            }
         }
-        return false;
     }
 
     /**
-     * 请求结束时的日志打印，包含处理耗时以及响应结果
+     * 在请求线程中采集请求身份信息，返回的任务在响应结束时读取处理耗时以及响应结果，提交到异步日志队列
+     * 异步处理完成时不在原请求线程中，无法再读取安全上下文，因此身份信息需要提前采集
+     * @param reqId 请求ID
+     * @param request 请求
      * @param wrapper 用于读取响应结果的包装类
+     * @param params 请求参数
      * @param startTime 起始时间
+     * @return 提交日志的任务
      */
-    public void logRequestEnd(ContentCachingResponseWrapper wrapper, long startTime){
-        long time = System.currentTimeMillis() - startTime;
-        int status = wrapper.getStatus();
-        String content = status != 200 ?
-                status + " 错误" : new String(wrapper.getContentAsByteArray());
-        log.info("请求处理耗时: {}ms | 响应结果: {}", time, content);
-    }
-
-    /**
-     * 请求开始时的日志打印，包含请求全部信息，以及对应用户角色
-     * @param request 请求
-     */
-    public void logRequestStart(HttpServletRequest request){
-        long reqId = generator.nextId();
-        MDC.put("reqId", String.valueOf(reqId));
-        JSONObject object = new JSONObject();
-        request.getParameterMap().forEach((k, v) -> object.put(k, v.length > 0 ? v[0] : null));
-        Object id = request.getAttribute(Const.ATTR_USER_ID);
-        if(id != null) {
-            User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            log.info("请求URL: \"{}\" ({}) | 远程IP地址: {} │ 身份: {} (UID: {}) | 角色: {} | 请求参数列表: {}",
-                    request.getServletPath(), request.getMethod(), IpUtils.getRealClientIp(request),
-                    user.getUsername(), id, user.getAuthorities(), object);
-        } else {
-            log.info("请求URL: \"{}\" ({}) | 远程IP地址: {} │ 身份: 未验证 | 请求参数列表: {}",
-                    request.getServletPath(), request.getMethod(), IpUtils.getRealClientIp(request), object);
+    private Runnable prepareLog(long reqId, HttpServletRequest request, LimitedCaptureResponseWrapper wrapper,
+                                Map<String, String> params, long startTime) {
+        Integer id = (Integer) request.getAttribute(Const.ATTR_USER_ID);
+        String username = null, role = null;
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if(id != null && authentication != null && authentication.getPrincipal() instanceof User user) {
+            username = user.getUsername();
+            role = user.getAuthorities().toString();
         }
+        String url = request.getServletPath(), method = request.getMethod(), ip = IpUtils.getRealClientIp(request);
+        String finalUsername = username, finalRole = role;
+        return () -> {
+            wrapper.flushWriter();
+            int status = wrapper.getStatus();
+            accessLog.submit(new AccessLogUtils.Entry(reqId, url, method, ip, id, finalUsername, finalRole, params,
+                    status, System.currentTimeMillis() - startTime, wrapper.getTotalLength(),
+                    status == 200 ? wrapper.getCapturedContent() : null));
+        };
     }
 }
@@ -1,5 +1,6 @@
 package cn.gugufish.listener;
 
+import cn.gugufish.utils.MetricsUtils;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.AmqpRejectAndDontRequeueException;
@@ -27,6 +28,9 @@ public class MailQueueListener {
     @Value("${spring.mail.username}")
     String username;
 
+    @Resource
+    MetricsUtils metrics;
+
     /**
      * 处理邮件发送
      * @param data 邮件信息
@@ -62,6 +66,21 @@ public class MailQueueListener {
                                 "你的账户被多次尝试登录，登录远程IP为" + ip+
                                 "如非本人操作，请注意你的账户安全,你的账号多次被尝试登录",
                                 email);
+                case "alert" ->
+                        createMessage("firing".equals(data.get("state")) ?
+                                        "告警通知，主机 " + data.get("client") + " 触发告警规则 " + data.get("rule") :
+                                        "告警解除，主机 " + data.get("client") + " 的告警规则 " + data.get("rule") + " 已恢复",
+                                "告警规则：" + data.get("rule") + "\n主机：" + data.get("client") +
+                                "\n指标：" + data.get("metric") + "\n当前值：" + data.get("value") +
+                                "\n阈值：" + data.get("threshold"),
+                                email);
+                case "anomaly" ->
+                        createMessage("异常提示，主机 " + data.get("client") + " 的 " + data.get("metric") + " 明显偏离平时水平",
+                                "主机：" + data.get("client") + "\n指标：" + data.get("metric") +
+                                "\n当前值：" + data.get("value") + "\n基线期望值：" + data.get("expected") +
+                                "\n偏离：" + data.get("deviation") + " 倍标准差" +
+                                ("seasonal".equals(data.get("baseline")) ? "（与每周同一时段相比）" : "（与近期整体相比）"),
+                                email);
                 default -> null;
             };
 
@@ -71,12 +90,15 @@ public class MailQueueListener {
             }
 
             sender.send(message);
+            metrics.getMailSent().increment();
             log.info("成功发送邮件到: {}, 类型: {}", email, data.get("type"));
         } catch (MailException e) {
+            metrics.getMailFailed().increment();
             log.error("邮件发送失败: {}", e.getMessage());
             // 抛出这个异常会告诉RabbitMQ不要重新入队这条消息
             throw new AmqpRejectAndDontRequeueException("邮件发送失败", e);
         } catch (Exception e) {
+            metrics.getMailFailed().increment();
             log.error("处理邮件消息时发生错误: {}", e.getMessage());
             throw new AmqpRejectAndDontRequeueException("处理邮件消息时发生错误", e);
         }
@@ -0,0 +1,9 @@
+package cn.gugufish.mapper;
+
+import cn.gugufish.entity.dto.AlertRule;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface AlertRuleMapper extends BaseMapper<AlertRule> {
+}
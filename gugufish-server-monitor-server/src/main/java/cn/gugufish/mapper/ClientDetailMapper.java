@@ -2,9 +2,23 @@ package cn.gugufish.mapper;
 
 import cn.gugufish.entity.dto.ClientDetail;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 
 @Mapper
 public interface ClientDetailMapper extends BaseMapper<ClientDetail> {
 
+    /**
+     * 插入或更新客户端基本信息，单条语句完成，并发启动的客户端不会出现先查后写的竞争
+     * @param detail 客户端基本信息
+     * @return 影响的行数
+     */
+    @Insert("""
+            INSERT INTO db_client_detail (id, os_arch, os_name, os_version, os_bit, cpu_name, cpu_core, memory, disk, ip)
+            VALUES (#{id}, #{osArch}, #{osName}, #{osVersion}, #{osBit}, #{cpuName}, #{cpuCore}, #{memory}, #{disk}, #{ip})
+            ON DUPLICATE KEY UPDATE os_arch = VALUES(os_arch), os_name = VALUES(os_name), os_version = VALUES(os_version),
+                os_bit = VALUES(os_bit), cpu_name = VALUES(cpu_name), cpu_core = VALUES(cpu_core),
+                memory = VALUES(memory), disk = VALUES(disk), ip = VALUES(ip)
+            """)
+    int upsert(ClientDetail detail);
 }
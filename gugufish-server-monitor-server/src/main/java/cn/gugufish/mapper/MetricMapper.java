@@ -0,0 +1,18 @@
+package cn.gugufish.mapper;
+
+import cn.gugufish.entity.dto.Metric;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface MetricMapper extends BaseMapper<Metric> {
+
+    /**
+     * 登记指标名称，已存在时忽略，多个服务端实例或并发的协商不会产生重复名称
+     * @param name 指标名称
+     * @return 影响的行数
+     */
+    @Insert("INSERT IGNORE INTO db_metric (name) VALUES (#{name})")
+    int insertIgnore(String name);
+}
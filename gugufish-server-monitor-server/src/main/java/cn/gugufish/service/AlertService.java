@@ -0,0 +1,20 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.dto.AlertRule;
+import cn.gugufish.entity.dto.Client;
+import cn.gugufish.entity.dto.ClientDetail;
+import cn.gugufish.entity.vo.request.AlertRuleVO;
+import cn.gugufish.entity.vo.request.RuntimeDetailVO;
+import cn.gugufish.entity.vo.response.AlertVO;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+
+public interface AlertService extends IService<AlertRule> {
+    void evaluate(Client client, RuntimeDetailVO vo, ClientDetail detail);
+    List<AlertRuleVO> listRules();
+    String saveRule(AlertRuleVO vo);
+    void deleteRule(int id);
+    List<AlertVO> activeAlerts();
+    void forget(int clientId);
+}
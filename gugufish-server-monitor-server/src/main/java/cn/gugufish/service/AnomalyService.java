@@ -0,0 +1,13 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.dto.Client;
+import cn.gugufish.entity.vo.request.RuntimeDetailVO;
+import cn.gugufish.entity.vo.response.AnomalyVO;
+
+import java.util.List;
+
+public interface AnomalyService {
+    void accept(Client client, RuntimeDetailVO vo);
+    void forget(int clientId);
+    List<AnomalyVO> currentAnomalies();
+}
@@ -1,5 +1,6 @@
 package cn.gugufish.service;
 
+import cn.gugufish.entity.vo.response.ReportScheduleVO;
 import cn.gugufish.entity.vo.response.SshSettingsVO;
 import cn.gugufish.entity.vo.request.*;
 import com.baomidou.mybatisplus.extension.service.IService;
@@ -13,13 +14,18 @@ public interface ClientService extends IService<Client> {
     Client findClientByToken(String token);
     boolean verifyAndRegister(String token);
     void updateClientDetail(ClientDetailVO vo,Client client);
+    boolean hasClientDetail(Client client);
+    ReportScheduleVO reportSchedule(Client client);
     void updateRuntimeDetail(RuntimeDetailVO vo, Client client);
+    void heartbeat(Client client);
     List<ClientPreviewVO> listClients();
     List<ClientSimpleVO> listSimpleList();
     void renameClient(RenameClientVO vo);
     void renameNode(RenameNodeVO vo);
     ClientDetailsVO clientDetails(int clientId);
     RuntimeHistoryVO clientRuntimeDetailsHistory(int clientId);
+    RuntimeBreakdownHistoryVO clientRuntimeBreakdownHistory(int clientId, String type);
+    RuntimeMetricHistoryVO clientRuntimeMetricHistory(int clientId);
     RuntimeDetailVO clientRuntimeDetailsNow(int clientId);
     void deleteClient(int clientId);
     void saveClientSshConnection(SshConnectionVO vo);
@@ -0,0 +1,12 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.dto.Metric;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+import java.util.Map;
+
+public interface MetricService extends IService<Metric> {
+    Map<String, Integer> negotiate(List<String> names);
+    String metricName(int id);
+}
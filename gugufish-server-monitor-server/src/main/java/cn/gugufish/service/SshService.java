@@ -0,0 +1,16 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.vo.request.BatchExecVO;
+import cn.gugufish.entity.vo.response.TransferProgressVO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface SshService {
+    void batchExec(BatchExecVO vo, OutputStream output) throws IOException;
+    long fileSize(int clientId, String path) throws IOException;
+    void download(int clientId, String path, long offset, long size, String transferId, OutputStream output) throws IOException;
+    long upload(int clientId, String path, long offset, String transferId, InputStream input) throws IOException;
+    TransferProgressVO transferProgress(String transferId);
+}
@@ -0,0 +1,363 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Account;
+import cn.gugufish.entity.dto.AlertRule;
+import cn.gugufish.entity.dto.Client;
+import cn.gugufish.entity.dto.ClientDetail;
+import cn.gugufish.entity.vo.request.AlertRuleVO;
+import cn.gugufish.entity.vo.request.RuntimeDetailVO;
+import cn.gugufish.entity.vo.response.AlertVO;
+import cn.gugufish.mapper.AlertRuleMapper;
+import cn.gugufish.service.AccountService;
+import cn.gugufish.service.AlertService;
+import cn.gugufish.service.MetricService;
+import cn.gugufish.utils.Const;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 告警规则的管理与流式评估
+ * 规则在变更时编译一次，按指标以及规则限定的主机或节点建立索引，每条运行时数据只评估与其指标、主机和节点对应的规则，
+ * 评估过程不访问数据库：
+ * - 每条规则为每台主机保存条件开始满足的时刻、是否正在触发、上次通知时间与最近的值，存放在按主机下标扩容的数组中，
+ *   主机删除后清空其状态并回收下标
+ * - 条件持续满足达到持续时间后触发，越过恢复阈值后才解除，两者之间的波动不会反复触发（滞回）
+ * - 触发期间不重复通知，同一主机同一规则两次通知之间至少间隔静默时间
+ * - 触发与解除通过 mail 队列发送 alert 类型的邮件，只在状态变化时才查询收件人
+ * 未变更的规则在重新编译后保留原有状态
+ */
+@Slf4j
+@Service
+public class AlertServiceImpl extends ServiceImpl<AlertRuleMapper, AlertRule> implements AlertService {
+    /**
+     * 内置指标，下标即索引数组中的位置；memoryPercent与diskPercent由上报值与主机基本信息计算
+     */
+    private static final String[] BUILTIN_METRICS = {"cpuUsage", "memoryUsage", "diskUsage", "networkUpload",
+            "networkDownload", "diskRead", "diskWrite", "memoryPercent", "diskPercent"};
+
+    @Resource
+    MetricService metricService;
+
+    @Resource
+    AccountService accountService;
+
+    @Resource
+    AmqpTemplate rabbitTemplate;
+
+    /**
+     * 主机ID到状态数组下标
+     */
+    private final Map<Integer, Integer> clientSlots = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    //已删除主机回收的下标，分配时优先复用
+    private final Queue<Integer> freeSlots = new ConcurrentLinkedQueue<>();
+
+    private volatile RuleIndex index = new RuleIndex(List.of());
+
+    @PostConstruct
+    public void compileRules() {
+        Map<Integer, CompiledRule> previous = new HashMap<>();
+        for (CompiledRule rule : index.rules) previous.put(rule.rule.getId(), rule);
+        List<CompiledRule> compiled = new ArrayList<>();
+        for (AlertRule rule : this.list(Wrappers.<AlertRule>query().eq("enabled", true))) {
+            CompiledRule old = previous.get(rule.getId());
+            compiled.add(old != null && old.rule.equals(rule) ? old : new CompiledRule(rule));
+        }
+        index = new RuleIndex(compiled);
+        log.info("已编译 {} 条告警规则", compiled.size());
+    }
+
+    @Override
+    public void evaluate(Client client, RuntimeDetailVO vo, ClientDetail detail) {
+        RuleIndex current = index;
+        if(current.rules.isEmpty()) return;
+        int slot = clientSlots.computeIfAbsent(client.getId(), id -> {
+            Integer free = freeSlots.poll();
+            return free != null ? free : nextSlot.getAndIncrement();
+        });
+        long now = System.currentTimeMillis();
+        for (int metric : current.builtinMetrics) {
+            double value = builtinValue(metric, vo, detail);
+            if(Double.isNaN(value)) continue;
+            this.accept(current.builtin[metric], client, slot, value, now);
+        }
+        int[] ids = vo.getMetricIds();
+        double[] values = vo.getMetricValues();
+        if(ids == null || values == null || current.extension.isEmpty()) return;
+        for (int i = 0; i < ids.length && i < values.length; i++) {
+            String name = metricService.metricName(ids[i]);
+            RuleGroup rules = name == null ? null : current.extension.get(name);
+            if(rules != null) this.accept(rules, client, slot, values[i], now);
+        }
+    }
+
+    /**
+     * 主机删除后清空全部规则中该主机的状态并回收其下标，之后使用该下标的主机从初始状态开始评估
+     * @param clientId 主机ID
+     */
+    @Override
+    public void forget(int clientId) {
+        Integer slot = clientSlots.remove(clientId);
+        if(slot == null) return;
+        for (CompiledRule rule : index.rules) rule.reset(slot);
+        freeSlots.offer(slot);
+    }
+
+    @Override
+    public List<AlertRuleVO> listRules() {
+        return this.list().stream().map(rule -> rule.asViewObject(AlertRuleVO.class)).toList();
+    }
+
+    @Override
+    public String saveRule(AlertRuleVO vo) {
+        if(vo.getId() != null && this.getById(vo.getId()) == null) return "告警规则不存在";
+        if(vo.getRecover() != null && (vo.getOperator().startsWith(">") ?
+                vo.getRecover() > vo.getThreshold() : vo.getRecover() < vo.getThreshold()))
+            return "恢复阈值需要位于触发阈值的恢复一侧";
+        AlertRule rule = new AlertRule();
+        BeanUtils.copyProperties(vo, rule);
+        this.saveOrUpdate(rule);
+        this.compileRules();
+        return null;
+    }
+
+    @Override
+    public void deleteRule(int id) {
+        this.removeById(id);
+        this.compileRules();
+    }
+
+    @Override
+    public List<AlertVO> activeAlerts() {
+        List<AlertVO> alerts = new ArrayList<>();
+        for (CompiledRule rule : index.rules) {
+            synchronized (rule) {
+                clientSlots.forEach((clientId, slot) -> {
+                    if(slot < rule.firing.length && rule.firing[slot])
+                        alerts.add(new AlertVO(rule.rule.getId(), rule.rule.getName(), clientId,
+                                rule.rule.getMetric(), rule.lastValue[slot], rule.breachSince[slot]));
+                });
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * 评估一个指标下与主机相关的全部规则：不限定范围的规则、限定该主机的规则与限定其节点的规则
+     */
+    private void accept(RuleGroup group, Client client, int slot, double value, long now) {
+        for (CompiledRule rule : group.global) this.accept(rule, client, slot, value, now);
+        CompiledRule[] scoped = group.byClient.get(client.getId());
+        if(scoped != null) for (CompiledRule rule : scoped) this.accept(rule, client, slot, value, now);
+        scoped = client.getNode() == null ? null : group.byNode.get(client.getNode());
+        if(scoped != null) for (CompiledRule rule : scoped) this.accept(rule, client, slot, value, now);
+    }
+
+    /**
+     * 评估一条规则在一台主机上的新值，状态变化时在锁外发送通知
+     */
+    private void accept(CompiledRule rule, Client client, int slot, double value, long now) {
+        if(!rule.matches(client)) return;
+        int transition = rule.update(slot, value, now);
+        if(transition != CompiledRule.NONE) this.notify(rule, client, value, transition == CompiledRule.FIRING);
+    }
+
+    private void notify(CompiledRule rule, Client client, double value, boolean firing) {
+        AlertRule definition = rule.rule;
+        log.info("告警规则 {} 在主机 {} 上{}，当前值 {}", definition.getName(), client.getName(),
+                firing ? "触发" : "解除", value);
+        List<String> emails;
+        if(definition.getEmail() == null || definition.getEmail().isBlank()) {
+            emails = accountService.list(Wrappers.<Account>query().eq("role", Const.ROLE_ADMIN))
+                    .stream().map(Account::getEmail).toList();
+        } else {
+            emails = Arrays.stream(definition.getEmail().split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+        }
+        for (String email : emails) {
+            Map<String, Object> data = Map.of("type", "alert", "email", email,
+                    "rule", definition.getName(), "client", client.getName(), "metric", definition.getMetric(),
+                    "value", String.format("%.4f", value), "threshold", String.valueOf(definition.getThreshold()),
+                    "state", firing ? "firing" : "resolved");
+            rabbitTemplate.convertAndSend(Const.MQ_MAIL, data);
+        }
+    }
+
+    private static double builtinValue(int metric, RuntimeDetailVO vo, ClientDetail detail) {
+        return switch (metric) {
+            case 0 -> vo.getCpuUsage();
+            case 1 -> vo.getMemoryUsage();
+            case 2 -> vo.getDiskUsage();
+            case 3 -> vo.getNetworkUpload();
+            case 4 -> vo.getNetworkDownload();
+            case 5 -> vo.getDiskRead();
+            case 6 -> vo.getDiskWrite();
+            case 7 -> detail == null || detail.getMemory() <= 0 ? Double.NaN : vo.getMemoryUsage() / detail.getMemory();
+            case 8 -> detail == null || detail.getDisk() <= 0 ? Double.NaN : vo.getDiskUsage() / detail.getDisk();
+            default -> Double.NaN;
+        };
+    }
+
+    /**
+     * 编译后的规则索引，不可变，规则变更时整体替换
+     */
+    private static class RuleIndex {
+        final List<CompiledRule> rules;
+        //按内置指标下标分组的规则，以及存在规则的内置指标下标
+        final RuleGroup[] builtin = new RuleGroup[BUILTIN_METRICS.length];
+        final int[] builtinMetrics;
+        //按扩展指标名称分组的规则
+        final Map<String, RuleGroup> extension = new HashMap<>();
+
+        RuleIndex(List<CompiledRule> rules) {
+            this.rules = rules;
+            List<String> builtinNames = Arrays.asList(BUILTIN_METRICS);
+            Map<String, List<CompiledRule>> extensionRules = new HashMap<>();
+            List<List<CompiledRule>> builtinRules = new ArrayList<>();
+            for (int i = 0; i < BUILTIN_METRICS.length; i++) builtinRules.add(new ArrayList<>());
+            for (CompiledRule rule : rules) {
+                int metric = builtinNames.indexOf(rule.rule.getMetric());
+                if(metric >= 0) {
+                    builtinRules.get(metric).add(rule);
+                } else {
+                    extensionRules.computeIfAbsent(rule.rule.getMetric(), k -> new ArrayList<>()).add(rule);
+                }
+            }
+            List<Integer> active = new ArrayList<>();
+            for (int i = 0; i < BUILTIN_METRICS.length; i++) {
+                builtin[i] = new RuleGroup(builtinRules.get(i));
+                if(!builtinRules.get(i).isEmpty()) active.add(i);
+            }
+            builtinMetrics = active.stream().mapToInt(Integer::intValue).toArray();
+            extensionRules.forEach((metric, list) -> extension.put(metric, new RuleGroup(list)));
+        }
+    }
+
+    /**
+     * 同一指标的规则按适用范围分组：限定主机的规则按主机ID索引（同时限定节点的在评估时再检查节点），
+     * 只限定节点的规则按节点索引，其余规则适用于全部主机
+     */
+    private static class RuleGroup {
+        final CompiledRule[] global;
+        final Map<Integer, CompiledRule[]> byClient = new HashMap<>();
+        final Map<String, CompiledRule[]> byNode = new HashMap<>();
+
+        RuleGroup(List<CompiledRule> rules) {
+            List<CompiledRule> global = new ArrayList<>();
+            Map<Integer, List<CompiledRule>> clients = new HashMap<>();
+            Map<String, List<CompiledRule>> nodes = new HashMap<>();
+            for (CompiledRule rule : rules) {
+                AlertRule definition = rule.rule;
+                if(definition.getClientId() != null) {
+                    clients.computeIfAbsent(definition.getClientId(), k -> new ArrayList<>()).add(rule);
+                } else if(definition.getNode() != null && !definition.getNode().isEmpty()) {
+                    nodes.computeIfAbsent(definition.getNode(), k -> new ArrayList<>()).add(rule);
+                } else {
+                    global.add(rule);
+                }
+            }
+            this.global = global.toArray(new CompiledRule[0]);
+            clients.forEach((clientId, list) -> byClient.put(clientId, list.toArray(new CompiledRule[0])));
+            nodes.forEach((node, list) -> byNode.put(node, list.toArray(new CompiledRule[0])));
+        }
+    }
+
+    /**
+     * 编译后的规则与其在各主机上的状态
+     */
+    private static class CompiledRule {
+        static final int NONE = 0;
+        static final int FIRING = 1;
+        static final int RESOLVED = 2;
+
+        final AlertRule rule;
+        final boolean upper;
+        final boolean inclusive;
+        final double threshold;
+        final double recover;
+        final long duration;
+        final long silence;
+
+        //按主机下标存放：条件开始满足的时刻（0为未满足）、是否正在触发、本次触发是否已通知、上次通知时刻、最近的值
+        long[] breachSince = new long[0];
+        boolean[] firing = new boolean[0];
+        boolean[] notified = new boolean[0];
+        long[] lastNotified = new long[0];
+        double[] lastValue = new double[0];
+
+        CompiledRule(AlertRule rule) {
+            this.rule = rule;
+            this.upper = rule.getOperator().startsWith(">");
+            this.inclusive = rule.getOperator().endsWith("=");
+            this.threshold = rule.getThreshold();
+            this.recover = rule.getRecover() == null ? rule.getThreshold() : rule.getRecover();
+            this.duration = rule.getDuration() * 1000L;
+            this.silence = rule.getSilence() * 1000L;
+        }
+
+        boolean matches(Client client) {
+            if(rule.getClientId() != null && !rule.getClientId().equals(client.getId())) return false;
+            return rule.getNode() == null || rule.getNode().isEmpty() || rule.getNode().equals(client.getNode());
+        }
+
+        /**
+         * 更新一台主机的状态
+         * @return 状态变化，NONE、FIRING或RESOLVED
+         */
+        synchronized int update(int slot, double value, long now) {
+            if(slot >= firing.length) this.grow(slot);
+            lastValue[slot] = value;
+            boolean breached = upper ? (inclusive ? value >= threshold : value > threshold)
+                    : (inclusive ? value <= threshold : value < threshold);
+            if(firing[slot]) {
+                boolean cleared = upper ? value < recover : value > recover;
+                if(!cleared) return NONE;
+                firing[slot] = false;
+                breachSince[slot] = 0;
+                return notified[slot] ? RESOLVED : NONE;
+            }
+            if(!breached) {
+                breachSince[slot] = 0;
+                return NONE;
+            }
+            if(breachSince[slot] == 0) breachSince[slot] = now;
+            if(now - breachSince[slot] < duration) return NONE;
+            firing[slot] = true;
+            notified[slot] = lastNotified[slot] == 0 || now - lastNotified[slot] >= silence;
+            if(!notified[slot]) return NONE;
+            lastNotified[slot] = now;
+            return FIRING;
+        }
+
+        /**
+         * 清空一台主机的状态
+         */
+        synchronized void reset(int slot) {
+            if(slot >= firing.length) return;
+            breachSince[slot] = 0;
+            firing[slot] = false;
+            notified[slot] = false;
+            lastNotified[slot] = 0;
+            lastValue[slot] = 0;
+        }
+
+        private void grow(int slot) {
+            int size = Math.max(slot + 1, firing.length * 2);
+            breachSince = Arrays.copyOf(breachSince, size);
+            firing = Arrays.copyOf(firing, size);
+            notified = Arrays.copyOf(notified, size);
+            lastNotified = Arrays.copyOf(lastNotified, size);
+            lastValue = Arrays.copyOf(lastValue, size);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Account;
+import cn.gugufish.entity.dto.Client;
+import cn.gugufish.entity.vo.request.RuntimeDetailVO;
+import cn.gugufish.entity.vo.response.AnomalyVO;
+import cn.gugufish.service.AccountService;
+import cn.gugufish.service.AnomalyService;
+import cn.gugufish.utils.Const;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运行时数据的在线异常检测
+ * 固定阈值难以适用于配置各不相同的主机，这里为每台主机的每个内置指标学习自己的基线：
+ * - 全局基线：指数加权的均值与方差，每条数据O(1)更新
+ * - 季节基线：按每周的168个小时分别维护指数加权的均值与方差，该小时的样本足够后优先使用
+ * - 偏离基线超过若干倍标准差并连续出现若干次时判定为异常，回落到阈值的2/3以内时解除；
+ *   标准差设有按指标的下限，避免几乎不变的指标因微小波动被判定为异常
+ * - 判定为异常时通过 mail 队列发送 anomaly 类型的邮件给全部管理员，同一主机同一指标至少间隔静默时间
+ * 状态全部存放在每台主机的基本类型数组中，定期与关闭时写入快照文件，启动时读取，重启不会丢失已学习的基线
+ */
+@Slf4j
+@Service
+public class AnomalyServiceImpl implements AnomalyService {
+    private static final String[] METRICS = {"cpuUsage", "memoryUsage", "diskUsage", "networkUpload",
+            "networkDownload", "diskRead", "diskWrite"};
+    /**
+     * 各指标标准差的下限：CPU占用比例、内存与磁盘用量（GB）、网络速率（KB/s）、磁盘读写速率（MB/s）
+     */
+    private static final double[] MIN_DEVIATION = {0.02, 0.1, 0.5, 8, 8, 0.5, 0.5};
+    private static final int HOURS_OF_WEEK = 168;
+    private static final double CLEAR_RATIO = 2.0 / 3;
+    //快照文件格式：魔数、版本、指标数量，之后每台主机一项
+    private static final int SNAPSHOT_MAGIC = 0x414E4D59;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    @Resource
+    AccountService accountService;
+
+    @Resource
+    AmqpTemplate rabbitTemplate;
+
+    //是否开启异常检测
+    @Value("${spring.monitor.anomaly.enabled}")
+    boolean enabled;
+    //全局基线的平滑系数
+    @Value("${spring.monitor.anomaly.alpha}")
+    double alpha;
+    //是否维护每周同一小时的季节基线
+    @Value("${spring.monitor.anomaly.seasonal}")
+    boolean seasonal;
+    //季节基线的平滑系数，每小时约有数百条数据，需要明显小于全局基线，才能保留前几周的同一小时
+    @Value("${spring.monitor.anomaly.seasonal-alpha}")
+    double seasonalAlpha;
+    //判定为异常的标准差倍数
+    @Value("${spring.monitor.anomaly.threshold}")
+    double threshold;
+    //连续超出阈值多少次后判定为异常
+    @Value("${spring.monitor.anomaly.consecutive}")
+    int consecutive;
+    //全局基线与单个小时的季节基线开始使用前需要的样本数量
+    @Value("${spring.monitor.anomaly.warmup}")
+    int warmup;
+    @Value("${spring.monitor.anomaly.seasonal-warmup}")
+    int seasonalWarmup;
+    //同一主机同一指标两次异常通知的最小间隔（秒）
+    @Value("${spring.monitor.anomaly.silence}")
+    long silence;
+    //快照文件与写入间隔（秒）
+    @Value("${spring.monitor.anomaly.snapshot}")
+    String snapshot;
+    @Value("${spring.monitor.anomaly.snapshot-interval}")
+    long snapshotInterval;
+
+    private final Map<Integer, ClientState> states = new ConcurrentHashMap<>();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private ScheduledExecutorService snapshotter;
+
+    @PostConstruct
+    public void init() {
+        if(!enabled) return;
+        this.loadSnapshot();
+        snapshotter = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("anomaly-snapshot")
+                .daemon(true)
+                .factory());
+        snapshotter.scheduleWithFixedDelay(this::saveSnapshot, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 等待正在进行的定时快照写完后再写入最后一次快照，不中断定时快照，中断会使其写入的文件通道被关闭
+     */
+    @PreDestroy
+    public void destroy() {
+        if(snapshotter == null) return;
+        snapshotter.shutdown();
+        try {
+            if(!snapshotter.awaitTermination(10, TimeUnit.SECONDS))
+                log.warn("等待定时快照写入超时");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.saveSnapshot();
+    }
+
+    @Override
+    public void accept(Client client, RuntimeDetailVO vo) {
+        if(!enabled) return;
+        long now = System.currentTimeMillis();
+        double[] values = {vo.getCpuUsage(), vo.getMemoryUsage(), vo.getDiskUsage(), vo.getNetworkUpload(),
+                vo.getNetworkDownload(), vo.getDiskRead(), vo.getDiskWrite()};
+        ClientState state = states.computeIfAbsent(client.getId(), id -> new ClientState(seasonal));
+        int detected;
+        synchronized (state) {
+            detected = this.update(state, values, this.hourOfWeek(now), now);
+        }
+        if(detected != 0) this.notify(client, state, detected);
+    }
+
+    @Override
+    public void forget(int clientId) {
+        states.remove(clientId);
+    }
+
+    @Override
+    public List<AnomalyVO> currentAnomalies() {
+        List<AnomalyVO> anomalies = new ArrayList<>();
+        states.forEach((clientId, state) -> {
+            synchronized (state) {
+                for (int i = 0; i < METRICS.length; i++) {
+                    if(state.anomalous[i])
+                        anomalies.add(new AnomalyVO(clientId, METRICS[i], state.lastValue[i], state.lastExpected[i],
+                                state.lastDeviation[i], state.lastSeasonal[i], state.since[i]));
+                }
+            }
+        });
+        return anomalies;
+    }
+
+    /**
+     * 用一条数据评估并更新一台主机的基线
+     * @return 本次新判定为异常且需要通知的指标，按位表示
+     */
+    private int update(ClientState state, double[] values, int hour, long now) {
+        int detected = 0;
+        boolean useSeasonal = state.seasonalMean != null && state.hourCount[hour] >= seasonalWarmup;
+        boolean useGlobal = state.count >= warmup;
+        for (int i = 0; i < METRICS.length; i++) {
+            double value = values[i];
+            if(Double.isNaN(value) || Double.isInfinite(value)) continue;
+            int slot = hour * METRICS.length + i;
+            double expected, variance;
+            if(useSeasonal) {
+                expected = state.seasonalMean[slot];
+                variance = state.seasonalVariance[slot];
+            } else {
+                expected = state.mean[i];
+                variance = state.variance[i];
+            }
+            if(useSeasonal || useGlobal) {
+                double deviation = (value - expected) / Math.max(Math.sqrt(variance), MIN_DEVIATION[i]);
+                state.lastValue[i] = value;
+                state.lastExpected[i] = expected;
+                state.lastDeviation[i] = deviation;
+                state.lastSeasonal[i] = useSeasonal;
+                if(this.judge(state, i, Math.abs(deviation), now)) detected |= 1 << i;
+            }
+            if(state.count == 0) {
+                state.mean[i] = value;
+            } else {
+                double diff = value - state.mean[i];
+                state.mean[i] += alpha * diff;
+                state.variance[i] = (1 - alpha) * (state.variance[i] + alpha * diff * diff);
+            }
+            if(state.seasonalMean == null) continue;
+            if(state.hourCount[hour] == 0) {
+                state.seasonalMean[slot] = (float) value;
+            } else {
+                double diff = value - state.seasonalMean[slot];
+                state.seasonalMean[slot] += (float) (seasonalAlpha * diff);
+                state.seasonalVariance[slot] = (float) ((1 - seasonalAlpha) * (state.seasonalVariance[slot] + seasonalAlpha * diff * diff));
+            }
+        }
+        if(state.count < Long.MAX_VALUE) state.count++;
+        if(state.seasonalMean != null && state.hourCount[hour] < Integer.MAX_VALUE) state.hourCount[hour]++;
+        return detected;
+    }
+
+    /**
+     * 更新一个指标的异常状态
+     * @return 是否新判定为异常且需要通知
+     */
+    private boolean judge(ClientState state, int metric, double deviation, long now) {
+        if(state.anomalous[metric]) {
+            if(deviation < threshold * CLEAR_RATIO) {
+                state.anomalous[metric] = false;
+                state.streak[metric] = 0;
+            }
+            return false;
+        }
+        if(deviation < threshold) {
+            state.streak[metric] = 0;
+            return false;
+        }
+        if(++state.streak[metric] < consecutive) return false;
+        state.anomalous[metric] = true;
+        state.since[metric] = now;
+        if(state.lastNotified[metric] != 0 && now - state.lastNotified[metric] < silence * 1000) return false;
+        state.lastNotified[metric] = now;
+        return true;
+    }
+
+    private void notify(Client client, ClientState state, int detected) {
+        List<Map<String, Object>> messages = new ArrayList<>();
+        synchronized (state) {
+            for (int i = 0; i < METRICS.length; i++) {
+                if((detected & 1 << i) == 0) continue;
+                log.info("主机 {} 的指标 {} 出现异常，当前值 {}，基线 {}，偏离 {} 倍标准差", client.getName(), METRICS[i],
+                        state.lastValue[i], state.lastExpected[i], String.format("%.2f", state.lastDeviation[i]));
+                messages.add(Map.of("client", client.getName(), "metric", METRICS[i],
+                        "value", String.format("%.4f", state.lastValue[i]),
+                        "expected", String.format("%.4f", state.lastExpected[i]),
+                        "deviation", String.format("%.2f", state.lastDeviation[i]),
+                        "baseline", state.lastSeasonal[i] ? "seasonal" : "global"));
+            }
+        }
+        List<Account> admins = accountService.list(Wrappers.<Account>query().eq("role", Const.ROLE_ADMIN));
+        for (Account admin : admins) {
+            for (Map<String, Object> message : messages) {
+                Map<String, Object> data = new HashMap<>(message);
+                data.put("type", "anomaly");
+                data.put("email", admin.getEmail());
+                rabbitTemplate.convertAndSend(Const.MQ_MAIL, data);
+            }
+        }
+    }
+
+    /**
+     * 以周一0点为起点的一周中的小时
+     */
+    private int hourOfWeek(long time) {
+        Instant instant = Instant.ofEpochMilli(time);
+        long seconds = instant.getEpochSecond() + zone.getRules().getOffset(instant).getTotalSeconds();
+        //1970-01-01是周四，向后偏移3天使周一为0
+        return (int) Math.floorMod(seconds / 3600 + 72, HOURS_OF_WEEK);
+    }
+
+    private void loadSnapshot() {
+        Path path = Path.of(snapshot);
+        if(!Files.exists(path)) return;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if(input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION || input.readInt() != METRICS.length) {
+                log.warn("异常检测快照 {} 的格式不匹配，已忽略", path);
+                return;
+            }
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                int clientId = input.readInt();
+                states.put(clientId, ClientState.read(input, seasonal));
+            }
+            log.info("已从快照恢复 {} 台主机的异常检测基线", size);
+        } catch (IOException e) {
+            states.clear();
+            log.warn("读取异常检测快照 {} 失败，将重新学习基线", path, e);
+        }
+    }
+
+    /**
+     * 写入快照，加锁保证同一时刻只有一次写入，两次写入不会共用同一个临时文件
+     */
+    private synchronized void saveSnapshot() {
+        Path path = Path.of(snapshot).toAbsolutePath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if(path.getParent() != null) Files.createDirectories(path.getParent());
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                Map<Integer, ClientState> current = new HashMap<>(states);
+                output.writeInt(SNAPSHOT_MAGIC);
+                output.writeInt(SNAPSHOT_VERSION);
+                output.writeInt(METRICS.length);
+                output.writeInt(current.size());
+                for (Map.Entry<Integer, ClientState> entry : current.entrySet()) {
+                    output.writeInt(entry.getKey());
+                    synchronized (entry.getValue()) {
+                        entry.getValue().write(output);
+                    }
+                }
+            }
+            //先写入临时文件再替换，写入中途退出不会破坏上一次的快照
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("写入异常检测快照 {} 失败", path, e);
+        }
+    }
+
+    /**
+     * 一台主机的基线与异常状态，基线写入快照，异常状态只保存在内存中
+     */
+    private static class ClientState {
+        long count;
+        final double[] mean = new double[METRICS.length];
+        final double[] variance = new double[METRICS.length];
+        //季节基线，按 小时 * 指标数量 + 指标 存放，未开启时为null
+        final int[] hourCount;
+        final float[] seasonalMean;
+        final float[] seasonalVariance;
+
+        final int[] streak = new int[METRICS.length];
+        final boolean[] anomalous = new boolean[METRICS.length];
+        final long[] since = new long[METRICS.length];
+        final long[] lastNotified = new long[METRICS.length];
+        final double[] lastValue = new double[METRICS.length];
+        final double[] lastExpected = new double[METRICS.length];
+        final double[] lastDeviation = new double[METRICS.length];
+        final boolean[] lastSeasonal = new boolean[METRICS.length];
+
+        ClientState(boolean seasonal) {
+            this.hourCount = seasonal ? new int[HOURS_OF_WEEK] : null;
+            this.seasonalMean = seasonal ? new float[HOURS_OF_WEEK * METRICS.length] : null;
+            this.seasonalVariance = seasonal ? new float[HOURS_OF_WEEK * METRICS.length] : null;
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeLong(count);
+            for (int i = 0; i < METRICS.length; i++) {
+                output.writeDouble(mean[i]);
+                output.writeDouble(variance[i]);
+            }
+            output.writeBoolean(hourCount != null);
+            if(hourCount == null) return;
+            for (int count : hourCount) output.writeInt(count);
+            for (int i = 0; i < seasonalMean.length; i++) {
+                output.writeFloat(seasonalMean[i]);
+                output.writeFloat(seasonalVariance[i]);
+            }
+        }
+
+        /**
+         * 读取快照中的一项，快照中的季节基线与当前配置不一致时丢弃或重新学习
+         */
+        static ClientState read(DataInputStream input, boolean seasonal) throws IOException {
+            ClientState state = new ClientState(seasonal);
+            state.count = input.readLong();
+            for (int i = 0; i < METRICS.length; i++) {
+                state.mean[i] = input.readDouble();
+                state.variance[i] = input.readDouble();
+            }
+            if(!input.readBoolean()) return state;
+            for (int i = 0; i < HOURS_OF_WEEK; i++) {
+                int count = input.readInt();
+                if(seasonal) state.hourCount[i] = count;
+            }
+            for (int i = 0; i < HOURS_OF_WEEK * METRICS.length; i++) {
+                float mean = input.readFloat();
+                float variance = input.readFloat();
+                if(!seasonal) continue;
+                state.seasonalMean[i] = mean;
+                state.seasonalVariance[i] = variance;
+            }
+            return state;
+        }
+    }
+}
@@ -2,19 +2,25 @@ package cn.gugufish.service.impl;
 
 import cn.gugufish.entity.dto.ClientDetail;
 import cn.gugufish.entity.dto.ClientSsh;
+import cn.gugufish.entity.vo.response.ReportScheduleVO;
 import cn.gugufish.entity.vo.response.SshSettingsVO;
 import cn.gugufish.entity.vo.request.*;
 import cn.gugufish.mapper.ClientDetailMapper;
 import cn.gugufish.mapper.ClientSshMapper;
 import cn.gugufish.utils.InfluxDbUtils;
+import cn.gugufish.utils.MetricsUtils;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import cn.gugufish.entity.dto.Client;
 import cn.gugufish.mapper.ClientMapper;
+import cn.gugufish.service.AlertService;
+import cn.gugufish.service.AnomalyService;
 import cn.gugufish.service.ClientService;
+import cn.gugufish.service.MetricService;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 
@@ -30,6 +36,11 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
     private final Map<Integer,Client> clientIdCache = new ConcurrentHashMap<>();
     private final Map<String,Client> clientTokenCache = new ConcurrentHashMap<>();
 
+    /**
+     * 客户端基本信息缓存，列表与详情直接读取，不再逐个查询数据库；基本信息更新时同步刷新
+     */
+    private final Map<Integer, ClientDetail> clientDetailCache = new ConcurrentHashMap<>();
+
     @Resource
     ClientDetailMapper clientDetailMapper;
 
@@ -39,6 +50,44 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
     @Resource
     ClientSshMapper sshMapper;
 
+    @Resource
+    MetricsUtils metrics;
+
+    @Resource
+    MetricService metricService;
+
+    @Resource
+    AlertService alertService;
+
+    @Resource
+    AnomalyService anomalyService;
+
+    /**
+     * 客户端运行时数据的上报间隔（毫秒）
+     */
+    @Value("${spring.monitor.report.interval}")
+    long reportInterval;
+
+    /**
+     * 客户端关键帧间隔（毫秒），数据没有变化时客户端至少每隔这么久上报一次或发送心跳，
+     * 历史数据只在这个范围内补全空窗口
+     */
+    @Value("${spring.monitor.report.keyframe}")
+    long reportKeyframe;
+
+    /**
+     * 黄金分割比的小数部分，按注册顺序依次取其整数倍的小数部分作为相位，
+     * 任意数量的客户端都能在间隔内大致均匀分布，新注册的客户端也不会影响已有客户端的相位
+     */
+    private static final double GOLDEN_RATIO_FRACTION = 0.6180339887498949;
+
+    @PostConstruct
+    public void initMetrics() {
+        metrics.gauge("monitor.runtime.clients", "内存中保存了最新运行时数据的客户端数量",
+                currentRuntime, Map::size);
+        metrics.gauge("monitor.clients", "已注册的客户端数量", clientIdCache, Map::size);
+    }
+
     @PostConstruct
     public void initClientCache(){
         clientTokenCache.clear();
@@ -46,6 +95,12 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
         this.list().forEach(this::addClientCache);
     }
 
+    @PostConstruct
+    public void initClientDetailCache() {
+        clientDetailCache.clear();
+        clientDetailMapper.selectList(null).forEach(detail -> clientDetailCache.put(detail.getId(), detail));
+    }
+
     @Override
     public String registerToken() {
         return registerToken;
@@ -86,27 +141,70 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
         ClientDetail detail = new ClientDetail();
         BeanUtils.copyProperties(vo,detail);
         detail.setId(client.getId());
-        if(Objects.nonNull(clientDetailMapper.selectById(client.getId()))){
-            clientDetailMapper.updateById(detail);
-        }else{
-            clientDetailMapper.insert(detail);
-        }
+        metrics.getDetailIngest().increment();
+        //与缓存相同时不写数据库，大量客户端同时重启时只有发生变化的才会写入
+        if(detail.equals(clientDetailCache.get(client.getId()))) return;
+        clientDetailMapper.upsert(detail);
+        clientDetailCache.put(client.getId(), detail);
+    }
+
+    @Override
+    public boolean hasClientDetail(Client client) {
+        return clientDetailCache.containsKey(client.getId());
+    }
+
+    @Override
+    public ReportScheduleVO reportSchedule(Client client) {
+        long ordinal = clientIdCache.values().stream()
+                .filter(other -> other.getRegisterTime().before(client.getRegisterTime())
+                        || other.getRegisterTime().equals(client.getRegisterTime()) && other.getId() < client.getId())
+                .count();
+        double fraction = (ordinal * GOLDEN_RATIO_FRACTION) % 1;
+        return new ReportScheduleVO(reportInterval, (long) (fraction * reportInterval));
     }
 
     private final Map<Integer, RuntimeDetailVO> currentRuntime = new ConcurrentHashMap<>();
 
+    /**
+     * 每个客户端最近一次上报或心跳的时间，客户端在数据没有明显变化时只发送心跳，
+     * 在线状态以此为准，而不是最近一次运行时数据的时间戳；心跳同时写入InfluxDB，供历史数据补全使用
+     */
+    private final Map<Integer, Long> lastSeen = new ConcurrentHashMap<>();
+
+    @Override
+    public void heartbeat(Client client) {
+        long now = System.currentTimeMillis();
+        lastSeen.put(client.getId(), now);
+        influx.writeHeartbeat(client.getId(), now);
+    }
+
     @Override
     public void updateRuntimeDetail(RuntimeDetailVO vo, Client client) {
+        metrics.getRuntimeIngest().increment();
+        lastSeen.put(client.getId(), System.currentTimeMillis());
+        // 告警规则在内存中评估，需要在扩展指标被移除前进行
+        alertService.evaluate(client, vo, clientDetailCache.get(client.getId()));
+        anomalyService.accept(client, vo);
+        // 拆分数据与扩展指标单独存储，不放入最新运行时数据，避免增大列表与实时查询的响应
+        RuntimeBreakdownVO breakdown = vo.getBreakdown();
+        int[] metricIds = vo.getMetricIds();
+        double[] metricValues = vo.getMetricValues();
+        vo.setBreakdown(null);
+        vo.setMetricIds(null);
+        vo.setMetricValues(null);
         currentRuntime.put(client.getId(), vo);
         influx.writeRuntimeData(client.getId(), vo);
+        if(breakdown != null) influx.writeBreakdownData(client.getId(), vo.getTimestamp(), breakdown);
+        if(this.validMetrics(metricIds, metricValues))
+            influx.writeMetricData(client.getId(), vo.getTimestamp(), metricIds, metricValues);
     }
     @Override
     public List<ClientPreviewVO> listClients() {
         return clientIdCache.values().stream().map(client -> {
             ClientPreviewVO vo = client.asViewObject(ClientPreviewVO.class);
-            BeanUtils.copyProperties(clientDetailMapper.selectById(vo.getId()), vo);
+            BeanUtils.copyProperties(clientDetailCache.get(vo.getId()), vo);
             RuntimeDetailVO runtime = currentRuntime.get(client.getId());
-            if(this.isOnline(runtime)) {
+            if(runtime != null && this.isOnline(client.getId())) {
                 BeanUtils.copyProperties(runtime, vo);
                 vo.setOnline(true);
             }
@@ -117,7 +215,7 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
     public List<ClientSimpleVO> listSimpleList() {
         return clientIdCache.values().stream().map(client -> {
             ClientSimpleVO vo = client.asViewObject(ClientSimpleVO.class);
-            BeanUtils.copyProperties(clientDetailMapper.selectById(vo.getId()), vo);
+            BeanUtils.copyProperties(clientDetailCache.get(vo.getId()), vo);
             return vo;
         }).toList();
     }
@@ -137,19 +235,29 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
     @Override
     public ClientDetailsVO clientDetails(int clientId) {
         ClientDetailsVO vo = this.clientIdCache.get(clientId).asViewObject(ClientDetailsVO.class);
-        BeanUtils.copyProperties(clientDetailMapper.selectById(clientId), vo);
-        vo.setOnline(this.isOnline(currentRuntime.get(clientId)));
+        BeanUtils.copyProperties(clientDetailCache.get(clientId), vo);
+        vo.setOnline(this.isOnline(clientId));
         return vo;
     }
 
     @Override
     public RuntimeHistoryVO clientRuntimeDetailsHistory(int clientId) {
-        RuntimeHistoryVO vo = influx.readRuntimeData(clientId);
-        ClientDetail detail = clientDetailMapper.selectById(clientId);
+        RuntimeHistoryVO vo = influx.readRuntimeData(clientId, reportInterval, reportKeyframe);
+        ClientDetail detail = clientDetailCache.get(clientId);
         BeanUtils.copyProperties(detail, vo);
         return vo;
     }
 
+    @Override
+    public RuntimeBreakdownHistoryVO clientRuntimeBreakdownHistory(int clientId, String type) {
+        return influx.readBreakdownData(clientId, type);
+    }
+
+    @Override
+    public RuntimeMetricHistoryVO clientRuntimeMetricHistory(int clientId) {
+        return influx.readMetricData(clientId, metricService::metricName);
+    }
+
     @Override
     public RuntimeDetailVO clientRuntimeDetailsNow(int clientId) {
         return currentRuntime.get(clientId);
@@ -159,8 +267,12 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
     public void deleteClient(int clientId) {
         this.removeById(clientId);
         clientDetailMapper.deleteById(clientId);
+        clientDetailCache.remove(clientId);
         this.initClientCache();
         currentRuntime.remove(clientId);
+        lastSeen.remove(clientId);
+        alertService.forget(clientId);
+        anomalyService.forget(clientId);
     }
 
     @Override
@@ -178,7 +290,7 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
 
     @Override
     public SshSettingsVO sshSettings(int clientId) {
-        ClientDetail detail = clientDetailMapper.selectById(clientId);
+        ClientDetail detail = clientDetailCache.get(clientId);
         ClientSsh ssh = sshMapper.selectById(clientId);
         SshSettingsVO vo;
         if(ssh == null) {
@@ -190,8 +302,20 @@ public class ClientServiceImpl extends ServiceImpl<ClientMapper, Client> impleme
         return vo;
     }
 
-    private boolean isOnline(RuntimeDetailVO runtime) {
-        return runtime != null && System.currentTimeMillis() - runtime.getTimestamp() < 60 * 1000;
+    /**
+     * 检查扩展指标：ID与数值数量一致，且全部ID都在字典中
+     */
+    private boolean validMetrics(int[] ids, double[] values) {
+        if(ids == null || values == null || ids.length == 0 || ids.length != values.length) return false;
+        for (int id : ids) {
+            if(metricService.metricName(id) == null) return false;
+        }
+        return true;
+    }
+
+    private boolean isOnline(int clientId) {
+        Long time = lastSeen.get(clientId);
+        return time != null && System.currentTimeMillis() - time < 60 * 1000;
     }
 
     private void addClientCache(Client client){
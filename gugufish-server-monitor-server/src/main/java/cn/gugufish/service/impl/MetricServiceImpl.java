@@ -0,0 +1,119 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Metric;
+import cn.gugufish.mapper.MetricMapper;
+import cn.gugufish.service.MetricService;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 扩展指标字典
+ * 客户端启动时用指标名称协商得到ID，之后上报与存储都只使用ID，不再逐条传输或写入指标名称；
+ * 字典全部保存在内存中，上报时校验与查询时还原名称都不访问数据库，只有出现新指标名称时才写入；
+ * 多个服务端实例共用字典时，其他实例登记的ID在本地查不到，此时按限定的频率从数据库重新加载一次；
+ * 字典的总数量有上限，达到上限后不再登记新的指标名称。
+ */
+@Slf4j
+@Service
+public class MetricServiceImpl extends ServiceImpl<MetricMapper, Metric> implements MetricService {
+    /**
+     * 指标名称的格式、单次协商的数量上限与字典的总数量上限
+     */
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_.\\-]{1,64}");
+    private static final int MAX_NEGOTIATE = 256;
+    private static final int MAX_METRICS = 4096;
+    /**
+     * 查询不到ID时从数据库重新加载字典的最小间隔
+     */
+    private static final long RELOAD_INTERVAL = 10_000;
+
+    private final Map<String, Integer> metricIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> metricNames = new ConcurrentHashMap<>();
+    private final AtomicLong lastReload = new AtomicLong();
+
+    @PostConstruct
+    public void initMetricCache() {
+        this.list().forEach(this::addMetricCache);
+    }
+
+    @Override
+    public Map<String, Integer> negotiate(List<String> names) {
+        Map<String, Integer> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            if(result.size() + missing.size() >= MAX_NEGOTIATE) break;
+            if(name == null || !NAME_PATTERN.matcher(name).matches()) continue;
+            Integer id = metricIds.get(name);
+            if(id != null) {
+                result.put(name, id);
+            } else if(!missing.contains(name)) {
+                missing.add(name);
+            }
+        }
+        if(!missing.isEmpty()) this.register(missing, result);
+        return result;
+    }
+
+    /**
+     * 登记新的指标名称，只登记字典剩余容量以内的部分，超出的名称不分配ID
+     * @param missing 字典中没有的指标名称
+     * @param result 协商结果
+     */
+    private synchronized void register(List<String> missing, Map<String, Integer> result) {
+        //其他实例可能已经登记过这些名称，先重新加载再计算剩余容量
+        this.reload();
+        List<String> accepted = new ArrayList<>();
+        List<String> rejected = new ArrayList<>();
+        for (String name : missing) {
+            Integer id = metricIds.get(name);
+            if(id != null) {
+                result.put(name, id);
+            } else if(metricIds.size() + accepted.size() < MAX_METRICS) {
+                accepted.add(name);
+            } else {
+                rejected.add(name);
+            }
+        }
+        if(!rejected.isEmpty()) log.warn("扩展指标字典已达到上限 {}，以下指标未登记: {}", MAX_METRICS, rejected);
+        if(accepted.isEmpty()) return;
+        accepted.forEach(baseMapper::insertIgnore);
+        this.list(Wrappers.<Metric>query().in("name", accepted)).forEach(metric -> {
+            this.addMetricCache(metric);
+            result.put(metric.getName(), metric.getId());
+        });
+        log.info("已登记新的扩展指标: {}", accepted);
+    }
+
+    @Override
+    public String metricName(int id) {
+        String name = metricNames.get(id);
+        if(name != null) return name;
+        //本地查不到时可能是其他实例刚登记的指标，限定频率重新加载一次
+        long last = lastReload.get();
+        long now = System.currentTimeMillis();
+        if(now - last < RELOAD_INTERVAL || !lastReload.compareAndSet(last, now)) return null;
+        this.list().forEach(this::addMetricCache);
+        return metricNames.get(id);
+    }
+
+    /**
+     * 从数据库重新加载整个字典
+     */
+    private void reload() {
+        lastReload.set(System.currentTimeMillis());
+        this.list().forEach(this::addMetricCache);
+    }
+
+    private void addMetricCache(Metric metric) {
+        metricIds.put(metric.getName(), metric.getId());
+        metricNames.put(metric.getId(), metric.getName());
+    }
+}
@@ -0,0 +1,537 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.ClientDetail;
+import cn.gugufish.entity.dto.ClientSsh;
+import cn.gugufish.entity.vo.request.BatchExecVO;
+import cn.gugufish.entity.vo.response.TransferProgressVO;
+import cn.gugufish.mapper.ClientDetailMapper;
+import cn.gugufish.mapper.ClientSshMapper;
+import cn.gugufish.service.SshService;
+import cn.gugufish.utils.SshSessionPool;
+import com.alibaba.fastjson2.JSONObject;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 基于主机SSH连接信息的远程操作，包括批量执行命令与SFTP文件传输
+ * 批量执行时每台主机的命令运行在独立的虚拟线程上，同时执行的主机数量由全局信号量限制，保护服务端与SSH连接池；
+ * 每台主机的输出按行以NDJSON格式实时推送，最后输出汇总结果。
+ * 文件传输以固定大小的缓冲区在HTTP流与SFTP流之间直接拷贝，不会把文件读入内存，
+ * 支持按偏移续传与进度查询，每台主机同时进行的传输数量有上限。
+ */
+@Slf4j
+@Service
+public class SshServiceImpl implements SshService {
+
+    //JSch的管道输入流在阻塞读取时会钉住虚拟线程的载体线程，因此只读取已到达的数据，空闲时短暂挂起
+    private static final long MIN_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    //单行输出超过该长度时直接推送，不再等待换行
+    private static final int MAX_LINE = 8192;
+    //文件传输的拷贝缓冲区大小
+    private static final int COPY_BUFFER = 32 * 1024;
+    //超时后发送KILL信号，等待通道关闭确认进程已结束的最长时间
+    private static final long KILL_WAIT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    //pty的终端模式：关闭ONLCR（操作码72），输出的换行不会被转换为\r\n，最后以TTY_OP_END结束
+    private static final byte[] TERMINAL_MODES = {72, 0, 0, 0, 0, 0};
+    //传输结束后保留进度信息的时间
+    private static final long PROGRESS_RETENTION = TimeUnit.MINUTES.toMillis(10);
+
+    @Resource
+    ClientDetailMapper detailMapper;
+
+    @Resource
+    ClientSshMapper sshMapper;
+
+    @Resource
+    SshSessionPool sessionPool;
+
+    //全局同时执行命令的最大主机数量
+    @Value("${spring.ssh.exec.concurrency}")
+    int concurrency;
+
+    //单台主机最多推送的输出字节数，超出部分丢弃
+    @Value("${spring.ssh.exec.max-output}")
+    int maxOutput;
+
+    //单台主机同时进行的文件传输数量上限
+    @Value("${spring.ssh.sftp.per-host}")
+    int transfersPerHost;
+
+    private Semaphore permits;
+    private final Map<Integer, Semaphore> hostTransfers = new ConcurrentHashMap<>();
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(concurrency, true);
+    }
+
+    /**
+     * 在选定的主机上并发执行命令，输出依次为：
+     * output（每行输出）、exit（退出码）、timeout（超时，killed表示远程进程是否已被确认结束）或 error（执行失败），
+     * 最后是 summary（汇总）
+     * @param vo 执行参数
+     * @param output 结果输出流
+     * @throws IOException 结果推送失败，通常是浏览器已经断开
+     */
+    @Override
+    public void batchExec(BatchExecVO vo, OutputStream output) throws IOException {
+        List<Integer> ids = vo.getClients().stream().distinct().toList();
+        Map<Integer, ClientDetail> details = detailMapper.selectBatchIds(ids).stream()
+                .collect(Collectors.toMap(ClientDetail::getId, Function.identity()));
+        Map<Integer, ClientSsh> sshs = sshMapper.selectBatchIds(ids).stream()
+                .collect(Collectors.toMap(ClientSsh::getId, Function.identity()));
+        ResultWriter writer = new ResultWriter(output);
+        List<Future<Result>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Integer id : ids) {
+                futures.add(executor.submit(() -> this.execute(id, details.get(id), sshs.get(id), vo, writer)));
+            }
+        }
+        int[] counts = new int[Result.values().length];
+        for (Future<Result> future : futures) {
+            try {
+                counts[future.get().ordinal()]++;
+            } catch (InterruptedException | ExecutionException e) {
+                counts[Result.ERROR.ordinal()]++;
+            }
+        }
+        writer.write(JSONObject.of("type", "summary", "total", ids.size(),
+                "success", counts[Result.SUCCESS.ordinal()], "failed", counts[Result.FAILED.ordinal()],
+                "timeout", counts[Result.TIMEOUT.ordinal()], "error", counts[Result.ERROR.ordinal()]));
+        writer.check();
+    }
+
+    /**
+     * 在一台主机上执行命令并推送输出
+     * 命令运行在分配的pty上，超时后先向进程发送KILL信号，通道断开后pty关闭也会向整个进程组发送SIGHUP，
+     * 只有在等待时间内确认通道已关闭才认为远程进程已被结束；使用pty后stderr会合并到stdout中
+     * @param id 客户端ID
+     * @param detail 客户端详情
+     * @param ssh SSH连接信息
+     * @param vo 执行参数
+     * @param writer 结果输出
+     * @return 执行结果
+     */
+    private Result execute(int id, ClientDetail detail, ClientSsh ssh, BatchExecVO vo, ResultWriter writer) {
+        if(detail == null || ssh == null) {
+            writer.error(id, "未找到主机或未保存SSH连接信息");
+            return Result.ERROR;
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            return Result.ERROR;
+        }
+        long start = System.currentTimeMillis();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(vo.getTimeout());
+        try (SshSessionPool.Lease lease = sessionPool.borrow(detail.getIp(), ssh.getPort(), ssh.getUsername(), ssh.getPassword())) {
+            ChannelExec channel = (ChannelExec) lease.openChannel("exec");
+            try {
+                channel.setCommand(vo.getCommand());
+                channel.setPty(true);
+                channel.setTerminalMode(TERMINAL_MODES);
+                //pty已经把stderr合并到stdout中，服务端不会再单独发送标准错误，以防万一仍然丢弃单独到达的数据
+                channel.setErrStream(OutputStream.nullOutputStream());
+                HostOutput output = new HostOutput(id, channel.getInputStream(), writer);
+                channel.connect((int) Math.min(TimeUnit.SECONDS.toMillis(vo.getTimeout()), 10000));
+                int[] budget = {maxOutput};
+                long idle = MIN_IDLE_NANOS;
+                while (true) {
+                    boolean progress = output.read(budget);
+                    if(!progress && channel.isClosed()) break;
+                    if(writer.broken) return Result.ERROR;
+                    if(System.nanoTime() - deadline > 0) {
+                        boolean killed = this.kill(channel, output, budget);
+                        output.finish();
+                        writer.write(JSONObject.of("type", "timeout", "client", id,
+                                "cost", System.currentTimeMillis() - start, "killed", killed));
+                        return Result.TIMEOUT;
+                    }
+                    if(progress) {
+                        idle = MIN_IDLE_NANOS;
+                    } else {
+                        LockSupport.parkNanos(idle);
+                        idle = Math.min(idle * 2, MAX_IDLE_NANOS);
+                    }
+                }
+                output.finish();
+                int code = channel.getExitStatus();
+                writer.write(JSONObject.of("type", "exit", "client", id, "code", code,
+                        "cost", System.currentTimeMillis() - start,
+                        "truncated", output.truncated));
+                return code == 0 ? Result.SUCCESS : Result.FAILED;
+            } finally {
+                channel.disconnect();
+            }
+        } catch (JSchException | IOException e) {
+            writer.error(id, e.getMessage());
+            return Result.ERROR;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 向超时的命令发送KILL信号并等待通道关闭，等待期间继续读取输出，避免缓冲区写满导致关闭消息无法送达
+     * @param channel 命令所在的通道
+     * @param output 命令的输出，包含合并后的标准错误
+     * @param budget 剩余可推送的输出字节数
+     * @return 通道在等待时间内关闭返回true，信号发送失败或进程仍在运行返回false
+     */
+    private boolean kill(ChannelExec channel, HostOutput output, int[] budget) throws IOException {
+        try {
+            channel.sendSignal("KILL");
+        } catch (Exception e) {
+            log.warn("向超时的命令发送KILL信号失败: {}", e.getMessage());
+            return false;
+        }
+        long deadline = System.nanoTime() + KILL_WAIT_NANOS;
+        while (true) {
+            boolean progress = output.read(budget);
+            if(!progress && channel.isClosed()) return true;
+            if(System.nanoTime() - deadline > 0) return false;
+            if(!progress) LockSupport.parkNanos(MAX_IDLE_NANOS);
+        }
+    }
+
+    @Override
+    public long fileSize(int clientId, String path) throws IOException {
+        return this.withSftp(clientId, channel -> channel.stat(path).getSize());
+    }
+
+    /**
+     * 从指定偏移开始下载远程文件并写入输出流
+     * @param clientId 客户端ID
+     * @param path 远程文件路径
+     * @param offset 起始偏移，调用前已经与文件大小校验过
+     * @param size 调用前通过fileSize获取的文件大小，不再重复查询远程文件属性
+     * @param transferId 用于查询进度的传输ID，可以为null
+     * @param output 输出流
+     * @throws IOException 文件不存在、传输数量超出上限或传输失败
+     */
+    @Override
+    public void download(int clientId, String path, long offset, long size, String transferId, OutputStream output) throws IOException {
+        this.transfer(clientId, path, "download", offset, transferId, (channel, transfer) -> {
+            transfer.total = size;
+            try (InputStream input = channel.get(path, null, offset)) {
+                this.copy(input, output, transfer);
+            }
+            return size;
+        });
+    }
+
+    /**
+     * 将输入流写入远程文件，偏移为0时覆盖文件，否则要求偏移与远程文件当前大小一致并追加写入
+     * @param clientId 客户端ID
+     * @param path 远程文件路径
+     * @param offset 续传偏移
+     * @param transferId 用于查询进度的传输ID，可以为null
+     * @param input 输入流
+     * @return 上传完成后远程文件的大小
+     * @throws IOException 偏移不一致、传输数量超出上限或传输失败
+     */
+    @Override
+    public long upload(int clientId, String path, long offset, String transferId, InputStream input) throws IOException {
+        return this.transfer(clientId, path, "upload", offset, transferId, (channel, transfer) -> {
+            if(offset > 0) {
+                long size = channel.stat(path).getSize();
+                if(size != offset) throw new IOException("续传偏移与远程文件大小不一致，远程文件当前大小为 " + size);
+            }
+            //续传模式会从远程文件当前大小处继续写入
+            int mode = offset > 0 ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE;
+            try (OutputStream output = channel.put(path, null, mode, 0)) {
+                this.copy(input, output, transfer);
+            }
+            return channel.stat(path).getSize();
+        });
+    }
+
+    @Override
+    public TransferProgressVO transferProgress(String transferId) {
+        Transfer transfer = transfers.get(transferId);
+        return transfer == null ? null : transfer.asViewObject();
+    }
+
+    /**
+     * 占用主机的传输名额并登记进度后执行一次文件传输
+     * @param clientId 客户端ID
+     * @param path 远程文件路径
+     * @param direction 传输方向
+     * @param offset 起始偏移
+     * @param transferId 传输ID，可以为null
+     * @param action 传输操作
+     * @return 传输操作的结果
+     */
+    private long transfer(int clientId, String path, String direction, long offset, String transferId,
+                          TransferAction action) throws IOException {
+        if(offset < 0) throw new IOException("起始偏移不能小于0");
+        Semaphore permit = hostTransfers.computeIfAbsent(clientId, id -> new Semaphore(transfersPerHost));
+        if(!permit.tryAcquire()) throw new IOException("该主机同时进行的文件传输数量已达上限");
+        Transfer transfer = new Transfer(transferId == null ? UUID.randomUUID().toString() : transferId,
+                clientId, path, direction, offset);
+        try {
+            this.registerTransfer(transfer, transferId != null);
+            long result = this.withSftp(clientId, channel -> action.apply(channel, transfer));
+            transfer.finish(null);
+            return result;
+        } catch (IOException e) {
+            transfer.finish(e.getMessage());
+            throw e;
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * 登记可以查询进度的传输，同时清理已经结束较久的传输记录
+     * @param transfer 传输
+     * @param tracked 是否需要登记
+     */
+    private void registerTransfer(Transfer transfer, boolean tracked) throws IOException {
+        long expired = System.currentTimeMillis() - PROGRESS_RETENTION;
+        transfers.values().removeIf(old -> old.status != null && old.updateTime < expired);
+        if(tracked && transfers.putIfAbsent(transfer.id, transfer) != null)
+            throw new IOException("传输ID已被使用");
+    }
+
+    /**
+     * 以固定大小的缓冲区拷贝数据并更新传输进度
+     * @param input 输入流
+     * @param output 输出流
+     * @param transfer 传输
+     */
+    private void copy(InputStream input, OutputStream output, Transfer transfer) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+            transfer.transferred += length;
+            transfer.updateTime = System.currentTimeMillis();
+        }
+        output.flush();
+    }
+
+    /**
+     * 在主机的SFTP通道上执行操作，SSH会话从连接池借用
+     * @param clientId 客户端ID
+     * @param action 操作
+     * @return 操作结果
+     * @param <T> 结果类型
+     */
+    private <T> T withSftp(int clientId, SftpAction<T> action) throws IOException {
+        ClientDetail detail = detailMapper.selectById(clientId);
+        ClientSsh ssh = sshMapper.selectById(clientId);
+        if(detail == null || ssh == null) throw new IOException("未找到主机或未保存SSH连接信息");
+        try (SshSessionPool.Lease lease = sessionPool.borrow(detail.getIp(), ssh.getPort(), ssh.getUsername(), ssh.getPassword())) {
+            ChannelSftp channel = (ChannelSftp) lease.openChannel("sftp");
+            try {
+                channel.connect(10000);
+                return action.apply(channel);
+            } finally {
+                channel.disconnect();
+            }
+        } catch (JSchException | SftpException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SftpAction<T> {
+        T apply(ChannelSftp channel) throws SftpException, IOException;
+    }
+
+    @FunctionalInterface
+    private interface TransferAction {
+        long apply(ChannelSftp channel, Transfer transfer) throws SftpException, IOException;
+    }
+
+    /**
+     * 一次文件传输的进度，只由传输线程更新
+     */
+    private static class Transfer {
+        private final String id;
+        private final int clientId;
+        private final String path;
+        private final String direction;
+        private final long offset;
+        private final long startTime = System.currentTimeMillis();
+        private volatile long total = -1;
+        private volatile long transferred;
+        private volatile long updateTime = startTime;
+        private volatile String status;
+        private volatile String message;
+
+        private Transfer(String id, int clientId, String path, String direction, long offset) {
+            this.id = id;
+            this.clientId = clientId;
+            this.path = path;
+            this.direction = direction;
+            this.offset = offset;
+        }
+
+        private void finish(String error) {
+            this.message = error;
+            this.updateTime = System.currentTimeMillis();
+            this.status = error == null ? "finished" : "failed";
+        }
+
+        private TransferProgressVO asViewObject() {
+            TransferProgressVO vo = new TransferProgressVO();
+            vo.setId(id);
+            vo.setClientId(clientId);
+            vo.setPath(path);
+            vo.setDirection(direction);
+            vo.setOffset(offset);
+            vo.setTotal(total);
+            vo.setTransferred(transferred);
+            vo.setStartTime(startTime);
+            vo.setUpdateTime(updateTime);
+            vo.setStatus(status == null ? "running" : status);
+            vo.setMessage(message);
+            return vo;
+        }
+    }
+
+    /**
+     * 单台主机的执行结果
+     */
+    private enum Result {
+        SUCCESS, FAILED, TIMEOUT, ERROR
+    }
+
+    /**
+     * 主机的输出，pty下标准错误已经合并到其中，统一以stdout推送
+     * 按行切分后推送，换行符不会出现在多字节字符内部；单行过长被强制切分时，
+     * 末尾不完整的多字节字符留到下一段，因此逐段解码不会乱码
+     */
+    private static class HostOutput {
+        private final int id;
+        private final InputStream input;
+        private final ResultWriter writer;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final byte[] buffer = new byte[4096];
+        private boolean truncated;
+
+        private HostOutput(int id, InputStream input, ResultWriter writer) {
+            this.id = id;
+            this.input = input;
+            this.writer = writer;
+        }
+
+        /**
+         * 读取已经到达的输出
+         * @param budget 剩余可推送的字节数
+         * @return 是否读到了数据
+         */
+        private boolean read(int[] budget) throws IOException {
+            int available = input.available();
+            if(available <= 0) return false;
+            int length = input.read(buffer, 0, Math.min(available, buffer.length));
+            if(length <= 0) return false;
+            int accepted = Math.min(length, budget[0]);
+            budget[0] -= accepted;
+            if(accepted < length) truncated = true;
+            for (int i = 0; i < accepted; i++) {
+                line.write(buffer[i]);
+                if(buffer[i] == '\n') {
+                    this.flush(true);
+                } else if(line.size() >= MAX_LINE) {
+                    this.flush(false);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 输出结束时推送剩余的全部内容
+         */
+        private void finish() {
+            this.flush(true);
+        }
+
+        /**
+         * 推送当前缓存的一段输出
+         * @param complete 是否推送全部内容，否则末尾不完整的多字节字符留到下一段
+         */
+        private void flush(boolean complete) {
+            if(line.size() == 0) return;
+            byte[] data = line.toByteArray();
+            int end = complete ? data.length : completeLength(data);
+            line.reset();
+            line.write(data, end, data.length - end);
+            if(end == 0) return;
+            writer.write(JSONObject.of("type", "output", "client", id, "stream", "stdout",
+                    "data", new String(data, 0, end, StandardCharsets.UTF_8)));
+        }
+
+        /**
+         * 计算去掉末尾不完整的UTF-8字节序列后的长度
+         * @param data 字节
+         * @return 完整字符部分的长度
+         */
+        private static int completeLength(byte[] data) {
+            int lead = data.length - 1;
+            while (lead >= 0 && data.length - lead < 4 && (data[lead] & 0xC0) == 0x80) lead--;
+            if(lead < 0) return data.length;
+            int head = data[lead] & 0xFF;
+            int need = head >= 0xF0 ? 4 : head >= 0xE0 ? 3 : head >= 0xC0 ? 2 : 1;
+            return data.length - lead < need ? lead : data.length;
+        }
+    }
+
+    /**
+     * 线程安全的NDJSON结果输出，推送失败后不再写入，各主机的执行会尽快停止
+     */
+    private static class ResultWriter {
+        private final OutputStream output;
+        private volatile boolean broken;
+        private IOException failure;
+
+        private ResultWriter(OutputStream output) {
+            this.output = output;
+        }
+
+        private void error(int id, String message) {
+            this.write(JSONObject.of("type", "error", "client", id, "message", message));
+        }
+
+        private synchronized void write(JSONObject object) {
+            if(broken) return;
+            try {
+                output.write(object.toJSONString().getBytes(StandardCharsets.UTF_8));
+                output.write('\n');
+                output.flush();
+            } catch (IOException e) {
+                broken = true;
+                failure = e;
+            }
+        }
+
+        private synchronized void check() throws IOException {
+            if(failure != null) throw failure;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package cn.gugufish.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步访问日志工具
+ * 请求线程只负责把日志条目放入有界队列，格式化与输出都在后台线程完成，
+ * 队列满时直接丢弃并计数，日志输出再慢也不会拖慢请求处理。
+ */
+@Slf4j
+@Component
+public class AccessLogUtils {
+
+    //日志队列容量
+    @Value("${spring.web.log.queue-size}")
+    int queueSize;
+
+    @Resource
+    MetricsUtils metrics;
+
+    private BlockingQueue<Entry> queue;
+    private Thread worker;
+    private volatile boolean running = true;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedDropped = 0;
+    private long lastReportTime = 0;
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueSize);
+        metrics.gauge("monitor.access.log.pending", "等待输出的访问日志数量", this, AccessLogUtils::pending);
+        metrics.counter("monitor.access.log.dropped", "因队列已满被丢弃的访问日志数量", this, AccessLogUtils::dropped);
+        worker = Thread.ofPlatform()
+                .name("access-log")
+                .daemon(true)
+                .start(this::drain);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(1000);
+    }
+
+    /**
+     * 提交一条访问日志，队列已满时丢弃
+     * @param entry 日志条目
+     */
+    public void submit(Entry entry) {
+        if(!queue.offer(entry))
+            dropped.incrementAndGet();
+    }
+
+    /**
+     * 当前等待输出的日志数量
+     * @return 队列长度
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    /**
+     * 因队列已满而被丢弃的日志总数
+     * @return 丢弃数量
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 后台线程循环输出日志，退出前把队列中剩余的日志输出完
+     */
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry entry = queue.poll(1, TimeUnit.SECONDS);
+                if(entry != null) this.write(entry);
+                this.reportDropped();
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                log.error("输出访问日志时出现问题", e);
+            }
+        }
+    }
+
+    /**
+     * 以结构化字段的形式输出一条访问日志
+     * @param entry 日志条目
+     */
+    private void write(Entry entry) {
+        MDC.put("reqId", String.valueOf(entry.reqId()));
+        try {
+            var builder = log.atInfo()
+                    .addKeyValue("url", entry.url())
+                    .addKeyValue("method", entry.method())
+                    .addKeyValue("ip", entry.ip());
+            if(entry.userId() != null) {
+                builder = builder.addKeyValue("uid", entry.userId())
+                        .addKeyValue("user", entry.username())
+                        .addKeyValue("role", entry.role());
+            }
+            builder.addKeyValue("params", entry.params())
+                    .addKeyValue("status", entry.status())
+                    .addKeyValue("cost", entry.cost() + "ms")
+                    .addKeyValue("size", entry.size())
+                    .addKeyValue("body", this.bodyText(entry))
+                    .setMessage("请求处理完成")
+                    .log();
+        } finally {
+            MDC.remove("reqId");
+        }
+    }
+
+    /**
+     * 将截取到的响应体转换为文本，被截断时附带提示
+     * @param entry 日志条目
+     * @return 响应体文本
+     */
+    private String bodyText(Entry entry) {
+        if(entry.status() != 200) return entry.status() + " 错误";
+        if(entry.body() == null) return null;
+        String text = new String(entry.body(), StandardCharsets.UTF_8);
+        return entry.size() > entry.body().length ? text + "...(已截断)" : text;
+    }
+
+    /**
+     * 出现丢弃时输出警告，避免静默丢失日志，最多每10秒输出一次
+     */
+    private void reportDropped() {
+        long current = dropped.get();
+        long now = System.currentTimeMillis();
+        if(current != reportedDropped && now - lastReportTime >= 10000) {
+            log.warn("访问日志队列已满，累计丢弃 {} 条日志", current);
+            reportedDropped = current;
+            lastReportTime = now;
+        }
+    }
+
+    /**
+     * 一条访问日志包含的全部字段，由请求线程采集，后台线程格式化
+     */
+    public record Entry(long reqId, String url, String method, String ip,
+                        Integer userId, String username, String role,
+                        Map<String, String> params, int status, long cost,
+                        long size, byte[] body) { }
+}
@@ -15,6 +15,9 @@ public final class Const {
     //邮件验证码
     public final static String VERIFY_EMAIL_LIMIT = "verify:email:limit:";
     public final static String VERIFY_EMAIL_DATA = "verify:email:data:";
+    //雪花算法机器ID租约
+    public final static String SNOWFLAKE_WORKER = "snowflake:worker:";
+    public final static String SNOWFLAKE_FENCE = "snowflake:fence:";
     //过滤器优先级
     public final static int ORDER_FLOW_LIMIT = -101;
     public final static int ORDER_CORS = -102;
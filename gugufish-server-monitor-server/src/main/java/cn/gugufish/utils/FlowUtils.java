@@ -19,6 +19,9 @@ public class FlowUtils {
     @Resource
     StringRedisTemplate template;
 
+    @Resource
+    MetricsUtils metrics;
+
     /**
      * 针对于单次频率限制，请求成功后，在冷却时间内不得再次进行请求，如3秒内不能再次发起请求
      * @param key 键
@@ -48,19 +51,26 @@ public class FlowUtils {
 
     /**
      * 针对于在时间段内多次请求限制，如3秒内限制请求20次，超出频率则封禁一段时间
+     * 计数可以一次累加多次请求，多个节点本地放行的请求批量同步到同一个计数器中
      * @param counterKey 计数键
      * @param blockKey 封禁键
      * @param blockTime 封禁时间
      * @param frequency 请求频率
      * @param period 计数周期
+     * @param count 本次累加的请求次数
      * @return 是否通过限流检查
      */
-    public boolean limitPeriodCheck(String counterKey, String blockKey, int blockTime, int frequency, int period){
-        return this.internalCheck(counterKey, frequency, period, (overclock) -> {
-                    if (overclock)
-                        template.opsForValue().set(blockKey, "", blockTime, TimeUnit.SECONDS);
-                    return !overclock;
-                });
+    public boolean limitPeriodCheck(String counterKey, String blockKey, int blockTime, int frequency, int period, int count){
+        return Boolean.TRUE.equals(metrics.getRedisFlow().record(() -> {
+            long value = Optional.ofNullable(template.opsForValue().increment(counterKey, count)).orElse(0L);
+            // 计数器由本次累加创建时设置过期时间
+            if(value == count)
+                template.expire(counterKey, period, TimeUnit.SECONDS);
+            boolean overclock = value > frequency;
+            if (overclock)
+                template.opsForValue().set(blockKey, "", blockTime, TimeUnit.SECONDS);
+            return !overclock;
+        }));
     }
 
     /**
@@ -74,6 +84,18 @@ public class FlowUtils {
      * @return 是否通过限流检查，true表示允许请求，false表示请求被限制
      */
     private boolean internalCheck(String key, int frequency, int period, LimitAction action){
+        return Boolean.TRUE.equals(metrics.getRedisFlow().record(() -> this.doInternalCheck(key, frequency, period, action)));
+    }
+
+    /**
+     * 限流检查的具体实现，由internalCheck统计Redis调用耗时
+     * @param key 计数键
+     * @param frequency 允许的最大请求次数
+     * @param period 计数周期
+     * @param action 限流策略回调接口
+     * @return 是否通过限流检查
+     */
+    private boolean doInternalCheck(String key, int frequency, int period, LimitAction action){
         // 从Redis中获取当前计数值
         String count = template.opsForValue().get(key);
         if (count != null) {
@@ -1,23 +1,36 @@
 package cn.gugufish.utils;
 
 import cn.gugufish.entity.dto.RuntimeData;
+import cn.gugufish.entity.vo.request.RuntimeBreakdownHistoryVO;
+import cn.gugufish.entity.vo.request.RuntimeBreakdownVO;
 import cn.gugufish.entity.vo.request.RuntimeDetailVO;
 import cn.gugufish.entity.vo.request.RuntimeHistoryVO;
+import cn.gugufish.entity.vo.request.RuntimeMetricHistoryVO;
 import com.alibaba.fastjson2.JSONObject;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
 import com.influxdb.client.WriteApiBlocking;
 import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
 import com.influxdb.query.FluxRecord;
 import com.influxdb.query.FluxTable;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
 import org.springframework.stereotype.Component;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 
 /**
  * InfluxDB工具类
@@ -25,6 +38,8 @@ import java.util.List;
  * 1. 初始化InfluxDB客户端连接
  * 2. 写入服务器运行时监控数据
  * 3. 读取服务器历史监控数据
+ * 4. 写入与读取按核心、磁盘与网卡拆分的监控数据
+ * 5. 记录客户端心跳，用于区分数据未变化与客户端离线
  * InfluxDB是一个用于存储和分析时间序列数据的数据库，特别适合用于监控数据、
  * 实时分析和IoT应用场景。本工具类封装了对InfluxDB的基本操作，简化了数据的存取过程。
  */
@@ -59,10 +74,28 @@ public class InfluxDbUtils {
      */
     private final String ORG = "my_org";
     
+    /**
+     * 透视查询结果中不属于监控字段的列
+     */
+    private static final Set<String> RESERVED_COLUMNS = Set.of("result", "table", "clientId");
+
+    /**
+     * 拆分数据的类型与对应的标签名称，各类型分别存储在 runtime_类型 测量中
+     */
+    public static final Map<String, String> BREAKDOWN_TAGS = Map.of("core", "core", "disk", "device", "interface", "interface");
+
+    /**
+     * 扩展指标的字段名前缀，字段名为前缀加指标ID
+     */
+    private static final String METRIC_FIELD_PREFIX = "m";
+
     /**
      * InfluxDB客户端实例
      */
     private InfluxDBClient client;
+
+    @Resource
+    MetricsUtils metrics;
     /**
      * 初始化InfluxDB客户端连接
      * <p>
@@ -90,47 +123,246 @@ public class InfluxDbUtils {
         data.setClientId(clientId);
         // 获取写入API并写入数据
         WriteApiBlocking writeApi = client.getWriteApiBlocking();
-        writeApi.writeMeasurement(BUCKET, ORG, WritePrecision.NS, data);
+        metrics.getInfluxWrite().record(() -> writeApi.writeMeasurement(BUCKET, ORG, WritePrecision.NS, data));
+    }
+
+    /**
+     * 写入按核心、磁盘与网卡拆分的运行时数据
+     * 每个设备写为带有设备标签的一个数据点，与汇总数据分开存储，不影响默认的历史查询
+     *
+     * @param clientId 客户端ID
+     * @param timestamp 采样时间戳
+     * @param vo 拆分的运行时数据
+     */
+    public void writeBreakdownData(int clientId, long timestamp, RuntimeBreakdownVO vo) {
+        Instant time = Instant.ofEpochMilli(timestamp);
+        String clientTag = String.valueOf(clientId);
+        List<Point> points = new ArrayList<>();
+        double[] cores = vo.getCpuCores();
+        if(cores != null) {
+            for (int i = 0; i < cores.length; i++) {
+                points.add(Point.measurement("runtime_core").time(time, WritePrecision.NS)
+                        .addTag("clientId", clientTag).addTag("core", String.valueOf(i))
+                        .addField("usage", cores[i]));
+            }
+        }
+        String[] disks = vo.getDisks();
+        if(disks != null && this.sameLength(disks.length, vo.getDiskRead(), vo.getDiskWrite(), vo.getDiskIops(), vo.getDiskAwait())) {
+            for (int i = 0; i < disks.length; i++) {
+                points.add(Point.measurement("runtime_disk").time(time, WritePrecision.NS)
+                        .addTag("clientId", clientTag).addTag("device", disks[i])
+                        .addField("read", vo.getDiskRead()[i])
+                        .addField("write", vo.getDiskWrite()[i])
+                        .addField("iops", vo.getDiskIops()[i])
+                        .addField("await", vo.getDiskAwait()[i]));
+            }
+        }
+        String[] interfaces = vo.getInterfaces();
+        if(interfaces != null && this.sameLength(interfaces.length, vo.getNetworkUpload(), vo.getNetworkDownload())) {
+            for (int i = 0; i < interfaces.length; i++) {
+                points.add(Point.measurement("runtime_interface").time(time, WritePrecision.NS)
+                        .addTag("clientId", clientTag).addTag("interface", interfaces[i])
+                        .addField("upload", vo.getNetworkUpload()[i])
+                        .addField("download", vo.getNetworkDownload()[i]));
+            }
+        }
+        if(points.isEmpty()) return;
+        WriteApiBlocking writeApi = client.getWriteApiBlocking();
+        metrics.getInfluxWrite().record(() -> writeApi.writePoints(BUCKET, ORG, points));
+    }
+
+    /**
+     * 写入客户端扩展采集器的指标，同一时刻的全部指标写为一个数据点，与汇总数据分开存储
+     * 字段名只使用指标ID，指标名称保存在字典中，查询时再还原
+     *
+     * @param clientId 客户端ID
+     * @param timestamp 采样时间戳
+     * @param ids 指标ID
+     * @param values 与ID一一对应的指标值
+     */
+    public void writeMetricData(int clientId, long timestamp, int[] ids, double[] values) {
+        Point point = Point.measurement("runtime_metric").time(Instant.ofEpochMilli(timestamp), WritePrecision.NS)
+                .addTag("clientId", String.valueOf(clientId));
+        for (int i = 0; i < ids.length; i++) {
+            if(Double.isFinite(values[i])) point.addField(METRIC_FIELD_PREFIX + ids[i], values[i]);
+        }
+        if(!point.hasFields()) return;
+        WriteApiBlocking writeApi = client.getWriteApiBlocking();
+        metrics.getInfluxWrite().record(() -> writeApi.writePoint(BUCKET, ORG, point));
+    }
+
+    /**
+     * 读取最近1小时客户端扩展采集器的指标
+     *
+     * @param clientId 客户端ID
+     * @param metricName 由指标ID得到指标名称，字典中不存在的指标不返回
+     * @return 按指标名称分组的时间序列
+     */
+    public RuntimeMetricHistoryVO readMetricData(int clientId, IntFunction<String> metricName) {
+        RuntimeMetricHistoryVO vo = new RuntimeMetricHistoryVO();
+        String query = """
+                from(bucket: "%s")
+                |> range(start: %s)
+                |> filter(fn: (r) => r["_measurement"] == "runtime_metric")
+                |> filter(fn: (r) => r["clientId"] == "%s")
+                |> sort(columns: ["_time"])
+                """;
+        String format = String.format(query, BUCKET, "-1h", clientId);
+        List<FluxTable> tables = metrics.getInfluxQuery().record(() -> client.getQueryApi().query(format, ORG));
+        // 每个字段即每个指标对应一个表
+        for (FluxTable table : tables) {
+            List<FluxRecord> records = table.getRecords();
+            if(records.isEmpty()) continue;
+            String field = records.get(0).getField();
+            if(field == null || !field.startsWith(METRIC_FIELD_PREFIX)) continue;
+            String name;
+            try {
+                name = metricName.apply(Integer.parseInt(field.substring(METRIC_FIELD_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if(name == null) continue;
+            List<JSONObject> series = vo.getSeries().computeIfAbsent(name, k -> new ArrayList<>());
+            for (FluxRecord record : records) {
+                JSONObject object = new JSONObject();
+                object.put("timestamp", record.getTime());
+                object.put("value", record.getValue());
+                series.add(object);
+            }
+        }
+        return vo;
+    }
+
+    /**
+     * 读取最近1小时按核心、磁盘或网卡拆分的历史数据
+     *
+     * @param clientId 客户端ID
+     * @param type 拆分类型，取值见BREAKDOWN_TAGS
+     * @return 按设备分组的时间序列
+     */
+    public RuntimeBreakdownHistoryVO readBreakdownData(int clientId, String type) {
+        String tag = BREAKDOWN_TAGS.get(type);
+        RuntimeBreakdownHistoryVO vo = new RuntimeBreakdownHistoryVO();
+        vo.setType(type);
+        String query = """
+                from(bucket: "%s")
+                |> range(start: %s)
+                |> filter(fn: (r) => r["_measurement"] == "runtime_%s")
+                |> filter(fn: (r) => r["clientId"] == "%s")
+                |> pivot(rowKey: ["_time"], columnKey: ["_field"], valueColumn: "_value")
+                |> sort(columns: ["_time"])
+                """;
+        String format = String.format(query, BUCKET, "-1h", type, clientId);
+        List<FluxTable> tables = metrics.getInfluxQuery().record(() -> client.getQueryApi().query(format, ORG));
+        // 每个设备标签对应一个表
+        for (FluxTable table : tables) {
+            for (FluxRecord record : table.getRecords()) {
+                JSONObject object = new JSONObject();
+                object.put("timestamp", record.getTime());
+                record.getValues().forEach((key, value) -> {
+                    if(value == null || key.startsWith("_") || key.equals(tag) || RESERVED_COLUMNS.contains(key)) return;
+                    object.put(key, value);
+                });
+                vo.getSeries().computeIfAbsent(String.valueOf(record.getValueByKey(tag)), k -> new ArrayList<>()).add(object);
+            }
+        }
+        return vo;
+    }
+
+    private boolean sameLength(int length, double[]... arrays) {
+        for (double[] array : arrays) {
+            if(array == null || array.length != length) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次客户端心跳，客户端在数据没有明显变化时只发送心跳，查询历史数据时据此区分数据未变化与客户端离线
+     *
+     * @param clientId 客户端ID
+     * @param timestamp 心跳时间戳
+     */
+    public void writeHeartbeat(int clientId, long timestamp) {
+        Point point = Point.measurement("heartbeat").time(Instant.ofEpochMilli(timestamp), WritePrecision.NS)
+                .addTag("clientId", String.valueOf(clientId))
+                .addField("alive", 1);
+        WriteApiBlocking writeApi = client.getWriteApiBlocking();
+        metrics.getInfluxWrite().record(() -> writeApi.writePoint(BUCKET, ORG, point));
     }
 
     /**
      * 读取服务器历史运行时监控数据
      * 从InfluxDB中查询指定客户端的历史监控数据，默认查询最近1小时的数据
+     * 客户端在数据没有明显变化时不上报，查询时按上报间隔划分窗口，空窗口沿用上一次上报的值，
+     * 但只补全到最近一次上报或心跳之后的一个关键帧间隔为止，更长的空缺说明客户端已经离线，保留为空缺；
+     * 查询范围向前多取一个关键帧间隔，保证范围开始处可以取到上一次上报的值；
+     * 子采样统计字段只在存在时返回，兼容未上报这些字段的旧数据
      * 
      * @param clientId 客户端ID，用于查询特定客户端的数据
+     * @param interval 上报间隔（毫秒）
+     * @param keyframe 关键帧间隔（毫秒），客户端至少每隔这么久上报一次或发送心跳
      * @return 包含历史监控数据的视图对象，数据以时间序列形式返回
      */
-    public RuntimeHistoryVO readRuntimeData(int clientId) {
+    public RuntimeHistoryVO readRuntimeData(int clientId, long interval, long keyframe) {
         RuntimeHistoryVO vo = new RuntimeHistoryVO();
-        // 构建Flux查询语句，查询最近1小时的数据
+        long now = System.currentTimeMillis();
+        long from = now - TimeUnit.HOURS.toMillis(1);
+        // 构建Flux查询语句，运行时数据与心跳按窗口各取最后一个点，运行时数据的各字段透视到同一行
         String query = """
                 from(bucket: "%s")
-                |> range(start: %s)
-                |> filter(fn: (r) => r["_measurement"] == "runtime")
+                |> range(start: -%dms)
+                |> filter(fn: (r) => r["_measurement"] == "runtime" or r["_measurement"] == "heartbeat")
                 |> filter(fn: (r) => r["clientId"] == "%s")
+                |> aggregateWindow(every: %dms, fn: last, createEmpty: false)
+                |> pivot(rowKey: ["_time"], columnKey: ["_field"], valueColumn: "_value")
                 """;
-        String format = String.format(query, BUCKET, "-1h", clientId);
+        String format = String.format(query, BUCKET, now - from + keyframe, clientId, interval);
         // 执行查询
-        List<FluxTable> tables = client.getQueryApi().query(format, ORG);
-        int size = tables.size();
-        if (size == 0) return vo; // 如果没有数据，直接返回空对象
-        // 处理查询结果
-        List<FluxRecord> records = tables.getFirst().getRecords();
-        for (int i = 0; i < records.size(); i++) {
-            // 为每个时间点创建一个JSON对象
-            JSONObject object = new JSONObject();
-            // 设置时间戳
-            object.put("timestamp", records.get(i).getTime());
-            // 遍历所有表格，获取不同指标的值
-            for (int j = 0; j < size; j++) {
-                FluxRecord record = tables.get(j).getRecords().get(i);
-                // 将字段名和值添加到JSON对象中
-                object.put(record.getField(), record.getValue());
+        List<FluxTable> tables = metrics.getInfluxQuery().record(() -> client.getQueryApi().query(format, ORG));
+        // 按窗口序号整理上报与心跳，窗口时间为窗口结束时刻
+        TreeMap<Long, JSONObject> reports = new TreeMap<>();
+        Set<Long> heartbeats = new HashSet<>();
+        for (FluxTable table : tables) {
+            for (FluxRecord record : table.getRecords()) {
+                if(record.getTime() == null) continue;
+                long window = Math.ceilDiv(record.getTime().toEpochMilli(), interval);
+                if("heartbeat".equals(record.getMeasurement())) {
+                    heartbeats.add(window);
+                    continue;
+                }
+                JSONObject object = new JSONObject();
+                object.put("timestamp", record.getTime());
+                // 透视后的每一列都是一个字段，跳过查询元数据与标签
+                record.getValues().forEach((key, value) -> {
+                    if(value == null || key.startsWith("_") || RESERVED_COLUMNS.contains(key)) return;
+                    object.put(key, value);
+                });
+                if(object.size() > 1) reports.put(window, object);
+            }
+        }
+        if(reports.isEmpty()) return vo;
+        JSONObject previous = null;
+        long contact = 0;
+        for (long window = reports.firstKey(), last = Math.ceilDiv(now, interval); window <= last; window++) {
+            JSONObject report = reports.get(window);
+            if(report != null) {
+                previous = report;
+                contact = window;
+            } else if(heartbeats.contains(window)) {
+                contact = window;
+            }
+            // 距离最近一次上报或心跳超过关键帧间隔的窗口不再补全
+            if((window - contact) * interval > keyframe) continue;
+            long time = Math.min(window * interval, now);
+            if(time < from) continue;
+            if(report != null) {
+                vo.getList().add(report);
+            } else {
+                JSONObject filled = new JSONObject(previous);
+                filled.put("timestamp", Instant.ofEpochMilli(time));
+                vo.getList().add(filled);
             }
-            // 将JSON对象添加到结果列表中
-            vo.getList().add(object);
         }
-        
         return vo;
     }
 }
\ No newline at end of file
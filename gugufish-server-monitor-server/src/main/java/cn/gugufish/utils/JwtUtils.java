@@ -45,6 +45,9 @@ public class JwtUtils {
     @Resource
     FlowUtils utils;
 
+    @Resource
+    MetricsUtils metrics;
+
     /**
      * 让指定Jwt令牌失效
      * @param headerToken 请求头中携带的令牌
@@ -174,16 +177,19 @@ public class JwtUtils {
             return false;
         Date now = new Date();
         long expire = Math.max(time.getTime() - now.getTime(), 0);
-        template.opsForValue().set(Const.JWT_BLACK_LIST + uuid, "", expire, TimeUnit.MILLISECONDS);
+        metrics.getRedisJwt().record(() ->
+                template.opsForValue().set(Const.JWT_BLACK_LIST + uuid, "", expire, TimeUnit.MILLISECONDS));
         return true;
     }
 
     public void deleteUser(int uid) {
-        template.opsForValue().set(Const.USER_BLACK_LIST + uid, "", expire, TimeUnit.HOURS);
+        metrics.getRedisJwt().record(() ->
+                template.opsForValue().set(Const.USER_BLACK_LIST + uid, "", expire, TimeUnit.HOURS));
     }
 
     private boolean isInvalidUser(int uid){
-        return Boolean.TRUE.equals(template.hasKey(Const.USER_BLACK_LIST + uid));
+        return Boolean.TRUE.equals(metrics.getRedisJwt().record(() ->
+                template.hasKey(Const.USER_BLACK_LIST + uid)));
     }
 
     /**
@@ -192,6 +198,7 @@ public class JwtUtils {
      * @return 是否操作成功
      */
     private boolean isInvalidToken(String uuid){
-        return Boolean.TRUE.equals(template.hasKey(Const.JWT_BLACK_LIST + uuid));
+        return Boolean.TRUE.equals(metrics.getRedisJwt().record(() ->
+                template.hasKey(Const.JWT_BLACK_LIST + uuid)));
     }
 }
@@ -0,0 +1,113 @@
+package cn.gugufish.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 监控服务自身的运行指标
+ * 所有热点路径使用的计数器与计时器都在启动时注册好并直接持有引用，
+ * 记录时不需要再按名称查找，指标通过 /actuator/prometheus 对外暴露。
+ */
+@Getter
+@Component
+public class MetricsUtils {
+
+    @Getter(AccessLevel.NONE)
+    @Resource
+    MeterRegistry registry;
+
+    //客户端上报的运行时数据条数
+    private Counter runtimeIngest;
+    //客户端上报的基本信息条数
+    private Counter detailIngest;
+    //写入InfluxDB耗时
+    private Timer influxWrite;
+    //查询InfluxDB耗时
+    private Timer influxQuery;
+    //限流相关的Redis调用耗时
+    private Timer redisFlow;
+    //Jwt令牌校验相关的Redis调用耗时
+    private Timer redisJwt;
+    //终端SSH输出推送到浏览器的字节数
+    private Counter terminalBytes;
+    //邮件发送成功次数
+    private Counter mailSent;
+    //邮件发送失败次数
+    private Counter mailFailed;
+
+    @PostConstruct
+    public void init() {
+        runtimeIngest = Counter.builder("monitor.ingest.runtime")
+                .description("客户端上报的运行时数据条数")
+                .register(registry);
+        detailIngest = Counter.builder("monitor.ingest.detail")
+                .description("客户端上报的基本信息条数")
+                .register(registry);
+        influxWrite = this.latencyTimer("monitor.influx.latency", "write");
+        influxQuery = this.latencyTimer("monitor.influx.latency", "query");
+        redisFlow = this.latencyTimer("monitor.redis.latency", "flow");
+        redisJwt = this.latencyTimer("monitor.redis.latency", "jwt");
+        terminalBytes = Counter.builder("monitor.terminal.bytes")
+                .description("终端输出推送到浏览器的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+        mailSent = Counter.builder("monitor.mail")
+                .tag("result", "success")
+                .register(registry);
+        mailFailed = Counter.builder("monitor.mail")
+                .tag("result", "failure")
+                .register(registry);
+    }
+
+    /**
+     * 注册一个仪表盘指标，指标值在被采集时才通过函数读取
+     * @param name 指标名称
+     * @param description 指标说明
+     * @param target 被观察的对象
+     * @param function 读取指标值的函数
+     * @param <T> 被观察对象类型
+     */
+    public <T> void gauge(String name, String description, T target, ToDoubleFunction<T> function) {
+        Gauge.builder(name, target, function)
+                .description(description)
+                .register(registry);
+    }
+
+    /**
+     * 注册一个单调递增的计数指标，指标值在被采集时才通过函数读取
+     * @param name 指标名称
+     * @param description 指标说明
+     * @param target 被观察的对象
+     * @param function 读取指标值的函数
+     * @param <T> 被观察对象类型
+     */
+    public <T> void counter(String name, String description, T target, ToDoubleFunction<T> function) {
+        FunctionCounter.builder(name, target, function)
+                .description(description)
+                .register(registry);
+    }
+
+    /**
+     * 创建带百分位与直方图的耗时计时器
+     * @param name 指标名称
+     * @param operation 操作类型标签
+     * @return 计时器
+     */
+    private Timer latencyTimer(String name, String operation) {
+        return Timer.builder(name)
+                .tag("operation", operation)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
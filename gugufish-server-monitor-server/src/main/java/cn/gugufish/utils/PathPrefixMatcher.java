@@ -0,0 +1,80 @@
+package cn.gugufish.utils;
+
+import java.util.Arrays;
+
+/**
+ * 基于字符前缀树的路径匹配工具
+ * 为若干路径前缀绑定一个值，匹配时返回与请求路径匹配的最长前缀对应的值，
+ * 匹配开销只与路径长度有关，与配置的前缀数量无关。
+ * 构建完成后只读，可以被多个线程同时使用。
+ * @param <V> 绑定值类型
+ */
+public class PathPrefixMatcher<V> {
+
+    private final Node<V> root = new Node<>();
+
+    /**
+     * 为指定前缀绑定值，相同前缀重复绑定时后者覆盖前者
+     * @param prefix 路径前缀
+     * @param value 绑定值
+     * @return 当前匹配器
+     */
+    public PathPrefixMatcher<V> add(String prefix, V value) {
+        Node<V> node = root;
+        for (int i = 0; i < prefix.length(); i++)
+            node = node.childOrCreate(prefix.charAt(i));
+        node.value = value;
+        return this;
+    }
+
+    /**
+     * 查找与路径匹配的最长前缀所绑定的值
+     * @param path 请求路径
+     * @param defaultValue 没有任何前缀匹配时返回的默认值
+     * @return 绑定值
+     */
+    public V match(String path, V defaultValue) {
+        Node<V> node = root;
+        V result = root.value != null ? root.value : defaultValue;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.child(path.charAt(i));
+            if(node == null) break;
+            if(node.value != null) result = node.value;
+        }
+        return result;
+    }
+
+    /**
+     * 前缀树节点，子节点按字符有序存放，查找时二分
+     */
+    private static class Node<V> {
+        private char[] keys = new char[0];
+        @SuppressWarnings("unchecked")
+        private Node<V>[] children = new Node[0];
+        private V value;
+
+        private Node<V> child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node<V> childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if(index >= 0) return children[index];
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            @SuppressWarnings("unchecked")
+            Node<V>[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            Node<V> node = new Node<>();
+            newKeys[insert] = c;
+            newChildren[insert] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+}
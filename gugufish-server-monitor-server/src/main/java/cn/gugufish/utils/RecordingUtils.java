@@ -0,0 +1,479 @@
+package cn.gugufish.utils;
+
+import com.alibaba.fastjson2.JSON;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 终端会话录像工具
+ * 录像内容采用asciicast v2的时间模型，每行是一个 [时间, 类型, 数据] 事件：
+ * - 终端线程只把事件放入有界队列，压缩与写盘都由后台线程批量完成，队列满时丢弃并计数
+ * - 头部保存在录像对象中，结束录像走单独的无界队列，二者都不会因事件队列已满而丢失，文件与压缩器总能被释放
+ * - 事件按块独立压缩后追加写入录像文件，每个块写入时在索引文件中记录块的起始时间与文件位置
+ * - 回放时通过稀疏索引定位到目标时间所在的块，只解压从该块开始的数据
+ * - 默认只录制终端输出；用户输入包含未回显的密码等敏感内容，会以明文保存在录像文件中，
+ *   只有显式开启 spring.ssh.recording.record-input 时才录制
+ * 录像文件格式：每个块为 4字节压缩长度 + Deflate压缩数据；索引文件每项为 8字节起始毫秒 + 8字节文件位置。
+ */
+@Slf4j
+@Component
+public class RecordingUtils {
+    //录像名称格式，防止通过名称访问录像目录以外的文件
+    private static final Pattern NAME_PATTERN = Pattern.compile("[0-9A-Za-z-]+");
+    private static final String DATA_SUFFIX = ".cast.z";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    @Resource
+    MetricsUtils metrics;
+
+    //是否开启终端录像
+    @Value("${spring.ssh.recording.enabled}")
+    boolean enabled;
+    //录像保存目录
+    @Value("${spring.ssh.recording.directory}")
+    String directory;
+    //单个压缩块最多包含的原始字节数
+    @Value("${spring.ssh.recording.block-size}")
+    int blockSize;
+    //未写满的块最多等待的秒数，同时决定了索引的时间粒度
+    @Value("${spring.ssh.recording.flush-interval}")
+    long flushInterval;
+    //事件队列容量
+    @Value("${spring.ssh.recording.queue-size}")
+    int queueSize;
+    //是否录制用户输入，输入会以明文保存，默认关闭
+    @Value("${spring.ssh.recording.record-input:false}")
+    boolean recordInput;
+
+    private BlockingQueue<Event> queue;
+    //等待结束的录像，与事件队列分开，结束请求不受事件队列容量限制
+    private final Queue<Recording> closing = new ConcurrentLinkedQueue<>();
+    private Thread worker;
+    private volatile boolean running = true;
+    private final AtomicLong dropped = new AtomicLong();
+    //只由后台线程访问的正在录制的录像
+    private final Set<Recording> active = new HashSet<>();
+
+    @PostConstruct
+    public void init() {
+        if(!enabled) return;
+        queue = new ArrayBlockingQueue<>(queueSize);
+        metrics.counter("monitor.recording.dropped", "因队列已满被丢弃的录像事件数量", this, RecordingUtils::dropped);
+        worker = Thread.ofPlatform()
+                .name("terminal-recorder")
+                .daemon(true)
+                .start(this::drain);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if(worker == null) return;
+        running = false;
+        worker.interrupt();
+        worker.join(3000);
+    }
+
+    /**
+     * 为一个终端会话开始录像
+     * @param clientId 客户端ID
+     * @param width 终端宽度
+     * @param height 终端高度
+     * @return 录像，未开启录像时返回null
+     */
+    public Recording start(int clientId, int width, int height) {
+        if(!enabled) return null;
+        String name = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()) + "-"
+                + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x10000, 0x100000));
+        String header = JSON.toJSONString(Map.of("version", 2, "width", width, "height", height,
+                "timestamp", System.currentTimeMillis() / 1000));
+        return new Recording(clientId, name, header);
+    }
+
+    /**
+     * 列出客户端的全部录像名称，按时间倒序
+     * @param clientId 客户端ID
+     * @return 录像名称
+     */
+    public List<String> list(int clientId) {
+        Path folder = Path.of(directory, String.valueOf(clientId));
+        if(!Files.isDirectory(folder)) return List.of();
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(DATA_SUFFIX))
+                    .map(name -> name.substring(0, name.length() - DATA_SUFFIX.length()))
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        } catch (IOException e) {
+            log.error("读取终端录像列表时出现问题", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * 判断录像是否存在
+     * @param clientId 客户端ID
+     * @param name 录像名称
+     * @return 是否存在
+     */
+    public boolean exists(int clientId, String name) {
+        return name != null && NAME_PATTERN.matcher(name).matches()
+                && Files.isRegularFile(this.dataFile(clientId, name));
+    }
+
+    /**
+     * 从指定时间开始回放录像，输出一个完整的asciicast v2文档，事件时间从0开始重新计算
+     * @param clientId 客户端ID
+     * @param name 录像名称
+     * @param from 起始时间，秒
+     * @param output 输出流
+     * @throws IOException 读取或输出失败
+     */
+    public void play(int clientId, String name, double from, OutputStream output) throws IOException {
+        long fromMillis = (long) (from * 1000);
+        long position = this.seek(clientId, name, fromMillis);
+        try (FileChannel channel = FileChannel.open(this.dataFile(clientId, name), StandardOpenOption.READ)) {
+            Inflater inflater = new Inflater();
+            try {
+                byte[] first = this.readBlock(channel, 0, inflater);
+                if(first == null) return;
+                int headerEnd = this.indexOf(first, 0, first.length);
+                output.write(first, 0, headerEnd + 1);
+                byte[] block = position == 0 ? first : this.readBlock(channel, position, inflater);
+                while (block != null) {
+                    this.writeEvents(block, from, output);
+                    block = this.readBlock(channel, -1, inflater);
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+        output.flush();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 在索引中查找包含指定时间的块在录像文件中的位置
+     * @param clientId 客户端ID
+     * @param name 录像名称
+     * @param fromMillis 起始时间，毫秒
+     * @return 文件位置
+     */
+    private long seek(int clientId, String name, long fromMillis) throws IOException {
+        Path index = Path.of(directory, String.valueOf(clientId), name + INDEX_SUFFIX);
+        if(!Files.isRegularFile(index)) return 0;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(index));
+        int low = 0, high = buffer.capacity() / 16 - 1;
+        long position = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if(buffer.getLong(middle * 16) <= fromMillis) {
+                position = buffer.getLong(middle * 16 + 8);
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * 读取并解压一个块
+     * @param channel 录像文件
+     * @param position 块的位置，小于0表示从当前位置继续读取
+     * @param inflater 解压器
+     * @return 解压后的数据，已经读到文件末尾时返回null
+     */
+    private byte[] readBlock(FileChannel channel, long position, Inflater inflater) throws IOException {
+        if(position >= 0) channel.position(position);
+        ByteBuffer length = ByteBuffer.allocate(4);
+        if(this.readFully(channel, length) < 4) return null;
+        ByteBuffer compressed = ByteBuffer.allocate(length.getInt(0));
+        if(this.readFully(channel, compressed) < compressed.capacity()) return null;
+        inflater.reset();
+        inflater.setInput(compressed.array());
+        ByteArrayOutputStream result = new ByteArrayOutputStream(compressed.capacity() * 4);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if(count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                result.write(buffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("录像文件已损坏", e);
+        }
+        return result.toByteArray();
+    }
+
+    private int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) break;
+        }
+        return buffer.position();
+    }
+
+    /**
+     * 输出块中不早于起始时间的事件，并将事件时间改为相对起始时间
+     * @param block 解压后的块
+     * @param from 起始时间，秒
+     * @param output 输出流
+     */
+    private void writeEvents(byte[] block, double from, OutputStream output) throws IOException {
+        int start = 0;
+        while (start < block.length) {
+            int end = this.indexOf(block, start, block.length);
+            //事件行的格式为 [时间, 类型, 数据]，只解析时间部分，头部行直接跳过
+            if(block[start] == '[') {
+                int comma = this.indexOf(block, start, end, (byte) ',');
+                double time = Double.parseDouble(new String(block, start + 1, comma - start - 1, StandardCharsets.US_ASCII));
+                if(time >= from) {
+                    output.write(("[" + this.formatTime(time - from)).getBytes(StandardCharsets.US_ASCII));
+                    output.write(block, comma, end - comma + 1);
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    private int indexOf(byte[] data, int from, int to) {
+        return this.indexOf(data, from, to, (byte) '\n');
+    }
+
+    private int indexOf(byte[] data, int from, int to, byte target) {
+        for (int i = from; i < to; i++) {
+            if(data[i] == target) return i;
+        }
+        return to - 1;
+    }
+
+    private String formatTime(double seconds) {
+        return String.format(Locale.ROOT, "%.6f", seconds);
+    }
+
+    private Path dataFile(int clientId, String name) {
+        return Path.of(directory, String.valueOf(clientId), name + DATA_SUFFIX);
+    }
+
+    /**
+     * 后台线程循环处理事件，定期把等待时间过长的块写入文件，退出前写完全部剩余数据
+     * 每轮先取出已请求结束的录像，再处理事件队列，这些录像在结束前提交的事件都会先被写入
+     */
+    private void drain() {
+        List<Event> batch = new ArrayList<>();
+        List<Recording> ended = new ArrayList<>();
+        while (running || !queue.isEmpty() || !closing.isEmpty()) {
+            try {
+                for (Recording recording; (recording = closing.poll()) != null; ) ended.add(recording);
+                Event event = ended.isEmpty() ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+                if(event != null) {
+                    batch.add(event);
+                    queue.drainTo(batch);
+                    batch.forEach(this::handle);
+                }
+                long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(flushInterval);
+                for (Recording recording : active) {
+                    if(recording.pending.size() > 0 && recording.pendingSince < deadline)
+                        this.flushBlock(recording);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                log.error("写入终端录像时出现问题", e);
+            } finally {
+                batch.clear();
+                ended.forEach(this::end);
+                ended.clear();
+            }
+        }
+        new ArrayList<>(active).forEach(this::finish);
+    }
+
+    private void handle(Event event) {
+        Recording recording = event.recording;
+        if(recording.finished) return;
+        try {
+            if(recording.channel == null) this.open(recording);
+            this.append(recording, event.millis, "[" + this.formatTime(event.millis / 1000.0) + ","
+                    + JSON.toJSONString(event.type) + "," + JSON.toJSONString(event.data) + "]");
+        } catch (IOException e) {
+            log.error("写入终端录像 {} 时出现问题，已停止录制", recording.name, e);
+            this.finish(recording);
+        }
+    }
+
+    /**
+     * 结束录像，没有任何事件的录像也会创建只包含头部的文件
+     * @param recording 录像
+     */
+    private void end(Recording recording) {
+        if(recording.finished) return;
+        try {
+            if(recording.channel == null) this.open(recording);
+        } catch (IOException e) {
+            log.error("写入终端录像 {} 时出现问题", recording.name, e);
+        }
+        this.finish(recording);
+    }
+
+    private void append(Recording recording, long millis, String line) throws IOException {
+        if(recording.pending.size() == 0) {
+            recording.pendingSince = System.currentTimeMillis();
+            recording.pendingStart = millis;
+        }
+        recording.pending.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+        recording.pending.write('\n');
+        if(recording.pending.size() >= blockSize) this.flushBlock(recording);
+    }
+
+    private void open(Recording recording) throws IOException {
+        Path folder = Files.createDirectories(Path.of(directory, String.valueOf(recording.clientId)));
+        FileChannel channel = FileChannel.open(folder.resolve(recording.name + DATA_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            recording.index = FileChannel.open(folder.resolve(recording.name + INDEX_SUFFIX),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        recording.channel = channel;
+        active.add(recording);
+        this.append(recording, 0, recording.header);
+    }
+
+    /**
+     * 将当前块压缩后追加到录像文件，并在索引中记录块的起始时间与位置
+     * @param recording 录像
+     */
+    private void flushBlock(Recording recording) throws IOException {
+        Deflater deflater = recording.deflater;
+        deflater.reset();
+        deflater.setInput(recording.pending.toByteArray());
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(recording.pending.size() / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        long position = recording.channel.position();
+        ByteBuffer block = ByteBuffer.allocate(4 + compressed.size());
+        block.putInt(compressed.size()).put(compressed.toByteArray()).flip();
+        while (block.hasRemaining()) recording.channel.write(block);
+        ByteBuffer entry = ByteBuffer.allocate(16);
+        entry.putLong(recording.pendingStart).putLong(position).flip();
+        while (entry.hasRemaining()) recording.index.write(entry);
+        recording.pending.reset();
+    }
+
+    /**
+     * 写入剩余数据并关闭录像文件
+     * @param recording 录像
+     */
+    private void finish(Recording recording) {
+        active.remove(recording);
+        if(recording.finished) return;
+        recording.finished = true;
+        try {
+            if(recording.channel != null) {
+                try (FileChannel channel = recording.channel; FileChannel index = recording.index) {
+                    if(recording.pending.size() > 0) this.flushBlock(recording);
+                }
+            }
+        } catch (IOException e) {
+            log.error("关闭终端录像 {} 时出现问题", recording.name, e);
+        } finally {
+            recording.deflater.end();
+            recording.channel = null;
+            recording.index = null;
+        }
+    }
+
+    /**
+     * 录像中的一个输出或输入事件
+     */
+    private record Event(Recording recording, long millis, String type, String data) { }
+
+    /**
+     * 一个终端会话的录像，事件记录方法可以在任意线程调用
+     */
+    public class Recording {
+        private final int clientId;
+        private final String name;
+        private final String header;
+        private final long startNanos = System.nanoTime();
+        //以下字段只由后台线程访问
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private FileChannel channel;
+        private FileChannel index;
+        private long pendingSince;
+        private long pendingStart;
+        private boolean finished;
+
+        private Recording(int clientId, String name, String header) {
+            this.clientId = clientId;
+            this.name = name;
+            this.header = header;
+        }
+
+        /**
+         * 记录一段终端输出
+         * @param text 输出内容
+         */
+        public void output(String text) {
+            this.submit(new Event(this, this.elapsed(), "o", text));
+        }
+
+        /**
+         * 记录一段用户输入，未开启输入录制时直接忽略
+         * @param text 输入内容
+         */
+        public void input(String text) {
+            if(!recordInput) return;
+            this.submit(new Event(this, this.elapsed(), "i", text));
+        }
+
+        /**
+         * 结束录像，结束请求放入单独的无界队列，不会被丢弃也不会阻塞调用线程
+         */
+        public void close() {
+            closing.offer(this);
+        }
+
+        private void submit(Event event) {
+            if(!queue.offer(event)) dropped.incrementAndGet();
+        }
+
+        private long elapsed() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -1,10 +1,37 @@
 package cn.gugufish.utils;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
 /**
  * 雪花算法ID生成器
+ * 时间戳与序列号打包保存在同一个AtomicLong中，通过CAS无锁生成ID：
+ * - 时钟小幅回拨时沿用上一次的逻辑时间继续分配序列号，序列号用完则向后借用至多max-backward毫秒
+ * - 回拨超出容忍范围时短暂挂起等待时钟追上，超过max-wait仍未恢复才拒绝生成
+ * 机器ID可以通过配置指定，也可以借助Redis在多个服务节点之间自动分配，避免ID冲突：
+ * - 自动分配的机器ID以租约形式持有，只在租约的本地有效期内生成ID，续期失败超过有效期后拒绝生成，
+ *   本地有效期从发出续期请求前开始计算，总是早于Redis中的租约过期
+ * - 每次抢占、续期与释放都在Redis中记录该机器ID实际分配到的最大时间戳（栅栏），栅栏的有效期为租约的两倍；
+ *   重新抢占到某个机器ID时，栅栏领先本地时钟（节点间时钟偏差）则先等待时钟追上，领先过多则放弃该机器ID，
+ *   再把逻辑时间推进到栅栏之后，新持有者生成的ID总是晚于上一个持有者
+ * - 机器ID变化或租约失效时，线程预取的ID段立即作废
  */
+@Slf4j
 @Component
 public class SnowflakeIdGenerator {
     private static final long START_TIMESTAMP = 1691087910202L;
@@ -16,21 +43,172 @@ public class SnowflakeIdGenerator {
     private static final long MAX_DATA_CENTER_ID = ~(-1L << DATA_CENTER_ID_BITS);
     private static final long MAX_WORKER_ID = ~(-1L << WORKER_ID_BITS);
     private static final long MAX_SEQUENCE = ~(-1L << SEQUENCE_BITS);
+    private static final long MAX_NODE_ID = ~(-1L << (DATA_CENTER_ID_BITS + WORKER_ID_BITS));
 
     private static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
     private static final long DATA_CENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
     private static final long TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATA_CENTER_ID_BITS;
 
-    private final long dataCenterId;
-    private final long workerId;
-    private long lastTimestamp = -1L;
-    private long sequence = 0L;
+    //Redis中机器ID租约的有效期，秒
+    private static final long WORKER_LEASE_SECONDS = 60;
+    //栅栏在Redis中的有效期，秒，比租约多保留一个租约周期
+    private static final long FENCE_SECONDS = WORKER_LEASE_SECONDS * 2;
+    //仅当租约仍属于当前节点时才续期，同时记录已分配的最大时间戳
+    static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "redis.call('set', KEYS[2], ARGV[3], 'EX', ARGV[4]) " +
+            "return redis.call('expire', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+    //仅当租约仍属于当前节点时才释放，释放前记录已分配的最大时间戳
+    static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "redis.call('set', KEYS[2], ARGV[2], 'EX', ARGV[3]) " +
+            "return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    @Resource
+    StringRedisTemplate template;
+
+    //数据中心ID，机器ID为自动分配时忽略
+    @Value("${spring.snowflake.data-center-id}")
+    long dataCenterId;
+    //机器ID，小于0表示通过Redis自动分配
+    @Value("${spring.snowflake.worker-id}")
+    long workerId;
+    //允许逻辑时间领先系统时钟的最大毫秒数
+    @Value("${spring.snowflake.max-backward}")
+    long maxBackward;
+    //时钟回拨过大时最多等待的毫秒数
+    @Value("${spring.snowflake.max-wait}")
+    long maxWait;
+    //每个线程一次预取的ID数量，1表示不预取
+    @Value("${spring.snowflake.block-size}")
+    int blockSize;
+
+    //高位为逻辑时间戳，低位为该毫秒内最后一个已分配的序列号
+    private final AtomicLong state = new AtomicLong(-1L);
+    //线程预取的ID段：下一个ID、段的结束位置、预取时的节点代数
+    private final ThreadLocal<long[]> localBlock = ThreadLocal.withInitial(() -> new long[]{0, 0, -1});
+    private final String instanceId = UUID.randomUUID().toString();
+    //系统时钟，测试时可以替换
+    LongSupplier clock = System::currentTimeMillis;
+
+    private volatile long nodeBits;
+    //机器ID每变化一次加一，用于作废旧机器ID下预取的ID段
+    private volatile long generation;
+    //自动分配的机器ID在本地的租约有效期，System.nanoTime()
+    private volatile long leaseDeadline;
+    private volatile long leaseId;
+    private String leaseKey;
+    private ScheduledExecutorService leaseRenewer;
+
+    @PostConstruct
+    public void init() {
+        if(blockSize < 1 || blockSize > MAX_SEQUENCE + 1)
+            throw new IllegalArgumentException("Block size must be between 1 and " + (MAX_SEQUENCE + 1));
+        if(workerId >= 0) {
+            this.applyNodeId(dataCenterId, workerId);
+        } else {
+            this.acquireLease();
+            leaseRenewer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                    .name("snowflake-lease")
+                    .daemon(true)
+                    .factory());
+            leaseRenewer.scheduleAtFixedRate(this::renewLease,
+                    WORKER_LEASE_SECONDS / 3, WORKER_LEASE_SECONDS / 3, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if(leaseRenewer == null) return;
+        leaseRenewer.shutdownNow();
+        leaseDeadline = System.nanoTime();
+        template.execute(RELEASE_SCRIPT, List.of(leaseKey, Const.SNOWFLAKE_FENCE + leaseId),
+                instanceId, String.valueOf(this.issuedTimestamp()), String.valueOf(FENCE_SECONDS));
+    }
+
+    /**
+     * 生成一个新的雪花算法ID，开启预取时优先从当前线程预取的ID段中分配，
+     * 机器ID已经变化或租约已失效时丢弃剩余的ID段
+     * @return 雪花ID
+     */
+    public long nextId() {
+        if(blockSize == 1) return this.reserve(1);
+        long[] block = localBlock.get();
+        if(block[0] >= block[1] || block[2] != generation || this.leaseExpired()) {
+            long current = generation;
+            block[0] = this.reserve(blockSize);
+            block[1] = block[0] + blockSize;
+            block[2] = current;
+        }
+        return block[0]++;
+    }
+
+    /**
+     * 一次性预留同一毫秒内连续的若干个ID
+     * @param count 预留数量
+     * @return 第一个ID，后续count-1个ID依次递增
+     */
+    public long reserve(int count) {
+        long deadline = 0;
+        while (true) {
+            //先读取机器ID再检查租约，重新抢占期间租约处于失效状态，短暂等待新的机器ID生效
+            long bits = nodeBits;
+            if(this.leaseExpired()) {
+                if(deadline == 0) deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+                if(System.nanoTime() - deadline > 0)
+                    throw new IllegalStateException("Snowflake worker lease expired. Refusing to generate ID.");
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            long current = state.get();
+            long now = this.getCurrentTimestamp() - START_TIMESTAMP;
+            long last = current >> SEQUENCE_BITS;
+            long first;
+            if(now > last) {
+                first = now << SEQUENCE_BITS;
+            } else if((current & MAX_SEQUENCE) + count <= MAX_SEQUENCE) {
+                first = current + 1;
+            } else {
+                first = (last + 1) << SEQUENCE_BITS;
+            }
+            long drift = (first >> SEQUENCE_BITS) - now;
+            if(drift > maxBackward) {
+                if(deadline == 0) deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+                if(System.nanoTime() - deadline > 0)
+                    throw new IllegalStateException("Clock moved backwards by " + drift + "ms. Refusing to generate ID.");
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(drift - maxBackward, 10)));
+                continue;
+            }
+            if(state.compareAndSet(current, first + count - 1))
+                return ((first >> SEQUENCE_BITS) << TIMESTAMP_SHIFT) | bits | (first & MAX_SEQUENCE);
+        }
+    }
+
+    private long getCurrentTimestamp() {
+        return clock.getAsLong();
+    }
 
-    public SnowflakeIdGenerator(){
-        this(1, 1);
+    private boolean leaseExpired() {
+        return leaseRenewer != null && System.nanoTime() - leaseDeadline > 0;
+    }
+
+    /**
+     * 已经分配出去的最大时间戳，包括线程预取的ID段
+     * @return 毫秒时间戳
+     */
+    long issuedTimestamp() {
+        return (state.get() >> SEQUENCE_BITS) + START_TIMESTAMP;
     }
 
-    private SnowflakeIdGenerator(long dataCenterId, long workerId) {
+    /**
+     * 将10位节点ID拆分为数据中心ID与机器ID
+     * @param nodeId 节点ID
+     */
+    private void applyNodeId(long nodeId) {
+        this.applyNodeId(nodeId >> WORKER_ID_BITS, nodeId & MAX_WORKER_ID);
+    }
+
+    private void applyNodeId(long dataCenterId, long workerId) {
         if (dataCenterId > MAX_DATA_CENTER_ID || dataCenterId < 0) {
             throw new IllegalArgumentException("Data center ID can't be greater than " + MAX_DATA_CENTER_ID + " or less than 0");
         }
@@ -39,41 +217,84 @@ public class SnowflakeIdGenerator {
         }
         this.dataCenterId = dataCenterId;
         this.workerId = workerId;
+        this.nodeBits = (dataCenterId << DATA_CENTER_ID_SHIFT) | (workerId << WORKER_ID_SHIFT);
+        this.generation++;
+        log.info("雪花算法节点ID: 数据中心 {} | 机器 {}", dataCenterId, workerId);
     }
 
     /**
-     * 生成一个新的雪花算法ID加锁
-     * @return 雪花ID
+     * 在Redis中抢占一个尚未被其他节点使用的节点ID并以租约形式持有，
+     * 逻辑时间推进到该机器ID上一个持有者的栅栏之后再开始使用
      */
-    public synchronized long nextId() {
-        long timestamp = getCurrentTimestamp();
-        if (timestamp < lastTimestamp) {
-            throw new IllegalStateException("Clock moved backwards. Refusing to generate ID.");
-        }
-        if (timestamp == lastTimestamp) {
-            sequence = (sequence + 1) & MAX_SEQUENCE;
-            if (sequence == 0) {
-                timestamp = getNextTimestamp(lastTimestamp);
+    void acquireLease() {
+        for (long nodeId = 0; nodeId <= MAX_NODE_ID; nodeId++) {
+            String key = Const.SNOWFLAKE_WORKER + nodeId;
+            long sent = System.nanoTime();
+            if(!Boolean.TRUE.equals(template.opsForValue()
+                    .setIfAbsent(key, instanceId, WORKER_LEASE_SECONDS, TimeUnit.SECONDS))) continue;
+            String fenceKey = Const.SNOWFLAKE_FENCE + nodeId;
+            String value = template.opsForValue().get(fenceKey);
+            long fence = value == null ? 0 : Long.parseLong(value);
+            if(!this.awaitFence(fence)) {
+                log.warn("机器ID {} 的栅栏领先本地时钟 {}ms，放弃该机器ID", nodeId, fence - this.getCurrentTimestamp());
+                template.execute(RELEASE_SCRIPT, List.of(key, fenceKey),
+                        instanceId, String.valueOf(fence), String.valueOf(FENCE_SECONDS));
+                continue;
             }
-        } else {
-            sequence = 0L;
+            if(fence > 0) this.advanceTo(fence);
+            template.opsForValue().set(fenceKey, String.valueOf(this.issuedTimestamp()), FENCE_SECONDS, TimeUnit.SECONDS);
+            leaseKey = key;
+            leaseId = nodeId;
+            this.applyNodeId(nodeId);
+            leaseDeadline = sent + TimeUnit.SECONDS.toNanos(WORKER_LEASE_SECONDS);
+            return;
         }
-        lastTimestamp = timestamp;
-        return ((timestamp - START_TIMESTAMP) << TIMESTAMP_SHIFT) |
-                (dataCenterId << DATA_CENTER_ID_SHIFT) |
-                (workerId << WORKER_ID_SHIFT) |
-                sequence;
+        throw new IllegalStateException("No free snowflake worker ID left in Redis");
     }
 
-    private long getCurrentTimestamp() {
-        return System.currentTimeMillis();
+    /**
+     * 栅栏领先本地时钟超过允许的范围时等待时钟追上，最多等待一个租约周期
+     * @param fence 栅栏时间戳
+     * @return 时钟已经追上栅栏返回true，领先超过一个租约周期返回false
+     */
+    private boolean awaitFence(long fence) {
+        long ahead = fence - this.getCurrentTimestamp();
+        if(ahead <= maxBackward) return true;
+        if(ahead > TimeUnit.SECONDS.toMillis(WORKER_LEASE_SECONDS)) return false;
+        log.info("机器ID的栅栏领先本地时钟 {}ms，等待时钟追上", ahead);
+        while ((ahead = fence - this.getCurrentTimestamp()) > maxBackward) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ahead - maxBackward));
+        }
+        return true;
     }
 
-    private long getNextTimestamp(long lastTimestamp) {
-        long timestamp = getCurrentTimestamp();
-        while (timestamp <= lastTimestamp) {
-            timestamp = getCurrentTimestamp();
+    /**
+     * 续期当前节点持有的机器ID租约，租约丢失时立即停止使用原机器ID并重新抢占
+     */
+    void renewLease() {
+        try {
+            long sent = System.nanoTime();
+            Long renewed = template.execute(RENEW_SCRIPT, List.of(leaseKey, Const.SNOWFLAKE_FENCE + leaseId),
+                    instanceId, String.valueOf(WORKER_LEASE_SECONDS), String.valueOf(this.issuedTimestamp()),
+                    String.valueOf(FENCE_SECONDS));
+            if(renewed == null || renewed == 0) {
+                log.warn("雪花算法机器ID租约已丢失，正在重新分配");
+                leaseDeadline = sent;
+                this.acquireLease();
+            } else {
+                leaseDeadline = sent + TimeUnit.SECONDS.toNanos(WORKER_LEASE_SECONDS);
+            }
+        } catch (Exception e) {
+            log.error("续期雪花算法机器ID租约时出现问题", e);
         }
-        return timestamp;
+    }
+
+    /**
+     * 把逻辑时间推进到栅栏时间戳之后
+     * @param fence 栅栏时间戳
+     */
+    private void advanceTo(long fence) {
+        long target = ((fence - START_TIMESTAMP) << SEQUENCE_BITS) | MAX_SEQUENCE;
+        state.accumulateAndGet(target, Math::max);
     }
 }
@@ -0,0 +1,339 @@
+package cn.gugufish.utils;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SSH会话池
+ * 同一主机、端口与用户名的多个终端共用已经完成握手与认证的SSH会话，每个终端只在会话上新开一个通道：
+ * - 每个会话承载的通道数、每个主机的会话数以及全局会话总数都有上限
+ * - 借出会话前检查连接是否仍然可用，失效的会话直接丢弃并重新建立
+ * - 会话开启保活心跳，长时间没有通道使用的会话由后台线程定期回收
+ * - 建立新会话时只在锁内预留名额，握手与认证在锁外进行，慢主机不会阻塞同一主机的其他借用与归还
+ */
+@Slf4j
+@Component
+public class SshSessionPool {
+
+    @Resource
+    MetricsUtils metrics;
+
+    //建立连接的超时时间，毫秒
+    @Value("${spring.ssh.pool.connect-timeout}")
+    int connectTimeout;
+    //保活心跳间隔，秒
+    @Value("${spring.ssh.pool.keepalive}")
+    int keepalive;
+    //没有通道使用的会话最多保留的时间，秒
+    @Value("${spring.ssh.pool.idle-timeout}")
+    long idleTimeout;
+    //单个会话最多承载的通道数
+    @Value("${spring.ssh.pool.max-channels}")
+    int maxChannels;
+    //单个主机最多保持的会话数
+    @Value("${spring.ssh.pool.max-per-host}")
+    int maxPerHost;
+    //全局最多保持的会话数
+    @Value("${spring.ssh.pool.max-total}")
+    int maxTotal;
+
+    private final JSch jSch = new JSch();
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        metrics.gauge("monitor.ssh.pool.sessions", "SSH会话池中保持的会话数量", total, AtomicInteger::get);
+        sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("ssh-pool-sweeper")
+                .daemon(true)
+                .factory());
+        long period = Math.max(1, Math.min(idleTimeout, 30));
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweeper.shutdownNow();
+        hosts.values().forEach(host -> {
+            host.lock.lock();
+            try {
+                new ArrayList<>(host.sessions).forEach(pooled -> this.retire(host, pooled));
+            } finally {
+                host.lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * 借用一个指定主机的SSH会话，优先复用已有且仍然可用的会话
+     * @param ip 主机地址
+     * @param port 端口
+     * @param username 用户名
+     * @param password 密码
+     * @return 会话租约，使用完毕后需要关闭
+     * @throws JSchException 建立连接失败或超出会话上限
+     */
+    public Lease borrow(String ip, int port, String username, String password) throws JSchException {
+        String key = username + "@" + ip + ":" + port;
+        Host host = hosts.computeIfAbsent(key, k -> new Host());
+        host.lock.lock();
+        try {
+            for (Pooled pooled : new ArrayList<>(host.sessions)) {
+                if(!this.isHealthy(pooled)) {
+                    this.retire(host, pooled);
+                } else if(pooled.password.equals(password) && pooled.channels < maxChannels) {
+                    pooled.channels++;
+                    return new Lease(host, pooled);
+                }
+            }
+            this.makeRoom(host);
+            host.connecting++;
+        } finally {
+            host.lock.unlock();
+        }
+        Session session = null;
+        try {
+            session = this.connect(ip, port, username, password);
+        } finally {
+            host.lock.lock();
+            try {
+                host.connecting--;
+                if(session == null) total.decrementAndGet();
+            } finally {
+                host.lock.unlock();
+            }
+        }
+        Pooled pooled = new Pooled(session, password);
+        pooled.channels++;
+        host.lock.lock();
+        try {
+            host.sessions.add(pooled);
+        } finally {
+            host.lock.unlock();
+        }
+        return new Lease(host, pooled);
+    }
+
+    /**
+     * 当前池中保持的会话总数
+     * @return 会话数量
+     */
+    public int size() {
+        return total.get();
+    }
+
+    private Session connect(String ip, int port, String username, String password) throws JSchException {
+        Session session = jSch.getSession(username, ip, port);
+        session.setPassword(password);
+        session.setConfig("StrictHostKeyChecking", "no");
+        session.connect(connectTimeout);
+        session.setServerAliveInterval(keepalive * 1000);
+        session.setServerAliveCountMax(3);
+        return session;
+    }
+
+    /**
+     * 检查会话是否仍然可用，发送一次保活消息以尽早发现已经断开的连接
+     * @param pooled 会话
+     * @return 是否可用
+     */
+    private boolean isHealthy(Pooled pooled) {
+        if(!pooled.session.isConnected()) return false;
+        if(pooled.channels > 0) return true;
+        try {
+            pooled.session.sendKeepAliveMsg();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 在建立新会话之前确保不会超过主机与全局上限，必要时回收空闲会话，正在建立的会话同样占用主机名额
+     * 成功返回时已经为新会话占用了一个全局名额
+     * @param host 主机
+     * @throws JSchException 没有可回收的空闲会话
+     */
+    private void makeRoom(Host host) throws JSchException {
+        if(host.sessions.size() + host.connecting >= maxPerHost) {
+            Pooled idle = host.sessions.stream()
+                    .filter(pooled -> pooled.channels == 0)
+                    .findFirst()
+                    .orElse(null);
+            if(idle == null) throw new JSchException("该主机的SSH连接数已达上限");
+            this.retire(host, idle);
+        }
+        while (true) {
+            int current = total.get();
+            if(current >= maxTotal) {
+                if(!this.evictOldestIdle(host)) throw new JSchException("SSH连接总数已达上限");
+                continue;
+            }
+            if(total.compareAndSet(current, current + 1)) return;
+        }
+    }
+
+    /**
+     * 回收全局最早空闲的一个会话
+     * 当前主机的锁已经持有，其他主机只尝试加锁，正被占用的主机直接跳过，避免互相等待
+     * @param owner 当前持有锁的主机
+     * @return 是否回收成功
+     */
+    private boolean evictOldestIdle(Host owner) {
+        Host oldestHost = null;
+        Pooled oldest = null;
+        for (Host host : hosts.values()) {
+            if(host != owner && !host.lock.tryLock()) continue;
+            try {
+                for (Pooled pooled : host.sessions) {
+                    if(pooled.channels == 0 && (oldest == null || pooled.idleSince < oldest.idleSince)) {
+                        oldestHost = host;
+                        oldest = pooled;
+                    }
+                }
+            } finally {
+                if(host != owner) host.lock.unlock();
+            }
+        }
+        if(oldest == null) return false;
+        if(oldestHost != owner && !oldestHost.lock.tryLock()) return false;
+        try {
+            if(oldest.channels == 0) this.retire(oldestHost, oldest);
+        } finally {
+            if(oldestHost != owner) oldestHost.lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * 定期回收空闲超时或已经断开的会话，正被占用的主机只尝试加锁并直接跳过，留到下一轮回收
+     */
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleTimeout);
+        try {
+            hosts.forEach((key, host) -> {
+                if(!host.lock.tryLock()) return;
+                try {
+                    for (Pooled pooled : new ArrayList<>(host.sessions)) {
+                        if(!pooled.session.isConnected() || (pooled.channels == 0 && pooled.idleSince < deadline)) {
+                            this.retire(host, pooled);
+                            log.info("已回收主机 {} 的空闲SSH连接", key);
+                        }
+                    }
+                } finally {
+                    host.lock.unlock();
+                }
+            });
+        } catch (Exception e) {
+            log.error("回收空闲SSH连接时出现问题", e);
+        }
+    }
+
+    private void retire(Host host, Pooled pooled) {
+        if(host.sessions.remove(pooled)) total.decrementAndGet();
+        pooled.session.disconnect();
+    }
+
+    /**
+     * 同一主机、端口与用户名下的全部会话，访问时需要持有锁
+     */
+    private static class Host {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<Pooled> sessions = new ArrayList<>();
+        //已经预留名额、正在锁外建立连接的会话数量
+        private int connecting;
+    }
+
+    /**
+     * 池中的一个SSH会话以及当前借出的通道数量
+     */
+    private static class Pooled {
+        private final Session session;
+        private final String password;
+        private int channels;
+        private long idleSince = System.currentTimeMillis();
+
+        private Pooled(Session session, String password) {
+            this.session = session;
+            this.password = password;
+        }
+    }
+
+    /**
+     * 会话租约，借用者通过它在共享会话上开启通道，关闭租约即归还通道占用
+     */
+    public class Lease implements AutoCloseable {
+        private final Host host;
+        private final Pooled pooled;
+        private boolean closed;
+
+        private Lease(Host host, Pooled pooled) {
+            this.host = host;
+            this.pooled = pooled;
+        }
+
+        /**
+         * 在共享会话上开启一个新的通道
+         * @param type 通道类型
+         * @return 通道
+         * @throws JSchException 会话已断开
+         */
+        public Channel openChannel(String type) throws JSchException {
+            return pooled.session.openChannel(type);
+        }
+
+        /**
+         * 租约对应的SSH会话
+         * @return 会话
+         */
+        public Session session() {
+            return pooled.session;
+        }
+
+        /**
+         * 会话无法继续使用时将其从池中移除
+         */
+        public void invalidate() {
+            host.lock.lock();
+            try {
+                retire(host, pooled);
+            } finally {
+                host.lock.unlock();
+            }
+            this.close();
+        }
+
+        @Override
+        public void close() {
+            host.lock.lock();
+            try {
+                if(closed) return;
+                closed = true;
+                if(--pooled.channels == 0)
+                    pooled.idleSince = System.currentTimeMillis();
+            } finally {
+                host.lock.unlock();
+            }
+        }
+    }
+}
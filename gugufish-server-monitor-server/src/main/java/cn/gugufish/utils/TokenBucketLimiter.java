@@ -0,0 +1,162 @@
+package cn.gugufish.utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的令牌桶限流器，按键（通常为IP地址）分桶
+ * 每个桶只用一个AtomicLong保存"理论到达时间"(GCRA算法)，通过CAS无锁更新，
+ * 等价于容量为limit、每period秒补满的令牌桶，判定过程不需要任何网络请求。
+ * 桶的数量有上限，长时间空闲（令牌已补满）的桶会被顺带清理，防止内存无限增长。
+ * 每个桶同时记录本地放行但尚未同步到共享层的请求数，由调用方批量累加到共享计数器，
+ * 使共享层能看到所有节点放行的请求，清理空闲桶时最多丢失不足一批的计数。
+ */
+public class TokenBucketLimiter {
+
+    /**
+     * 判定结果
+     */
+    public enum Decision {
+        //令牌充足，直接放行
+        ALLOW,
+        //令牌即将耗尽，需要交给共享的Redis层做最终判定
+        ESCALATE,
+        //令牌刚刚耗尽，需要对该键进行封禁
+        EXHAUSTED,
+        //仍处于本地封禁期，直接拒绝
+        REJECT
+    }
+
+    //每个令牌的补充间隔，纳秒
+    private final long emissionInterval;
+    //桶满时允许的突发容量，纳秒
+    private final long burstTolerance;
+    //剩余令牌数低于该值时升级到Redis层判定
+    private final long escalateTokens;
+    //最多同时保存的桶数量
+    private final int maxBuckets;
+    //两次空闲清理之间的最小间隔，纳秒
+    private final long sweepInterval;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private volatile long lastSweep = System.nanoTime();
+
+    /**
+     * 创建限流器
+     * @param limit 计数周期内允许的最大请求次数
+     * @param period 计数周期，秒
+     * @param escalateRatio 剩余令牌占比低于该值时升级到共享层判定，0-1之间
+     * @param maxBuckets 最多保存的桶数量
+     */
+    public TokenBucketLimiter(int limit, int period, double escalateRatio, int maxBuckets) {
+        if(limit <= 0 || period <= 0)
+            throw new IllegalArgumentException("限流次数与周期必须大于0");
+        long periodNanos = period * 1_000_000_000L;
+        this.emissionInterval = periodNanos / limit;
+        this.burstTolerance = periodNanos - emissionInterval;
+        this.escalateTokens = Math.max(1, Math.round(limit * escalateRatio));
+        this.maxBuckets = maxBuckets;
+        this.sweepInterval = periodNanos;
+    }
+
+    /**
+     * 尝试为指定键消耗一个令牌
+     * @param key 键
+     * @return 判定结果
+     */
+    public Decision tryAcquire(String key) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(key);
+        if(bucket == null) {
+            this.sweepIfNeeded(now);
+            if(buckets.size() >= maxBuckets) return Decision.ESCALATE;
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(now));
+        }
+        if(now - bucket.blockUntil < 0) return Decision.REJECT;
+        while (true) {
+            long tat = bucket.tat.get();
+            long base = Math.max(tat, now);
+            if(base - burstTolerance > now) return Decision.EXHAUSTED;
+            long next = base + emissionInterval;
+            if(bucket.tat.compareAndSet(tat, next)) {
+                bucket.admitted.incrementAndGet();
+                long remaining = (now + burstTolerance - base) / emissionInterval;
+                return remaining < escalateTokens ? Decision.ESCALATE : Decision.ALLOW;
+            }
+        }
+    }
+
+    /**
+     * 在本地标记某个键被封禁，封禁期间不再访问共享层
+     * @param key 键
+     * @param seconds 封禁时间，秒
+     */
+    public void block(String key, int seconds) {
+        Bucket bucket = buckets.get(key);
+        if(bucket != null)
+            bucket.blockUntil = System.nanoTime() + seconds * 1_000_000_000L;
+    }
+
+    /**
+     * 取出本地放行但尚未同步到共享层的请求数，不足一批时不取出
+     * @param key 键
+     * @param batch 最少取出的数量
+     * @return 取出的数量，不足一批或桶不存在时为0
+     */
+    public int takeAdmitted(String key, int batch) {
+        Bucket bucket = buckets.get(key);
+        if(bucket == null || bucket.admitted.get() < batch) return 0;
+        return bucket.admitted.getAndSet(0);
+    }
+
+    /**
+     * 当前保存的桶数量
+     * @return 数量
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * 清理令牌已补满且不在封禁期的桶，这些桶与新建的桶状态一致，移除不会影响判定
+     * 清理最多每个计数周期执行一次，且同一时间只允许一个线程执行
+     * @param now 当前时间
+     */
+    private void sweepIfNeeded(long now) {
+        if(now - lastSweep < sweepInterval && buckets.size() < maxBuckets) return;
+        if(!sweeping.compareAndSet(false, true)) return;
+        try {
+            lastSweep = now;
+            Iterator<Bucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                Bucket bucket = iterator.next();
+                if(bucket.tat.get() <= now && now - bucket.blockUntil >= 0)
+                    iterator.remove();
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * 单个键对应的令牌桶
+     */
+    private static class Bucket {
+        //理论到达时间，令牌桶剩余量由它与当前时间的差值推算
+        private final AtomicLong tat;
+        //本地封禁截止时间
+        private volatile long blockUntil;
+        //本地放行但尚未同步到共享层的请求数
+        private final AtomicInteger admitted = new AtomicInteger();
+
+        Bucket(long now) {
+            this.tat = new AtomicLong(now);
+            this.blockUntil = now;
+        }
+    }
+}
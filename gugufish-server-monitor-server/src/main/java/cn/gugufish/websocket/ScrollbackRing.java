@@ -0,0 +1,62 @@
+package cn.gugufish.websocket;
+
+/**
+ * 终端输出回滚环形缓冲区
+ * 按绝对字节偏移记录Shell的原始输出，容量用完后覆盖最早的数据，
+ * 断线重连的客户端可以按偏移取回断开期间错过的输出。
+ * 非线程安全，由调用方负责加锁。
+ */
+public class ScrollbackRing {
+    private final byte[] data;
+    //已经写入的总字节数，即下一个字节的绝对偏移
+    private long end;
+
+    public ScrollbackRing(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * 追加一段输出
+     * @param buffer 缓冲区
+     * @param offset 起始位置
+     * @param length 长度
+     */
+    public void write(byte[] buffer, int offset, int length) {
+        if(length >= data.length) {
+            offset += length - data.length;
+            end += length - data.length;
+            length = data.length;
+        }
+        int position = (int) (end % data.length);
+        int first = Math.min(length, data.length - position);
+        System.arraycopy(buffer, offset, data, position, first);
+        System.arraycopy(buffer, offset + first, data, 0, length - first);
+        end += length;
+    }
+
+    /**
+     * 仍然保留在缓冲区中的最早字节的绝对偏移
+     * @return 偏移
+     */
+    public long start() {
+        return Math.max(0, end - data.length);
+    }
+
+    /**
+     * 读取绝对偏移区间内仍然保留的字节，已被覆盖的部分会被跳过
+     * @param from 起始偏移（包含）
+     * @param to 结束偏移（不包含）
+     * @return 字节数据
+     */
+    public byte[] read(long from, long to) {
+        from = Math.max(from, this.start());
+        to = Math.min(to, end);
+        if(from >= to) return new byte[0];
+        byte[] result = new byte[(int) (to - from)];
+        int position = (int) (from % data.length);
+        int first = Math.min(result.length, data.length - position);
+        System.arraycopy(data, position, result, 0, first);
+        System.arraycopy(data, 0, result, first, result.length - first);
+        return result;
+    }
+}
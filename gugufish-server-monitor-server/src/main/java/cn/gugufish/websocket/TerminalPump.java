@@ -0,0 +1,345 @@
+package cn.gugufish.websocket;
+
+import com.jcraft.jsch.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SSH输出泵，负责把Shell通道的输出读取出来并合并成较大的文本帧
+ * - 每个泵运行在一个虚拟线程上阻塞读取，空闲的终端不会被周期性唤醒，也不会为每个会话占用一个平台线程；
+ *   Shell通道的输出不经过JSch自带的管道输入流（等待数据时使用Object.wait，在JDK 21中会钉住虚拟线程的载体线程），
+ *   而是由JSch的会话线程写入基于ReentrantLock的管道，虚拟线程阻塞读取时会让出载体线程
+ * - 读取缓冲区来自共享的小缓冲池，不再为每个会话分配1MB数组
+ * - 使用增量UTF-8解码，多字节字符被拆分在两次读取之间也不会乱码
+ * - 在很短的时间窗口或帧大小上限内合并输出，大量输出不会产生成千上万个小帧：
+ *   一帧的第一段数据到达时由共享的定时器安排发送，达到大小上限时由读取线程直接发送
+ * - 同一时间只有一帧在发送，发送阻塞时读取线程在下一次达到大小上限时等待，形成对SSH通道的背压
+ */
+@Slf4j
+public class TerminalPump {
+    //单次读取缓冲区大小
+    private static final int BUFFER_SIZE = 8 * 1024;
+    //缓冲池最多保留的空闲缓冲区数量
+    private static final int POOL_LIMIT = 256;
+    //单个文本帧最多合并的字符数
+    private static final int FRAME_SIZE = 32 * 1024;
+    //管道缓冲区大小，与JSch自带管道输入流的默认大小一致，写满时阻塞JSch的会话线程，形成背压
+    private static final int PIPE_SIZE = 32 * 1024;
+    //合并输出的时间窗口
+    private static final long COALESCE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final Queue<byte[]> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+    //全部输出泵共享的合并定时器，到期后在虚拟线程中发送，发送阻塞不会影响其他会话
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("terminal-flush-timer").daemon(true).factory());
+    private static final ExecutorService FLUSHERS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Pipe pipe;
+    private final Listener listener;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    //待解码的字节，包含上一次读取中未能解码的不完整字节序列
+    private final ByteBuffer carry = ByteBuffer.allocate(BUFFER_SIZE + 8);
+    private final CharBuffer decoded = CharBuffer.allocate(BUFFER_SIZE + 8);
+    private final StringBuilder pending = new StringBuilder();
+    //待发送文本对应的原始字节数
+    private int pendingBytes;
+    //是否已经为当前待发送文本安排了定时发送
+    private boolean flushScheduled;
+    //保护待发送文本与解码状态
+    private final ReentrantLock stateLock = new ReentrantLock();
+    //保证同一时间只有一帧在发送，且帧的顺序与读取顺序一致
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private Thread thread;
+
+    /**
+     * 创建输出泵并接管通道的输出，需要在通道连接之前调用，否则连接后到达的输出可能丢失
+     * @param channel 尚未连接的Shell通道
+     * @param listener 事件监听器
+     */
+    public TerminalPump(Channel channel, Listener listener) {
+        this(listener);
+        //通道关闭时由JSch关闭管道，读取完剩余输出后结束
+        channel.setOutputStream(pipe.sink, false);
+    }
+
+    TerminalPump(Listener listener) {
+        this.pipe = new Pipe(PIPE_SIZE);
+        this.listener = listener;
+    }
+
+    /**
+     * 管道的写入端，供不经过SSH通道直接写入输出的场景使用
+     * @return 写入端
+     */
+    OutputStream sink() {
+        return pipe.sink;
+    }
+
+    /**
+     * 在新的虚拟线程上启动输出泵
+     * @param name 线程名称
+     */
+    public void start(String name) {
+        thread = Thread.ofVirtual().name(name).start(this::run);
+    }
+
+    /**
+     * 停止输出泵
+     */
+    public void stop() {
+        //关闭管道，之后JSch写入的输出直接丢弃，不会因为没有读取者而阻塞会话线程
+        pipe.close();
+        if(thread != null) thread.interrupt();
+    }
+
+    private void run() {
+        byte[] buffer = borrowBuffer();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                int length = pipe.read(buffer, 0, buffer.length);
+                if(length == -1) break;
+                boolean full, schedule = false;
+                stateLock.lock();
+                try {
+                    this.accept(buffer, length);
+                    full = pending.length() >= FRAME_SIZE;
+                    if(!full && !flushScheduled) {
+                        flushScheduled = schedule = true;
+                    }
+                } finally {
+                    stateLock.unlock();
+                }
+                if(full) {
+                    this.flush();
+                } else if(schedule) {
+                    FLUSH_TIMER.schedule(() -> FLUSHERS.execute(this::timedFlush), COALESCE_NANOS, TimeUnit.NANOSECONDS);
+                }
+            }
+            this.flush();
+        } catch (Exception e) {
+            if(!Thread.currentThread().isInterrupted())
+                log.error("读取SSH输入流时出现问题", e);
+        } finally {
+            returnBuffer(buffer);
+            listener.onClosed();
+        }
+    }
+
+    /**
+     * 处理一次读取到的原始字节：先通知原始字节监听，再增量解码到待发送文本
+     * @param buffer 缓冲区
+     * @param length 有效长度
+     */
+    private void accept(byte[] buffer, int length) {
+        listener.onOutput(buffer, 0, length);
+        int before = carry.position() + length;
+        carry.put(buffer, 0, length);
+        carry.flip();
+        decoder.decode(carry, decoded, false);
+        carry.compact();
+        pendingBytes += before - carry.position();
+        decoded.flip();
+        pending.append(decoded);
+        decoded.clear();
+    }
+
+    /**
+     * 将合并好的文本作为一帧交给监听器
+     */
+    private void flush() throws IOException {
+        sendLock.lock();
+        try {
+            String text;
+            int bytes;
+            stateLock.lock();
+            try {
+                flushScheduled = false;
+                if(pending.isEmpty()) return;
+                text = pending.toString();
+                bytes = pendingBytes;
+                pending.setLength(0);
+                pendingBytes = 0;
+            } finally {
+                stateLock.unlock();
+            }
+            listener.onFrame(text, bytes);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * 合并时间窗口到期后发送，发送失败时由读取线程在连接关闭后结束
+     */
+    private void timedFlush() {
+        try {
+            this.flush();
+        } catch (IOException e) {
+            log.debug("发送终端输出帧失败", e);
+        }
+    }
+
+    /**
+     * 基于ReentrantLock与环形缓冲区的单写单读管道
+     * 写入端关闭后读取完剩余数据返回-1；读取端关闭后写入的数据直接丢弃，JSch的会话线程不会被阻塞或收到异常，
+     * 同一个SSH会话上的其他通道不受影响
+     */
+    static class Pipe {
+        private final byte[] ring;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private int head, size;
+        private boolean eof, closed;
+
+        final OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Pipe.this.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.finish();
+            }
+        };
+
+        Pipe(int capacity) {
+            this.ring = new byte[capacity];
+        }
+
+        int read(byte[] buffer, int offset, int length) throws IOException {
+            lock.lock();
+            try {
+                while (size == 0 && !eof && !closed) notEmpty.await();
+                if(size == 0) return -1;
+                int count = Math.min(length, size);
+                int first = Math.min(count, ring.length - head);
+                System.arraycopy(ring, head, buffer, offset, first);
+                System.arraycopy(ring, 0, buffer, offset + first, count - first);
+                head = (head + count) % ring.length;
+                size -= count;
+                notFull.signal();
+                return count;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void write(byte[] buffer, int offset, int length) throws IOException {
+            lock.lock();
+            try {
+                while (length > 0) {
+                    while (size == ring.length && !closed) notFull.await();
+                    if(closed) return;
+                    int tail = (head + size) % ring.length;
+                    int count = Math.min(length, Math.min(ring.length - size, ring.length - tail));
+                    System.arraycopy(buffer, offset, ring, tail, count);
+                    size += count;
+                    offset += count;
+                    length -= count;
+                    notEmpty.signal();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 写入端结束，读取端读完剩余数据后返回-1
+         */
+        void finish() {
+            lock.lock();
+            try {
+                eof = true;
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 读取端关闭，丢弃剩余与之后写入的数据
+         */
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                size = 0;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static byte[] borrowBuffer() {
+        byte[] buffer = BUFFER_POOL.poll();
+        if(buffer == null) return new byte[BUFFER_SIZE];
+        POOLED.decrementAndGet();
+        return buffer;
+    }
+
+    private static void returnBuffer(byte[] buffer) {
+        if(POOLED.incrementAndGet() <= POOL_LIMIT) {
+            BUFFER_POOL.offer(buffer);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    /**
+     * 输出泵的事件监听器
+     */
+    public interface Listener {
+        /**
+         * 读取到原始字节时调用，数据仅在调用期间有效
+         * @param data 缓冲区
+         * @param offset 起始位置
+         * @param length 长度
+         */
+        default void onOutput(byte[] data, int offset, int length) {}
+
+        /**
+         * 合并好一帧文本时调用，可以在这里阻塞以形成背压
+         * @param text 文本帧
+         * @param bytes 文本帧对应的原始字节数
+         * @throws IOException 发送失败
+         */
+        void onFrame(String text, int bytes) throws IOException;
+
+        /**
+         * 输出流结束或读取出错时调用
+         */
+        default void onClosed() {}
+    }
+}
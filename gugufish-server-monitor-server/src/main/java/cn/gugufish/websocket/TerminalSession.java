@@ -0,0 +1,334 @@
+package cn.gugufish.websocket;
+
+import cn.gugufish.utils.RecordingUtils;
+import cn.gugufish.utils.SshSessionPool;
+import com.jcraft.jsch.ChannelShell;
+import com.jcraft.jsch.JSchException;
+import io.micrometer.core.instrument.Counter;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.Session;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个SSH Shell会话及其全部订阅者
+ * Shell的输出只由一个输出泵读取，再分发给所有订阅该会话的WebSocket连接：
+ * - 每个订阅者拥有独立的有界发送队列和发送线程，接收过慢的订阅者会被断开，不会拖慢其他订阅者
+ * - 只有一个订阅者时输出泵会等待其队列腾出空间，对SSH通道形成背压
+ * - 只有控制者可以向Shell输入，观察者的输入会被忽略；控制权由服务端决定：创建会话的连接是控制者，
+ *   之后加入的连接只有持有会话的控制令牌或与创建者是同一登录用户时才是控制者
+ * 具名会话的原始输出会同时写入回滚缓冲区，每一帧末尾附带该帧之后的输出绝对偏移，
+ * 最后一个订阅者异常断开后Shell仍会保留一段宽限时间，期间重新连接的客户端可以携带已接收的字节偏移，
+ * 只补发断开期间错过的输出；最后一个订阅者正常关闭时会话立即结束。
+ * 开启录像时，合并后的输出帧会交给后台录像线程，控制者的输入只在开启输入录制时才会录制。
+ */
+@Slf4j
+public class TerminalSession implements TerminalPump.Listener {
+    //每个订阅者最多排队的文本帧数量
+    private static final int QUEUE_FRAMES = 64;
+    //只有一个订阅者时等待其队列腾出空间的最长时间
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+    //回滚缓冲区容量
+    private static final int SCROLLBACK_SIZE = 256 * 1024;
+    //具名会话在最后一个订阅者异常断开后保留的时间
+    private static final long GRACE_SECONDS = 60;
+    //告知客户端当前输出绝对偏移的OSC控制序列，附加在具名会话每一帧的末尾，终端会忽略无法识别的OSC序列
+    private static final String OFFSET_SEQUENCE = "\u001b]7777;%d\u0007";
+    //告知控制者会话控制令牌的OSC控制序列，重连时携带该令牌才能重新获得控制权
+    private static final String CONTROL_SEQUENCE = "\u001b]7778;%s\u0007";
+
+    private static final ScheduledExecutorService GRACE_TIMER = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("ssh-grace").daemon(true).factory());
+
+    @Getter
+    private final String host;
+    private final SshSessionPool.Lease lease;
+    private final ChannelShell channel;
+    private final OutputStream output;
+    private final Counter bytes;
+    private final Runnable onTerminated;
+    private final boolean resumable;
+    private final RecordingUtils.Recording recording;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ScrollbackRing scrollback;
+    private final TerminalPump pump;
+    //创建会话的登录用户，未登录时为null
+    private final String owner;
+    private final String controlToken = UUID.randomUUID().toString();
+    //已经作为文本帧分发出去的输出绝对偏移
+    private long delivered;
+    private ScheduledFuture<?> grace;
+    //输出泵是否已经启动，第一个订阅者加入后才启动
+    private boolean started;
+    private volatile boolean closed;
+
+    /**
+     * 在Shell通道上创建会话，输出泵接管通道的输出后再连接通道，连接之后的输出不会丢失
+     * 输出泵在第一个订阅者加入后才开始读取，在此之前的输出暂存在管道中，
+     * 不会因为还没有订阅者而被丢弃，也不会被当作最后一个订阅者已经离开而关闭会话
+     * @param lease SSH会话租约
+     * @param channel 尚未连接的Shell通道
+     * @param bytes 输出字节数统计
+     * @param resumable 是否为可断线续连的具名会话
+     * @param recording 会话录像，未开启录像时为null
+     * @param owner 创建会话的登录用户，未登录时为null
+     * @param onTerminated 会话结束时的回调
+     * @throws IOException 获取通道输入输出流失败
+     * @throws JSchException 连接通道失败
+     */
+    public TerminalSession(SshSessionPool.Lease lease, ChannelShell channel, Counter bytes, boolean resumable,
+                           RecordingUtils.Recording recording, String owner,
+                           Runnable onTerminated) throws IOException, JSchException {
+        this.host = lease.session().getHost();
+        this.owner = owner;
+        this.lease = lease;
+        this.channel = channel;
+        this.output = channel.getOutputStream();
+        this.bytes = bytes;
+        this.onTerminated = onTerminated;
+        this.resumable = resumable;
+        this.recording = recording;
+        this.scrollback = resumable ? new ScrollbackRing(SCROLLBACK_SIZE) : null;
+        this.pump = new TerminalPump(channel, this);
+        channel.connect(1000);
+    }
+
+    /**
+     * 判断加入会话的连接能否获得控制权
+     * @param user 连接的登录用户，未登录时为null
+     * @param token 连接携带的控制令牌，可以为null
+     * @return 与创建者是同一登录用户或令牌正确时返回true
+     */
+    public boolean canControl(String user, String token) {
+        if(owner != null && owner.equals(user)) return true;
+        return token != null && MessageDigest.isEqual(controlToken.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 添加一个订阅者，控制者会先收到会话的控制令牌，可续连的会话会先补发该订阅者尚未收到的输出
+     * @param session WebSocket会话
+     * @param controller 是否允许输入，由服务端决定
+     * @param offset 订阅者已经收到的输出偏移，小于0表示不需要补发
+     * @return 订阅者，会话已经结束时返回null
+     */
+    public synchronized Subscriber subscribe(Session session, boolean controller, long offset) {
+        if(closed) return null;
+        if(grace != null) {
+            grace.cancel(false);
+            grace = null;
+        }
+        Subscriber subscriber = new Subscriber(session, controller);
+        if(controller && resumable) subscriber.queue.offer(CONTROL_SEQUENCE.formatted(controlToken));
+        if(resumable) this.replay(subscriber, offset);
+        subscribers.add(subscriber);
+        subscriber.start();
+        if(!started) {
+            started = true;
+            pump.start("ssh-pump-" + host);
+        }
+        return subscriber;
+    }
+
+    /**
+     * 将回滚缓冲区中从指定偏移开始的输出放入订阅者的发送队列
+     * 补发内容与普通帧一样在末尾附带当前的输出偏移，客户端据此校准自己记录的偏移；
+     * 请求的偏移已被覆盖时从缓冲区最早的完整字符开始补发。
+     * @param subscriber 订阅者
+     * @param offset 订阅者已经收到的输出偏移
+     */
+    private void replay(Subscriber subscriber, long offset) {
+        long from = offset < 0 ? delivered : Math.min(Math.max(offset, scrollback.start()), delivered);
+        byte[] missed = scrollback.read(from, delivered);
+        int skip = 0;
+        //跳过被截断的多字节字符剩余的后续字节
+        while (skip < missed.length && (missed[skip] & 0xC0) == 0x80) skip++;
+        subscriber.queue.offer(new String(missed, skip, missed.length - skip, StandardCharsets.UTF_8)
+                + OFFSET_SEQUENCE.formatted(delivered));
+    }
+
+    /**
+     * 移除一个订阅者
+     * @param subscriber 订阅者
+     * @param abnormal 连接是否异常断开，只有异常断开时具名会话才会等待重连
+     */
+    public void unsubscribe(Subscriber subscriber, boolean abnormal) {
+        if(!subscribers.remove(subscriber)) return;
+        subscriber.stop();
+        this.detachIfIdle(abnormal);
+    }
+
+    /**
+     * 最后一个订阅者异常离开后，具名会话进入宽限期，宽限期结束仍无人订阅才关闭，其他情况立即关闭
+     * @param abnormal 最后一个订阅者是否异常离开
+     */
+    private synchronized void detachIfIdle(boolean abnormal) {
+        if(closed || !subscribers.isEmpty() || grace != null) return;
+        if(resumable && abnormal) {
+            grace = GRACE_TIMER.schedule(this::closeIfIdle, GRACE_SECONDS, TimeUnit.SECONDS);
+        } else {
+            this.close();
+        }
+    }
+
+    private synchronized void closeIfIdle() {
+        grace = null;
+        if(subscribers.isEmpty()) this.close();
+    }
+
+    /**
+     * 会话是否仍然可用
+     * @return 是否未关闭
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * 将订阅者的输入写入Shell，观察者的输入直接忽略
+     * @param subscriber 订阅者
+     * @param message 输入内容
+     * @throws IOException 写入失败
+     */
+    public void input(Subscriber subscriber, String message) throws IOException {
+        if(!subscriber.controller) return;
+        if(recording != null) recording.input(message);
+        synchronized (output) {
+            output.write(message.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+        }
+    }
+
+    @Override
+    public void onOutput(byte[] data, int offset, int length) {
+        bytes.increment(length);
+        if(resumable) {
+            synchronized (this) {
+                scrollback.write(data, offset, length);
+            }
+        }
+    }
+
+    @Override
+    public void onFrame(String text, int bytes) {
+        Subscriber[] targets;
+        String frame = text;
+        synchronized (this) {
+            delivered += bytes;
+            targets = subscribers.toArray(new Subscriber[0]);
+            if(resumable) frame = text + OFFSET_SEQUENCE.formatted(delivered);
+        }
+        if(recording != null) recording.output(text);
+        boolean alone = targets.length == 1;
+        for (Subscriber subscriber : targets) {
+            if(!subscriber.offer(frame, alone)) {
+                log.warn("主机 {} 的终端订阅者接收过慢，已断开", host);
+                subscribers.remove(subscriber);
+                subscriber.kick(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "终端输出接收过慢"));
+            }
+        }
+        this.detachIfIdle(true);
+    }
+
+    @Override
+    public void onClosed() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.kick(new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "SSH连接已关闭"));
+        }
+        this.close();
+    }
+
+    /**
+     * 关闭会话：停止输出泵、断开Shell通道并归还SSH会话
+     */
+    public synchronized void close() {
+        if(closed) return;
+        closed = true;
+        if(grace != null) grace.cancel(false);
+        pump.stop();
+        try {
+            output.close();
+        } catch (IOException ignored) {}
+        channel.disconnect();
+        lease.close();
+        if(recording != null) recording.close();
+        onTerminated.run();
+    }
+
+    /**
+     * 会话的一个订阅者，拥有独立的发送队列与发送线程
+     */
+    public static class Subscriber {
+        @Getter
+        private final Session session;
+        private final boolean controller;
+        private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_FRAMES);
+        private Thread sender;
+
+        private Subscriber(Session session, boolean controller) {
+            this.session = session;
+            this.controller = controller;
+        }
+
+        private void start() {
+            sender = Thread.ofVirtual().name("ssh-sender-" + session.getId()).start(this::send);
+        }
+
+        private void stop() {
+            if(sender != null) sender.interrupt();
+        }
+
+        /**
+         * 将一帧放入发送队列
+         * @param text 文本帧
+         * @param wait 队列已满时是否等待
+         * @return 是否放入成功
+         */
+        private boolean offer(String text, boolean wait) {
+            try {
+                return wait ? queue.offer(text, SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS) : queue.offer(text);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * 停止发送并关闭订阅者的WebSocket连接
+         * @param reason 关闭原因
+         */
+        private void kick(CloseReason reason) {
+            this.stop();
+            try {
+                if(session.isOpen()) session.close(reason);
+            } catch (IOException e) {
+                log.warn("关闭WebSocket连接时出现问题: {}", e.getMessage());
+            }
+        }
+
+        private void send() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    session.getBasicRemote().sendText(queue.take());
+                }
+            } catch (InterruptedException ignored) {
+            } catch (Exception e) {
+                log.warn("向浏览器发送终端输出失败: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -4,8 +4,10 @@ import cn.gugufish.entity.dto.ClientDetail;
 import cn.gugufish.entity.dto.ClientSsh;
 import cn.gugufish.mapper.ClientDetailMapper;
 import cn.gugufish.mapper.ClientSshMapper;
+import cn.gugufish.utils.MetricsUtils;
+import cn.gugufish.utils.RecordingUtils;
+import cn.gugufish.utils.SshSessionPool;
 import com.jcraft.jsch.ChannelShell;
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import jakarta.annotation.Resource;
 import jakarta.websocket.*;
@@ -15,14 +17,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * 用于处理与终端的WebSocket连接，
@@ -62,17 +59,62 @@ public class TerminalWebSocket {
         TerminalWebSocket.sshMapper = sshMapper;
     }
     /**
-     * 静态映射，用于存储WebSocket会话和对应的Shell实例。
-     * 键为WebSocket会话，值为对应的Shell实例，方便管理和查找。
+     * 静态的服务指标工具，用于统计终端会话数量与推送字节数。
      */
-    private static final Map<Session, Shell> sessionMap = new ConcurrentHashMap<>();
+    private static MetricsUtils metrics;
     /**
-     * 单线程执行器，用于异步执行读取SSH输入流的任务。
+     * 注入服务指标工具到静态变量中，并注册活跃终端会话数量指标。
+     *
+     * @param metrics 服务指标工具实例
      */
-    private final ExecutorService service = Executors.newSingleThreadExecutor();
+    @Resource
+    public void setMetrics(MetricsUtils metrics) {
+        TerminalWebSocket.metrics = metrics;
+        metrics.gauge("monitor.terminal.sessions", "活跃的终端会话数量", sessionMap, Map::size);
+        metrics.gauge("monitor.terminal.shared", "共享的终端会话数量", sharedSessions, Map::size);
+    }
+    /**
+     * 静态的SSH会话池，同一主机的多个终端共用已经认证的SSH会话。
+     */
+    private static SshSessionPool sessionPool;
+    /**
+     * 注入SSH会话池到静态变量中。
+     *
+     * @param sessionPool SSH会话池实例
+     */
+    @Resource
+    public void setSessionPool(SshSessionPool sessionPool) {
+        TerminalWebSocket.sessionPool = sessionPool;
+    }
+    /**
+     * 静态的终端录像工具，开启录像时记录终端的输入与输出。
+     */
+    private static RecordingUtils recordingUtils;
+    /**
+     * 注入终端录像工具到静态变量中。
+     *
+     * @param recordingUtils 终端录像工具实例
+     */
+    @Resource
+    public void setRecordingUtils(RecordingUtils recordingUtils) {
+        TerminalWebSocket.recordingUtils = recordingUtils;
+    }
+    /**
+     * 静态映射，用于存储WebSocket会话和对应的终端订阅关系。
+     * 键为WebSocket会话，值为其订阅的终端会话以及订阅者，方便管理和查找。
+     */
+    private static final Map<Session, Binding> sessionMap = new ConcurrentHashMap<>();
+    /**
+     * 静态映射，用于存储可以被多个WebSocket连接共同订阅的终端会话。
+     * 键为客户端ID与共享会话名称的组合，值为对应的终端会话。
+     */
+    private static final Map<String, TerminalSession> sharedSessions = new ConcurrentHashMap<>();
     /**
      * 当WebSocket连接建立时触发的方法。
      * 尝试从数据库中获取客户端详情和SSH配置信息，若信息存在则创建SSH连接。
+     * 携带session参数时加入同名的共享会话，不存在时创建并成为控制者；
+     * 加入已有会话时由服务端决定角色，只有与创建者是同一登录用户或携带正确control令牌的连接可以输入，其余只能观看输出；
+     * offset参数为断线前已经收到的输出字节偏移，重连时只补发错过的输出。
      *
      * @param session 建立的WebSocket会话
      * @param clientId 客户端ID，从URL路径参数中获取
@@ -81,6 +123,17 @@ public class TerminalWebSocket {
     @OnOpen
     public void onOpen(Session session,
                        @PathParam(value = "clientId") String clientId) throws Exception {
+        String shared = this.parameter(session, "session");
+        String user = session.getUserPrincipal() == null ? null : session.getUserPrincipal().getName();
+        long offset = this.offset(session);
+        String key = shared == null ? null : clientId + "/" + shared;
+        // 共享会话已经存在时直接订阅，无需再次登录SSH
+        TerminalSession existing = key == null ? null : sharedSessions.get(key);
+        if(existing != null && this.subscribe(session, existing,
+                existing.canControl(user, this.parameter(session, "control")), offset)) {
+            log.info("已加入共享终端会话 {}", key);
+            return;
+        }
         // 从数据库中查询客户端详情信息
         ClientDetail detail = detailMapper.selectById(clientId);
         // 从数据库中查询客户端SSH配置信息
@@ -91,13 +144,28 @@ public class TerminalWebSocket {
             return;
         }
         // 尝试创建SSH连接，若成功则记录日志
-        if(this.createSshConnection(session, ssh, detail.getIp())) {
+        TerminalSession terminal = this.createSshConnection(session, ssh, detail, key, user);
+        if(terminal == null) return;
+        boolean controller = true;
+        if(key != null) {
+            existing = sharedSessions.putIfAbsent(key, terminal);
+            // 同时有其他连接创建了同名共享会话，关闭自己创建的会话并按已有会话的规则加入
+            if(existing != null) {
+                terminal.close();
+                terminal = existing;
+                controller = existing.canControl(user, this.parameter(session, "control"));
+            }
+        }
+        if(this.subscribe(session, terminal, controller, offset)) {
             log.info("主机 {} 的SSH连接已创建", detail.getIp());
+        } else {
+            terminal.close();
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "终端会话已结束"));
         }
     }
     /**
      * 当接收到WebSocket消息时触发的方法。
-     * 将接收到的消息发送到对应的SSH连接中。
+     * 将接收到的消息发送到对应的SSH连接中，观察者发送的消息会被忽略。
      *
      * @param session 发送消息的WebSocket会话
      * @param message 接收到的消息
@@ -105,25 +173,24 @@ public class TerminalWebSocket {
      */
     @OnMessage
     public void onMessage(Session session, String message) throws IOException {
-        Shell shell = sessionMap.get(session);
-        OutputStream output = shell.output;
-        output.write(message.getBytes(StandardCharsets.UTF_8));
-        output.flush();
+        Binding binding = sessionMap.get(session);
+        if(binding != null) binding.terminal.input(binding.subscriber, message);
     }
     /**
      * 当WebSocket连接关闭时触发的方法。
-     * 关闭对应的SSH连接并从会话映射中移除该会话。
+     * 取消对终端会话的订阅并从会话映射中移除该会话，
+     * 最后一个订阅者离开时关闭SSH连接，只有连接异常中断时具名会话才会保留一段宽限时间等待重连。
      *
      * @param session 关闭的WebSocket会话
-     * @throws IOException 可能的输入输出异常
+     * @param reason 关闭原因
      */
     @OnClose
-    public void onClose(Session session) throws IOException {
-        Shell shell = sessionMap.get(session);
-        if(shell != null) {
-            shell.close();
-            sessionMap.remove(session);
-            log.info("主机 {} 的SSH连接已断开", shell.js.getHost());
+    public void onClose(Session session, CloseReason reason) {
+        Binding binding = sessionMap.remove(session);
+        if(binding != null) {
+            binding.terminal.unsubscribe(binding.subscriber,
+                    reason.getCloseCode().getCode() == CloseReason.CloseCodes.CLOSED_ABNORMALLY.getCode());
+            log.info("已断开主机 {} 的终端连接", binding.terminal.getHost());
         }
     }
     /**
@@ -139,40 +206,85 @@ public class TerminalWebSocket {
         log.error("用户WebSocket连接出现错误", error);
         session.close();
     }
+    /**
+     * 订阅一个终端会话。
+     *
+     * @param session WebSocket会话
+     * @param terminal 终端会话，可以为null
+     * @param controller 是否允许输入
+     * @param offset 已经收到的输出偏移
+     * @return 订阅成功返回true，会话不存在或已经结束返回false
+     */
+    private boolean subscribe(Session session, TerminalSession terminal, boolean controller, long offset) {
+        if(terminal == null) return false;
+        TerminalSession.Subscriber subscriber = terminal.subscribe(session, controller, offset);
+        if(subscriber == null) return false;
+        sessionMap.put(session, new Binding(terminal, subscriber));
+        return true;
+    }
+    /**
+     * 读取WebSocket连接的查询参数。
+     *
+     * @param session WebSocket会话
+     * @param name 参数名称
+     * @return 参数值，不存在或为空时返回null
+     */
+    private String parameter(Session session, String name) {
+        List<String> values = session.getRequestParameterMap().get(name);
+        if(values == null || values.isEmpty() || values.getFirst().isBlank()) return null;
+        return values.getFirst();
+    }
+    /**
+     * 读取重连时携带的输出偏移。
+     *
+     * @param session WebSocket会话
+     * @return 输出偏移，未携带或格式错误时返回-1
+     */
+    private long offset(Session session) {
+        String offset = this.parameter(session, "offset");
+        if(offset == null) return -1;
+        try {
+            return Long.parseLong(offset);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
     /**
      * 创建SSH连接的私有方法。
-     * 使用JSch库创建SSH会话和Shell通道，并将其与WebSocket会话关联。
+     * 从SSH会话池借用该主机已认证的会话并在其上开启Shell通道，创建对应的终端会话。
      *
      * @param session 对应的WebSocket会话
      * @param ssh 客户端SSH配置信息
-     * @param ip 客户端IP地址
-     * @return 若SSH连接创建成功返回true，否则返回false
+     * @param detail 客户端详情信息
+     * @param key 共享会话的键，私有会话为null
+     * @param user 创建会话的登录用户，未登录时为null
+     * @return 若SSH连接创建成功返回终端会话，否则返回null
      * @throws IOException 可能的输入输出异常
      */
-    private boolean createSshConnection(Session session, ClientSsh ssh, String ip) throws IOException{
+    private TerminalSession createSshConnection(Session session, ClientSsh ssh, ClientDetail detail, String key, String user) throws IOException{
+        SshSessionPool.Lease lease = null;
+        RecordingUtils.Recording recording = null;
         try {
-            // 创建JSch实例
-            JSch jSch = new JSch();
-            //创建SSH会话
-            com.jcraft.jsch.Session js = jSch.getSession(ssh.getUsername(), ip, ssh.getPort());
-            //设置SSH会话账号密码
-            js.setPassword(ssh.getPassword());
-            //禁用严格密钥检查
-            js.setConfig("StrictHostKeyChecking", "no");
-            //设置超时时间
-            js.setTimeout(3000);
-            //连接SSH服务器
-            js.connect();
+            //借用SSH会话，主机已有可用会话时无需重新握手与认证
+            lease = sessionPool.borrow(detail.getIp(), ssh.getPort(), ssh.getUsername(), ssh.getPassword());
             //打开shh通道
-            ChannelShell channel = (ChannelShell) js.openChannel("shell");
+            ChannelShell channel = (ChannelShell) lease.openChannel("shell");
             // 设置终端类型为xterm
             channel.setPtyType("xterm");
-            //链接到shell通道
-            channel.connect(1000);
-            //将实例存储起来
-            sessionMap.put(session, new Shell(session, js, channel));
-            return true;
+            //开启录像时为会话创建录像，JSch默认的终端大小为80x24
+            recording = recordingUtils.start(detail.getId(), 80, 24);
+            //创建终端会话并链接到shell通道，会话结束时从共享会话映射中移除
+            return new TerminalSession(lease, channel, metrics.getTerminalBytes(), key != null, recording, user, () -> {
+                if(key != null) sharedSessions.entrySet().removeIf(entry -> entry.getKey().equals(key)
+                        && !entry.getValue().isOpen());
+            });
         } catch (JSchException e) {
+            //开启通道失败时结束录像并归还租约，会话本身已经断开则将其移出会话池
+            if(recording != null) recording.close();
+            if(lease != null) {
+                if(lease.session().isConnected()) lease.close();
+                else lease.invalidate();
+            }
             String message = e.getMessage();
             if(message.equals("Auth fail")) {
                 session.close(new CloseReason(CloseReason.CloseCodes.CANNOT_ACCEPT,
@@ -187,46 +299,10 @@ public class TerminalWebSocket {
                 log.error("连接SSH时出现错误", e);
             }
         }
-        return false;
+        return null;
     }
     /**
-     * 内部类，用于管理SSH连接的相关资源，包括输入输出流、SSH会话和Shell通道。
+     * WebSocket会话订阅的终端会话以及对应的订阅者。
      */
-    private class Shell {
-        private final Session session;
-        private final com.jcraft.jsch.Session js;
-        private final ChannelShell channel;
-        private final InputStream input;
-        private final OutputStream output;
-
-        public Shell(Session session, com.jcraft.jsch.Session js, ChannelShell channel) throws IOException {
-            this.js = js;
-            this.session = session;
-            this.channel = channel;
-            this.input = channel.getInputStream();
-            this.output = channel.getOutputStream();
-            service.submit(this::read);
-        }
-
-        private void read() {
-            try {
-                byte[] buffer = new byte[1024 * 1024];
-                int i;
-                while ((i = input.read(buffer)) != -1) {
-                    String text = new String(Arrays.copyOfRange(buffer, 0, i), StandardCharsets.UTF_8);
-                    session.getBasicRemote().sendText(text);
-                }
-            } catch (Exception e) {
-                log.error("读取SSH输入流时出现问题", e);
-            }
-        }
-
-        public void close() throws IOException {
-            input.close();
-            output.close();
-            channel.disconnect();
-            js.disconnect();
-            service.shutdown();
-        }
-    }
-}
\ No newline at end of file
+    private record Binding(TerminalSession terminal, TerminalSession.Subscriber subscriber) {}
+}
@@ -0,0 +1,109 @@
+package cn.gugufish.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 雪花算法ID生成器的并发吞吐对比，比较原先加锁的实现与无锁实现（不预取与每线程预取64个）
+ * 单个节点每毫秒最多4096个ID，吞吐的上限约为每秒409万，对比的重点是竞争下能否接近上限以及线程数增加后是否下降
+ * 运行方式：mvn test -Dtest=SnowflakeIdGeneratorBenchmark -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SnowflakeIdGeneratorBenchmark {
+    private static final long WARMUP_MILLIS = 1000;
+    private static final long MEASURE_MILLIS = 2000;
+
+    @Test
+    void contention() throws InterruptedException {
+        System.out.printf("%-20s %8s %14s%n", "impl", "threads", "ids/s");
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            LegacyGenerator legacy = new LegacyGenerator();
+            this.report("synchronized", threads, this.measure(threads, legacy::nextId));
+            SnowflakeIdGenerator lockFree = generator(1);
+            this.report("CAS", threads, this.measure(threads, lockFree::nextId));
+            SnowflakeIdGenerator blocks = generator(64);
+            this.report("CAS + block 64", threads, this.measure(threads, blocks::nextId));
+        }
+    }
+
+    private static SnowflakeIdGenerator generator(int blockSize) {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+        generator.dataCenterId = 1;
+        generator.workerId = 1;
+        generator.maxBackward = 5;
+        generator.maxWait = 1000;
+        generator.blockSize = blockSize;
+        generator.init();
+        return generator;
+    }
+
+    private void report(String name, int threads, double rate) {
+        System.out.printf("%-20s %8d %,14.0f%n", name, threads, rate);
+    }
+
+    /**
+     * 多个线程持续生成ID，预热后统计测量时间内的总数
+     * @return 每秒生成的ID数量
+     */
+    private double measure(int threads, LongSupplier supplier) throws InterruptedException {
+        LongAdder counter = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] window = new long[2];
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long blackhole = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    blackhole ^= supplier.getAsLong();
+                    if(System.nanoTime() - window[0] >= 0 && window[0] != 0) counter.increment();
+                }
+                if(blackhole == 42) System.out.print("");
+            }));
+        }
+        long now = System.nanoTime();
+        window[0] = now + WARMUP_MILLIS * 1_000_000;
+        start.countDown();
+        Thread.sleep(WARMUP_MILLIS + MEASURE_MILLIS);
+        long count = counter.sum();
+        for (Thread worker : workers) worker.interrupt();
+        for (Thread worker : workers) worker.join();
+        return count * 1000.0 / MEASURE_MILLIS;
+    }
+
+    /**
+     * 原先加锁并自旋等待下一毫秒的实现
+     */
+    private static class LegacyGenerator {
+        private static final long START_TIMESTAMP = 1691087910202L;
+        private static final long MAX_SEQUENCE = 4095;
+        private long lastTimestamp = -1L;
+        private long sequence = 0L;
+
+        synchronized long nextId() {
+            long timestamp = System.currentTimeMillis();
+            if (timestamp < lastTimestamp)
+                throw new IllegalStateException("Clock moved backwards. Refusing to generate ID.");
+            if (timestamp == lastTimestamp) {
+                sequence = (sequence + 1) & MAX_SEQUENCE;
+                if (sequence == 0) {
+                    while (timestamp <= lastTimestamp) timestamp = System.currentTimeMillis();
+                }
+            } else {
+                sequence = 0L;
+            }
+            lastTimestamp = timestamp;
+            return ((timestamp - START_TIMESTAMP) << 22) | (1L << 17) | (1L << 12) | sequence;
+        }
+    }
+}
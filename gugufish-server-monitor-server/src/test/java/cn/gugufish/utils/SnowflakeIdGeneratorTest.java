@@ -0,0 +1,190 @@
+package cn.gugufish.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 雪花算法ID生成器的行为测试：多线程唯一性、时钟回拨、机器ID租约与栅栏
+ * Redis使用内存中的Map模拟，只实现生成器用到的命令
+ */
+class SnowflakeIdGeneratorTest {
+    private static final long START_TIMESTAMP = 1691087910202L;
+
+    @Test
+    void uniqueAcrossThreads() throws InterruptedException {
+        for (int blockSize : new int[]{1, 64}) {
+            SnowflakeIdGenerator generator = fixed(blockSize);
+            Set<Long> ids = ConcurrentHashMap.newKeySet();
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                workers.add(Thread.ofPlatform().start(() -> {
+                    long last = -1;
+                    for (int j = 0; j < 20000; j++) {
+                        long id = generator.nextId();
+                        assertTrue(id > last, "同一线程内ID应当递增");
+                        last = id;
+                        ids.add(id);
+                    }
+                }));
+            }
+            for (Thread worker : workers) worker.join();
+            assertEquals(8 * 20000, ids.size());
+        }
+    }
+
+    @Test
+    void clockRollbackWithinTolerance() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        SnowflakeIdGenerator generator = fixed(1);
+        generator.clock = clock::get;
+        long first = generator.nextId();
+        clock.addAndGet(-3);
+        long second = generator.nextId();
+        assertTrue(second > first);
+    }
+
+    @Test
+    void clockRollbackBeyondTolerance() {
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+        SnowflakeIdGenerator generator = fixed(1);
+        generator.maxWait = 50;
+        generator.clock = clock::get;
+        long first = generator.nextId();
+        clock.addAndGet(-100);
+        assertThrows(IllegalStateException.class, generator::nextId);
+        clock.addAndGet(101);
+        assertTrue(generator.nextId() > first);
+    }
+
+    @Test
+    void restartReacquiresSameWorker() {
+        FakeRedis redis = new FakeRedis();
+        SnowflakeIdGenerator before = leased(redis);
+        long last = 0;
+        for (int i = 0; i < 1000; i++) last = before.nextId();
+        before.destroy();
+        assertNull(redis.values.get(Const.SNOWFLAKE_WORKER + 0));
+        assertEquals(before.issuedTimestamp(), Long.parseLong(redis.values.get(Const.SNOWFLAKE_FENCE + 0)));
+
+        SnowflakeIdGenerator after = leased(redis);
+        assertEquals(0, workerOf(after.nextId()));
+        assertTrue(after.nextId() > last, "重新抢占到同一机器ID后生成的ID应当晚于上一个持有者");
+        after.destroy();
+    }
+
+    @Test
+    void fenceAheadOfClockIsAwaited() {
+        FakeRedis redis = new FakeRedis();
+        long fence = System.currentTimeMillis() + 300;
+        redis.values.put(Const.SNOWFLAKE_FENCE + 0, String.valueOf(fence));
+        SnowflakeIdGenerator generator = leased(redis);
+        assertTrue(System.currentTimeMillis() >= fence - generator.maxBackward);
+        long id = generator.nextId();
+        assertEquals(0, workerOf(id));
+        assertTrue((id >> 22) + START_TIMESTAMP > fence);
+        generator.destroy();
+    }
+
+    @Test
+    void fenceTooFarAheadSkipsWorker() {
+        FakeRedis redis = new FakeRedis();
+        redis.values.put(Const.SNOWFLAKE_FENCE + 0, String.valueOf(System.currentTimeMillis() + 600_000));
+        SnowflakeIdGenerator generator = leased(redis);
+        assertEquals(1, workerOf(generator.nextId()));
+        assertNull(redis.values.get(Const.SNOWFLAKE_WORKER + 0));
+        generator.destroy();
+    }
+
+    @Test
+    void lostLeaseDiscardsBlocks() {
+        FakeRedis redis = new FakeRedis();
+        SnowflakeIdGenerator generator = leased(redis);
+        assertEquals(0, workerOf(generator.nextId()));
+        redis.values.put(Const.SNOWFLAKE_WORKER + 0, "other");
+        generator.renewLease();
+        assertEquals(1, workerOf(generator.nextId()), "租约丢失后不应继续使用原机器ID预取的ID段");
+        generator.destroy();
+    }
+
+    private static SnowflakeIdGenerator fixed(int blockSize) {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+        generator.dataCenterId = 1;
+        generator.workerId = 1;
+        generator.maxBackward = 5;
+        generator.maxWait = 1000;
+        generator.blockSize = blockSize;
+        generator.init();
+        return generator;
+    }
+
+    private static SnowflakeIdGenerator leased(FakeRedis redis) {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+        generator.workerId = -1;
+        generator.maxBackward = 5;
+        generator.maxWait = 100;
+        generator.blockSize = 64;
+        generator.template = redis.template;
+        generator.init();
+        return generator;
+    }
+
+    private static long workerOf(long id) {
+        return (id >> 12) & 1023;
+    }
+
+    /**
+     * 内存中的Redis，忽略过期时间
+     */
+    private static class FakeRedis {
+        final Map<String, String> values = new ConcurrentHashMap<>();
+        final StringRedisTemplate template;
+
+        @SuppressWarnings("unchecked")
+        FakeRedis() {
+            ValueOperations<String, String> operations = mock(ValueOperations.class, invocation -> {
+                Object[] args = invocation.getArguments();
+                return switch (invocation.getMethod().getName()) {
+                    case "setIfAbsent" -> values.putIfAbsent((String) args[0], (String) args[1]) == null;
+                    case "get" -> values.get((String) args[0]);
+                    case "set" -> {
+                        values.put((String) args[0], (String) args[1]);
+                        yield null;
+                    }
+                    default -> throw new UnsupportedOperationException(invocation.getMethod().getName());
+                };
+            });
+            template = mock(StringRedisTemplate.class, invocation -> {
+                Object[] args = invocation.getRawArguments();
+                return switch (invocation.getMethod().getName()) {
+                    case "opsForValue" -> operations;
+                    case "execute" -> this.execute(args[0], (List<String>) args[1], (Object[]) args[2]);
+                    default -> throw new UnsupportedOperationException(invocation.getMethod().getName());
+                };
+            });
+        }
+
+        private Long execute(Object script, List<String> keys, Object[] args) {
+            if(!args[0].equals(values.get(keys.get(0)))) return 0L;
+            if(script == SnowflakeIdGenerator.RENEW_SCRIPT) {
+                values.put(keys.get(1), (String) args[2]);
+            } else if(script == SnowflakeIdGenerator.RELEASE_SCRIPT) {
+                values.put(keys.get(1), (String) args[1]);
+                values.remove(keys.get(0));
+            } else {
+                throw new UnsupportedOperationException("unknown script");
+            }
+            return 1L;
+        }
+    }
+}
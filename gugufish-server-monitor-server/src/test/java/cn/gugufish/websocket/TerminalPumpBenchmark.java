@@ -0,0 +1,112 @@
+package cn.gugufish.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 终端输出泵的帧率与内存对比
+ * - 大量输出：模拟cat大文件，统计吞吐、帧数与平均帧大小，原先的实现每次读取都发送一帧
+ * - 交互输出：每毫秒少量输出，统计合并后的帧率
+ * - 空闲会话：启动大量没有输出的泵，统计每个会话占用的堆内存、平台线程数量与空闲时的CPU时间
+ * 运行方式：mvn test -Dtest=TerminalPumpBenchmark -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TerminalPumpBenchmark {
+
+    @Test
+    void bulkOutput() throws Exception {
+        byte[] line = "2024-01-01 12:00:00 INFO  some log line with a little bit of text, 中文内容\n"
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] chunk = new byte[4096];
+        for (int i = 0; i < chunk.length; i++) chunk[i] = line[i % line.length];
+        int writes = 64 * 1024;
+        Result result = this.run(sink -> {
+            for (int i = 0; i < writes; i++) sink.write(chunk);
+        });
+        double seconds = result.nanos / 1e9;
+        System.out.printf("bulk: %d writes of %d bytes, %.1f MB/s, %d frames (%.0f frames/s), avg frame %.1f KB%n",
+                writes, chunk.length, result.bytes / seconds / 1024 / 1024, result.frames, result.frames / seconds,
+                result.bytes / 1024.0 / result.frames);
+    }
+
+    @Test
+    void interactiveOutput() throws Exception {
+        byte[] chunk = "keystroke echo and prompt\r\n".getBytes(StandardCharsets.UTF_8);
+        int writes = 2000;
+        Result result = this.run(sink -> {
+            for (int i = 0; i < writes; i++) {
+                sink.write(chunk);
+                Thread.sleep(1);
+            }
+        });
+        double seconds = result.nanos / 1e9;
+        System.out.printf("interactive: %d writes over %.2fs, %d frames (%.0f frames/s)%n",
+                writes, seconds, result.frames, result.frames / seconds);
+    }
+
+    @Test
+    void idleSessions() throws Exception {
+        int sessions = 2000;
+        var memory = ManagementFactory.getMemoryMXBean();
+        var threads = ManagementFactory.getThreadMXBean();
+        var system = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        int threadsBefore = threads.getThreadCount();
+        List<TerminalPump> pumps = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            TerminalPump pump = new TerminalPump((text, bytes) -> { });
+            pump.start("bench-pump-" + i);
+            pumps.add(pump);
+        }
+        Thread.sleep(500);
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+        int threadsAfter = threads.getThreadCount();
+        long cpuBefore = system.getProcessCpuTime();
+        Thread.sleep(2000);
+        long cpuIdle = system.getProcessCpuTime() - cpuBefore;
+        System.out.printf("idle: %d sessions, %.1f KB heap per session, +%d platform threads, %.1f ms CPU over 2s idle%n",
+                sessions, (heapAfter - heapBefore) / 1024.0 / sessions, threadsAfter - threadsBefore, cpuIdle / 1e6);
+        pumps.forEach(TerminalPump::stop);
+    }
+
+    private Result run(Producer producer) throws Exception {
+        AtomicLong frames = new AtomicLong(), bytes = new AtomicLong();
+        CountDownLatch closed = new CountDownLatch(1);
+        TerminalPump pump = new TerminalPump(new TerminalPump.Listener() {
+            @Override
+            public void onFrame(String text, int length) {
+                frames.incrementAndGet();
+                bytes.addAndGet(length);
+            }
+
+            @Override
+            public void onClosed() {
+                closed.countDown();
+            }
+        });
+        pump.start("bench-pump");
+        long start = System.nanoTime();
+        try (OutputStream sink = pump.sink()) {
+            producer.produce(sink);
+        }
+        closed.await();
+        return new Result(System.nanoTime() - start, frames.get(), bytes.get());
+    }
+
+    private interface Producer {
+        void produce(OutputStream sink) throws IOException, InterruptedException;
+    }
+
+    private record Result(long nanos, long frames, long bytes) { }
+}
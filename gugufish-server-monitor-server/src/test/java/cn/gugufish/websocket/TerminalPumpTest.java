@@ -0,0 +1,111 @@
+package cn.gugufish.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 终端输出泵的行为测试：帧的顺序、多字节字符拆分、字节数统计与关闭
+ */
+class TerminalPumpTest {
+
+    @Test
+    void framesKeepWriteOrder() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        Frames frames = this.run(sink -> {
+            for (int i = 0; i < 20000; i++) {
+                byte[] line = ("line " + i + "\n").getBytes(StandardCharsets.UTF_8);
+                expected.append("line ").append(i).append('\n');
+                sink.write(line);
+                if(i % 1000 == 0) Thread.sleep(10);
+            }
+        });
+        assertEquals(expected.toString(), frames.text());
+        assertEquals(expected.length(), frames.bytes());
+        assertTrue(frames.list.size() > 1, "输出应当被拆分成多帧");
+    }
+
+    @Test
+    void multiByteCharactersSplitAcrossWrites() throws Exception {
+        String text = "中文输出🙂混合ascii\n".repeat(50);
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        Frames frames = this.run(sink -> {
+            for (int i = 0; i < data.length; i++) {
+                sink.write(data, i, 1);
+                //每隔几个字节等待合并窗口到期，让帧在多字节字符中间结束
+                if(i % 7 == 0) Thread.sleep(8);
+            }
+        });
+        assertEquals(text, frames.text());
+        assertEquals(data.length, frames.bytes());
+        for (Frame frame : frames.list) {
+            assertFalse(frame.text.contains("\uFFFD"), "帧中不应出现替换字符");
+            assertEquals(frame.text.getBytes(StandardCharsets.UTF_8).length, frame.bytes,
+                    "每帧的字节数应当与帧内完整字符的字节数一致");
+        }
+    }
+
+    @Test
+    void stoppedPumpDropsWrites() throws Exception {
+        TerminalPump pump = new TerminalPump((text, bytes) -> { });
+        pump.start("test-pump");
+        pump.stop();
+        OutputStream sink = pump.sink();
+        Thread writer = Thread.ofVirtual().start(() -> {
+            try {
+                sink.write(new byte[256 * 1024]);
+            } catch (Exception ignored) {}
+        });
+        assertTrue(writer.join(Duration.ofSeconds(5)), "输出泵停止后写入不应阻塞");
+    }
+
+    private Frames run(Writer writer) throws Exception {
+        Frames frames = new Frames();
+        CountDownLatch closed = new CountDownLatch(1);
+        TerminalPump pump = new TerminalPump(new TerminalPump.Listener() {
+            @Override
+            public void onFrame(String text, int bytes) {
+                frames.list.add(new Frame(text, bytes));
+            }
+
+            @Override
+            public void onClosed() {
+                closed.countDown();
+            }
+        });
+        pump.start("test-pump");
+        try (OutputStream sink = pump.sink()) {
+            writer.write(sink);
+        }
+        assertTrue(closed.await(10, TimeUnit.SECONDS), "写入端关闭后输出泵应当结束");
+        return frames;
+    }
+
+    private interface Writer {
+        void write(OutputStream sink) throws Exception;
+    }
+
+    private record Frame(String text, int bytes) {}
+
+    private static class Frames {
+        final List<Frame> list = new CopyOnWriteArrayList<>();
+
+        String text() {
+            StringBuilder builder = new StringBuilder();
+            list.forEach(frame -> builder.append(frame.text));
+            return builder.toString();
+        }
+
+        long bytes() {
+            return list.stream().mapToLong(Frame::bytes).sum();
+        }
+    }
+}